@@ -0,0 +1,79 @@
+package org.smartinez.junit5app.ejemplos.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.smartinez.junit5app.ejemplos.exceptions.DineroInsuficienteException;
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//La cantidad de hilos se elige con -t (eg: -t 1 sin contencion, -t 16 con contencion).
+//Con pocas cuentas y muchos hilos casi todas las transferencias compiten por las mismas franjas.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BancoBenchmark {
+
+    private static final BigDecimal MONTO = BigDecimal.ONE;
+
+    @Param({"2", "1000", "1000000"})
+    int cuentas;
+
+    Banco banco;
+    Cuenta[] porIndice;
+    long primerId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        banco = new Banco();
+        porIndice = new Cuenta[cuentas];
+        for (int i = 0; i < cuentas; i++) {
+            porIndice[i] = new Cuenta("Cliente " + i, new BigDecimal("1000000"), 2);
+            banco.addCuenta(porIndice[i]);
+        }
+        primerId = porIndice[0].getId();
+    }
+
+    @Benchmark
+    public void transferir() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            banco.transferir(porIndice[random.nextInt(cuentas)], porIndice[random.nextInt(cuentas)], MONTO);
+        } catch (DineroInsuficienteException e) {
+            //con saldos altos casi no pasa, pero bajo contencion larga es un resultado valido
+        }
+    }
+
+    @Benchmark
+    public void transferirUnidades() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            banco.transferirUnidades(porIndice[random.nextInt(cuentas)], porIndice[random.nextInt(cuentas)], 100);
+        } catch (DineroInsuficienteException e) {
+            //idem transferir
+        }
+    }
+
+    @Benchmark
+    public Optional<Cuenta> buscarPorId() {
+        return banco.buscarPorId(primerId + ThreadLocalRandom.current().nextInt(cuentas));
+    }
+
+    @Benchmark
+    public Optional<Cuenta> buscarPorPersona() {
+        return banco.buscarPorPersona("Cliente " + ThreadLocalRandom.current().nextInt(cuentas));
+    }
+
+    //la busqueda lineal que se hacia antes del indice, como referencia
+    @Benchmark
+    public Optional<Cuenta> buscarRecorriendoLista() {
+        String persona = "Cliente " + ThreadLocalRandom.current().nextInt(Math.min(cuentas, 1000));
+        return banco.getCuentas().stream().filter(c -> persona.equals(c.getPersona())).findFirst();
+    }
+}
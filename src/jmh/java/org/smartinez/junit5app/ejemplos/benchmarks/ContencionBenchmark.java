@@ -0,0 +1,53 @@
+package org.smartinez.junit5app.ejemplos.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+import org.smartinez.junit5app.ejemplos.models.ModoConcurrencia;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+//Una sola cuenta compartida por todos los hilos (eg: la cuenta de un comercio), en cada modo de concurrencia.
+//Correr con varios hilos para ver la contencion: java -jar target/benchmarks.jar ContencionBenchmark -t 8
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ContencionBenchmark {
+
+    @Param({"CERROJO", "CAS", "ACUMULADO"})
+    ModoConcurrencia modo;
+
+    Cuenta cuenta;
+
+    @Setup
+    public void setUp() {
+        cuenta = new Cuenta("Comercio", new BigDecimal("1000000.00"), 2, modo);
+    }
+
+    //solo creditos chicos: el caso para el que existe el modo ACUMULADO
+    @Benchmark
+    public void credito() {
+        cuenta.creditoUnidades(1);
+    }
+
+    @Benchmark
+    public boolean debitoCredito() {
+        boolean debitado = cuenta.tryDebitoUnidades(1).isOk();
+        cuenta.creditoUnidades(1);
+        return debitado;
+    }
+
+    //cada 16 creditos una lectura del saldo, que en modo ACUMULADO consolida las celdas
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public long creditosYLectura() {
+        for (int i = 0; i < 16; i++) {
+            cuenta.creditoUnidades(1);
+        }
+        return cuenta.getSaldoUnidades();
+    }
+}
@@ -0,0 +1,61 @@
+package org.smartinez.junit5app.ejemplos.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+//debito + credito del mismo monto, asi el saldo no deriva entre iteraciones
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CuentaBenchmark {
+
+    private static final BigDecimal MONTO = new BigDecimal("100.5");
+
+    Cuenta decimal;
+    Cuenta fija;
+    Cuenta igual;
+
+    @Setup
+    public void setUp() {
+        decimal = new Cuenta("Andres", new BigDecimal("1000.12345"));
+        fija = new Cuenta("Andres", new BigDecimal("1000.12345"), 5);
+        igual = new Cuenta("Andres", new BigDecimal("1000.12345"));
+    }
+
+    @Benchmark
+    public BigDecimal debitoCreditoDecimal() {
+        decimal.debito(MONTO);
+        decimal.credito(MONTO);
+        return decimal.getSaldo();
+    }
+
+    @Benchmark
+    public BigDecimal debitoCreditoEscalaFija() {
+        fija.debito(MONTO);
+        fija.credito(MONTO);
+        return fija.getSaldo();
+    }
+
+    @Benchmark
+    public long debitoCreditoUnidades() {
+        fija.debitoUnidades(10_050_000L);
+        fija.creditoUnidades(10_050_000L);
+        return fija.getSaldoUnidades();
+    }
+
+    @Benchmark
+    public boolean equalsCuenta() {
+        return decimal.equals(igual);
+    }
+
+    @Benchmark
+    public int hashCodeCuenta() {
+        return decimal.hashCode();
+    }
+}
@@ -0,0 +1,22 @@
+package org.smartinez.junit5app.ejemplos.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+//Igual que org.openjdk.jmh.Main (acepta los mismos argumentos: -t, -p, -f, regex...) pero siempre con el
+//profiler de GC, asi cada corrida informa la tasa de asignacion (gc.alloc.rate.norm) ademas del throughput
+public class EjecutarBenchmarks {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions lineaDeComandos = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+                .parent(lineaDeComandos)
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,194 @@
+package org.smartinez.junit5app.ejemplos.aggregates;
+
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+import org.smartinez.junit5app.ejemplos.models.OyenteOperaciones;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+//Agregados de un Banco mantenidos en cada operacion en lugar de recorrer todas las cuentas en cada consulta:
+//saldo total, cantidad de cuentas, cuentas por debajo de un umbral y ranking de saldos.
+//Los oyentes se llaman con la franja de la cuenta tomada, asi que el saldo actual de la cuenta es el
+//resultado de la operacion y el anterior se obtiene restando el monto.
+public class AgregadosBanco implements OyenteOperaciones {
+
+    private static final int FRANJAS = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+
+    private final BigDecimal umbral;
+    //el total se reparte en franjas para que operaciones concurrentes no compitan por el mismo CAS
+    private final AtomicReferenceArray<BigDecimal> totales = new AtomicReferenceArray<>(FRANJAS);
+    private final LongAdder cantidad = new LongAdder();
+    private final LongAdder bajoUmbral = new LongAdder();
+    private final ConcurrentSkipListSet<Posicion> ranking = new ConcurrentSkipListSet<>();
+
+    public AgregadosBanco(BigDecimal umbral) {
+        this.umbral = umbral;
+        reiniciar();
+    }
+
+    //Registra los agregados como oyente y los inicializa con las cuentas actuales, sin operaciones en el medio
+    public static AgregadosBanco adjuntar(Banco banco, BigDecimal umbral) {
+        AgregadosBanco agregados = new AgregadosBanco(umbral);
+        banco.leerConsistente(cuentas -> {
+            banco.agregarOyente(agregados);
+            cuentas.forEach(agregados::cuentaAgregada);
+            return null;
+        });
+        return agregados;
+    }
+
+    public BigDecimal getUmbral() {
+        return umbral;
+    }
+
+    //Las transferencias no cambian el total, asi que nunca se ve una transferencia a medias
+    public BigDecimal getSaldoTotal() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < FRANJAS; i++) {
+            total = total.add(totales.get(i));
+        }
+        return total;
+    }
+
+    public long getCantidadCuentas() {
+        return cantidad.sum();
+    }
+
+    public long getCuentasBajoUmbral() {
+        return bajoUmbral.sum();
+    }
+
+    //Las n cuentas con mayor saldo, de mayor a menor. El saldo de cada posicion es el de su ultima operacion
+    public List<Posicion> getMayoresSaldos(int n) {
+        List<Posicion> mayores = new ArrayList<>(n);
+        Set<Long> vistas = new HashSet<>();
+        for (Posicion posicion : ranking) {
+            if (mayores.size() == n) {
+                break;
+            }
+            //mientras una cuenta cambia de posicion puede aparecer dos veces: vale la primera
+            if (vistas.add(posicion.cuenta.getId())) {
+                mayores.add(posicion);
+            }
+        }
+        return mayores;
+    }
+
+    @Override
+    public void cuentasReiniciadas() {
+        reiniciar();
+    }
+
+    private void reiniciar() {
+        for (int i = 0; i < FRANJAS; i++) {
+            totales.set(i, BigDecimal.ZERO);
+        }
+        cantidad.reset();
+        bajoUmbral.reset();
+        ranking.clear();
+    }
+
+    @Override
+    public void cuentaAgregada(Cuenta cuenta) {
+        BigDecimal saldo = cuenta.getSaldo();
+        cantidad.increment();
+        sumar(cuenta, saldo);
+        if (saldo.compareTo(umbral) < 0) {
+            bajoUmbral.increment();
+        }
+        ranking.add(new Posicion(cuenta, saldo));
+    }
+
+    @Override
+    public void debito(Cuenta cuenta, BigDecimal monto) {
+        BigDecimal saldo = cuenta.getSaldo();
+        sumar(cuenta, monto.negate());
+        cambioSaldo(cuenta, saldo.add(monto), saldo);
+    }
+
+    @Override
+    public void credito(Cuenta cuenta, BigDecimal monto) {
+        BigDecimal saldo = cuenta.getSaldo();
+        sumar(cuenta, monto);
+        cambioSaldo(cuenta, saldo.subtract(monto), saldo);
+    }
+
+    @Override
+    public void transferencia(Cuenta origen, Cuenta destino, BigDecimal monto) {
+        if (origen.getId() == destino.getId()) { //con un Banco columnar son vistas distintas de la misma cuenta
+            return;
+        }
+        BigDecimal saldoOrigen = origen.getSaldo();
+        BigDecimal saldoDestino = destino.getSaldo();
+        cambioSaldo(origen, saldoOrigen.add(monto), saldoOrigen);
+        cambioSaldo(destino, saldoDestino.subtract(monto), saldoDestino);
+    }
+
+    @Override
+    public void saldoFijado(Cuenta cuenta, BigDecimal anterior) {
+        BigDecimal saldo = cuenta.getSaldo();
+        sumar(cuenta, saldo.subtract(anterior));
+        cambioSaldo(cuenta, anterior, saldo);
+    }
+
+    private void sumar(Cuenta cuenta, BigDecimal delta) {
+        totales.accumulateAndGet((int) cuenta.getId() & (FRANJAS - 1), delta, BigDecimal::add);
+    }
+
+    private void cambioSaldo(Cuenta cuenta, BigDecimal anterior, BigDecimal actual) {
+        boolean antes = anterior.compareTo(umbral) < 0;
+        boolean ahora = actual.compareTo(umbral) < 0;
+        if (antes != ahora) {
+            if (ahora) {
+                bajoUmbral.increment();
+            } else {
+                bajoUmbral.decrement();
+            }
+        }
+        if (anterior.compareTo(actual) != 0) {
+            //primero se agrega y despues se quita: una lectura concurrente nunca pierde la cuenta del ranking
+            ranking.add(new Posicion(cuenta, actual));
+            ranking.remove(new Posicion(cuenta, anterior));
+        }
+    }
+
+    public static class Posicion implements Comparable<Posicion> {
+
+        private final Cuenta cuenta;
+        private final BigDecimal saldo;
+
+        Posicion(Cuenta cuenta, BigDecimal saldo) {
+            this.cuenta = cuenta;
+            this.saldo = saldo;
+        }
+
+        public Cuenta getCuenta() {
+            return cuenta;
+        }
+
+        public BigDecimal getSaldo() {
+            return saldo;
+        }
+
+        //de mayor a menor saldo y a igual saldo por id, asi cada cuenta tiene a lo sumo una posicion por saldo
+        @Override
+        public int compareTo(Posicion otra) {
+            int porSaldo = otra.saldo.compareTo(saldo);
+            return porSaldo != 0 ? porSaldo : Long.compare(cuenta.getId(), otra.cuenta.getId());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Posicion otra && compareTo(otra) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(saldo.stripTrailingZeros(), cuenta.getId());
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package org.smartinez.junit5app.ejemplos.async;
+
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+import org.smartinez.junit5app.ejemplos.models.ResultadoOperacion;
+
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+//Fachada no bloqueante sobre un Banco: cada operacion se encola en un carril acotado y devuelve un
+//CompletableFuture. La profundidad de las colas, la politica de contrapresion y el orden por cuenta se configuran
+//al crearla. Los futuros se completan en el hilo del carril: un suscriptor que hace trabajo pesado deberia
+//encadenarlo con los metodos *Async de CompletableFuture para no frenar las operaciones que vienen detras.
+//Las transferencias completadas se publican como Flow.Publisher; a un suscriptor lento se le descartan eventos
+//antes que frenar al banco.
+//Sin configurar, con la cola llena se rechaza (RECHAZAR): asi ningun metodo bloquea al que llama.
+public class BancoAsincrono implements Closeable {
+
+    private static final AtomicInteger INSTANCIAS = new AtomicInteger();
+
+    private final Banco banco;
+    private final OrdenOperaciones orden;
+    private final ThreadPoolExecutor[] carriles;
+    private final SubmissionPublisher<TransferenciaCompletada> completadas = new SubmissionPublisher<>();
+    private final LongAdder rechazadas = new LongAdder();
+    private final LongAdder descartadas = new LongAdder();
+
+    public BancoAsincrono(Banco banco) {
+        this(banco, Runtime.getRuntime().availableProcessors(), 1024, PoliticaContrapresion.RECHAZAR, OrdenOperaciones.POR_CUENTA);
+    }
+
+    //profundidadCola es el total de operaciones encoladas entre todos los carriles
+    public BancoAsincrono(Banco banco, int hilos, int profundidadCola, PoliticaContrapresion politica, OrdenOperaciones orden) {
+        if (hilos <= 0 || profundidadCola < hilos) {
+            throw new IllegalArgumentException("Hace falta al menos un hilo y un lugar en la cola por hilo");
+        }
+        if (politica == PoliticaContrapresion.EJECUTAR_EN_LLAMADOR && orden == OrdenOperaciones.POR_CUENTA) {
+            throw new IllegalArgumentException("EJECUTAR_EN_LLAMADOR no respeta el orden por cuenta");
+        }
+        this.banco = banco;
+        this.orden = orden;
+        String prefijo = "banco-async-" + INSTANCIAS.incrementAndGet() + "-";
+        AtomicInteger numero = new AtomicInteger();
+        ThreadFactory fabrica = tarea -> {
+            Thread hilo = new Thread(tarea, prefijo + numero.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        };
+        int cantidad = orden == OrdenOperaciones.POR_CUENTA ? hilos : 1;
+        int hilosPorCarril = orden == OrdenOperaciones.POR_CUENTA ? 1 : hilos;
+        this.carriles = new ThreadPoolExecutor[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            carriles[i] = new ThreadPoolExecutor(hilosPorCarril, hilosPorCarril, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(profundidadCola / cantidad), fabrica, manejador(politica));
+        }
+    }
+
+    private static RejectedExecutionHandler manejador(PoliticaContrapresion politica) {
+        return switch (politica) {
+            case RECHAZAR -> new ThreadPoolExecutor.AbortPolicy();
+            case EJECUTAR_EN_LLAMADOR -> new ThreadPoolExecutor.CallerRunsPolicy();
+            case ESPERAR -> (tarea, executor) -> {
+                if (executor.isShutdown()) {
+                    throw new RejectedExecutionException("El banco asincrono esta cerrado");
+                }
+                try {
+                    executor.getQueue().put(tarea);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException(e);
+                }
+                //si se cerro mientras esperabamos puede que ya no quede nadie para ejecutarla
+                if (executor.isShutdown() && executor.getQueue().remove(tarea)) {
+                    throw new RejectedExecutionException("El banco asincrono esta cerrado");
+                }
+            };
+        };
+    }
+
+    private ThreadPoolExecutor carril(Cuenta cuenta) {
+        if (carriles.length == 1) {
+            return carriles[0];
+        }
+        long h = cuenta.getId() * 0x9E3779B97F4A7C15L;
+        return carriles[(int) ((h >>> 32) % carriles.length)];
+    }
+
+    private <T> CompletableFuture<T> enviar(Cuenta cuenta, Supplier<T> operacion) {
+        CompletableFuture<T> futuro = new CompletableFuture<>();
+        ThreadPoolExecutor carril = carril(cuenta);
+        try {
+            carril.execute(() -> {
+                try {
+                    futuro.complete(operacion.get());
+                } catch (Throwable e) {
+                    futuro.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (!carril.isShutdown()) { //las enviadas despues de cerrar no son contrapresion
+                rechazadas.increment();
+            }
+            futuro.completeExceptionally(e);
+        }
+        return futuro;
+    }
+
+    //Con orden POR_CUENTA la transferencia va al carril de la cuenta origen
+    public CompletableFuture<ResultadoOperacion> transferirAsync(Cuenta origen, Cuenta destino, BigDecimal monto) {
+        return enviar(origen, () -> publicar(origen, destino, monto, banco.tryTransferir(origen, destino, monto)));
+    }
+
+    //Variante con clave de idempotencia, ver Banco.transferir(String, Cuenta, Cuenta, BigDecimal).
+    //Un reintento devuelve el resultado original pero no lo vuelve a publicar
+    public CompletableFuture<ResultadoOperacion> transferirAsync(String clave, Cuenta origen, Cuenta destino, BigDecimal monto) {
+        return enviar(origen, () -> banco.transferir(clave, origen, destino, monto,
+                resultado -> publicar(origen, destino, monto, resultado)));
+    }
+
+    public CompletableFuture<ResultadoOperacion> debitoAsync(Cuenta cuenta, BigDecimal monto) {
+        return enviar(cuenta, () -> cuenta.tryDebito(monto));
+    }
+
+    public CompletableFuture<ResultadoOperacion> creditoAsync(Cuenta cuenta, BigDecimal monto) {
+        return enviar(cuenta, () -> {
+            cuenta.credito(monto);
+            return ResultadoOperacion.OK;
+        });
+    }
+
+    //Con orden POR_CUENTA ve todas las operaciones que debitan la cuenta enviadas antes
+    public CompletableFuture<BigDecimal> saldoAsync(Cuenta cuenta) {
+        return enviar(cuenta, cuenta::getSaldo);
+    }
+
+    private ResultadoOperacion publicar(Cuenta origen, Cuenta destino, BigDecimal monto, ResultadoOperacion resultado) {
+        if (completadas.hasSubscribers()) {
+            completadas.offer(new TransferenciaCompletada(origen.getId(), destino.getId(), monto, resultado),
+                    (suscriptor, evento) -> {
+                        descartadas.increment();
+                        return false;
+                    });
+        }
+        return resultado;
+    }
+
+    public Flow.Publisher<TransferenciaCompletada> getCompletadas() {
+        return completadas;
+    }
+
+    public OrdenOperaciones getOrden() {
+        return orden;
+    }
+
+    //operaciones encoladas que todavia no empezaron
+    public int getPendientes() {
+        int pendientes = 0;
+        for (ThreadPoolExecutor carril : carriles) {
+            pendientes += carril.getQueue().size();
+        }
+        return pendientes;
+    }
+
+    //operaciones rechazadas por la cola llena (las enviadas despues de cerrar no cuentan)
+    public long getRechazadas() {
+        return rechazadas.sum();
+    }
+
+    //eventos que no se entregaron a un suscriptor porque su buffer estaba lleno
+    public long getDescartadas() {
+        return descartadas.sum();
+    }
+
+    //Deja de aceptar operaciones, termina las encoladas y cierra el publicador
+    @Override
+    public void close() {
+        for (ThreadPoolExecutor carril : carriles) {
+            carril.shutdown();
+        }
+        try {
+            for (ThreadPoolExecutor carril : carriles) {
+                carril.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        completadas.close();
+    }
+}
@@ -0,0 +1,9 @@
+package org.smartinez.junit5app.ejemplos.async;
+
+public enum OrdenOperaciones {
+    //cada cuenta tiene un carril de un solo hilo: las operaciones que debitan una cuenta (y las consultas de su
+    //saldo) se aplican en el orden en que se enviaron
+    POR_CUENTA,
+    //un pool compartido, sin garantias de orden entre operaciones de la misma cuenta
+    SIN_ORDEN
+}
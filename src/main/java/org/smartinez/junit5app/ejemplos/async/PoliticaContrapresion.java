@@ -0,0 +1,11 @@
+package org.smartinez.junit5app.ejemplos.async;
+
+//Que hace BancoAsincrono cuando la cola de un carril esta llena
+public enum PoliticaContrapresion {
+    //el futuro se completa con RejectedExecutionException
+    RECHAZAR,
+    //la operacion corre en el hilo que la envia, que asi se frena solo. No respeta el orden por cuenta
+    EJECUTAR_EN_LLAMADOR,
+    //el hilo que envia se bloquea hasta que haya lugar en la cola
+    ESPERAR
+}
@@ -0,0 +1,41 @@
+package org.smartinez.junit5app.ejemplos.async;
+
+import org.smartinez.junit5app.ejemplos.models.ResultadoOperacion;
+
+import java.math.BigDecimal;
+
+//Evento publicado por BancoAsincrono. Guarda los ids y no las cuentas para no retenerlas en suscriptores lentos
+public class TransferenciaCompletada {
+    private final long origenId;
+    private final long destinoId;
+    private final BigDecimal monto;
+    private final ResultadoOperacion resultado;
+
+    public TransferenciaCompletada(long origenId, long destinoId, BigDecimal monto, ResultadoOperacion resultado) {
+        this.origenId = origenId;
+        this.destinoId = destinoId;
+        this.monto = monto;
+        this.resultado = resultado;
+    }
+
+    public long getOrigenId() {
+        return origenId;
+    }
+
+    public long getDestinoId() {
+        return destinoId;
+    }
+
+    public BigDecimal getMonto() {
+        return monto;
+    }
+
+    public ResultadoOperacion getResultado() {
+        return resultado;
+    }
+
+    @Override
+    public String toString() {
+        return "TransferenciaCompletada{" + origenId + " -> " + destinoId + ", monto=" + monto + ", " + resultado + '}';
+    }
+}
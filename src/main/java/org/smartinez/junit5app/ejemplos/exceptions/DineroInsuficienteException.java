@@ -1,7 +1,88 @@
 package org.smartinez.junit5app.ejemplos.exceptions;
 
+import java.math.BigDecimal;
+
 public class DineroInsuficienteException extends RuntimeException{
+
+    public enum Modo {
+        //stack trace completo, como cualquier excepcion
+        COMPLETA,
+        //sin capturar el stack trace, que es lo caro de crear la excepcion; conserva el detalle
+        SIN_STACK_TRACE,
+        //siempre la misma instancia preasignada, sin stack trace ni detalle: no crea ningun objeto
+        PREASIGNADA
+    }
+
+    public static final long SIN_CUENTA = -1;
+
+    //compartida entre hilos: tampoco acepta excepciones suprimidas, que quedarian acumuladas para siempre
+    private static final DineroInsuficienteException PREASIGNADA =
+            new DineroInsuficienteException("Dinero Insuficiente", SIN_CUENTA, null, null, false, false);
+
+    //se puede elegir al arrancar con -Ddinero.insuficiente.modo=SIN_STACK_TRACE
+    private static volatile Modo modo = modoInicial();
+
+    private final long cuentaId;
+    private final BigDecimal monto;
+    private final BigDecimal saldoDisponible;
+
     public DineroInsuficienteException(String message) {
-        super(message);
+        this(message, SIN_CUENTA, null, null, true, modo == Modo.COMPLETA);
+    }
+
+    public DineroInsuficienteException(String message, long cuentaId, BigDecimal monto, BigDecimal saldoDisponible) {
+        this(message, cuentaId, monto, saldoDisponible, true, modo == Modo.COMPLETA);
+    }
+
+    private DineroInsuficienteException(String message, long cuentaId, BigDecimal monto, BigDecimal saldoDisponible,
+                                        boolean suprimibles, boolean stackTrace) {
+        super(message, null, suprimibles, stackTrace);
+        this.cuentaId = cuentaId;
+        this.monto = monto;
+        this.saldoDisponible = saldoDisponible;
+    }
+
+    //un valor invalido en la propiedad no puede romper la carga de la clase: se usa COMPLETA
+    private static Modo modoInicial() {
+        String valor = System.getProperty("dinero.insuficiente.modo");
+        if (valor == null) {
+            return Modo.COMPLETA;
+        }
+        try {
+            return Modo.valueOf(valor.trim());
+        } catch (IllegalArgumentException e) {
+            System.getLogger(DineroInsuficienteException.class.getName()).log(System.Logger.Level.WARNING,
+                    "Modo de DineroInsuficienteException desconocido: " + valor + ", se usa " + Modo.COMPLETA);
+            return Modo.COMPLETA;
+        }
+    }
+
+    public static Modo getModo() {
+        return modo;
+    }
+
+    public static void setModo(Modo modo) {
+        DineroInsuficienteException.modo = modo;
+    }
+
+    //Crea la excepcion segun el modo configurado; en modo PREASIGNADA devuelve siempre la misma instancia
+    public static DineroInsuficienteException crear(long cuentaId, BigDecimal monto, BigDecimal saldoDisponible) {
+        if (modo == Modo.PREASIGNADA) {
+            return PREASIGNADA;
+        }
+        return new DineroInsuficienteException("Dinero Insuficiente", cuentaId, monto, saldoDisponible);
+    }
+
+    //SIN_CUENTA si la excepcion no tiene detalle
+    public long getCuentaId() {
+        return cuentaId;
+    }
+
+    public BigDecimal getMonto() {
+        return monto;
+    }
+
+    public BigDecimal getSaldoDisponible() {
+        return saldoDisponible;
     }
 }
@@ -0,0 +1,80 @@
+package org.smartinez.junit5app.ejemplos.history;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+//Movimientos de una cuenta en bloques de long[]: por movimiento solo se guardan el instante y el saldo posterior
+//(16 bytes). La secuencia es la posicion y el monto es la diferencia con el saldo anterior.
+//Agregar se llama con la franja de la cuenta tomada y no crea objetos salvo al empezar un bloque nuevo.
+//Los bloques llenos y viejos se pueden desbordar a disco; las lecturas los vuelven a cargar cuando hace falta.
+final class HistorialCuenta {
+
+    static final int BITS_BLOQUE = 8;
+    static final int MOVIMIENTOS_POR_BLOQUE = 1 << BITS_BLOQUE;
+    static final int BYTES_POR_BLOQUE = MOVIMIENTOS_POR_BLOQUE * 2 * Long.BYTES;
+
+    static final class Bloque {
+        volatile long[] datos = new long[MOVIMIENTOS_POR_BLOQUE * 2];
+        volatile long posicion = -1; //posicion en el archivo de desborde, si ya se desbordo
+    }
+
+    private volatile Bloque[] bloques = new Bloque[1];
+    private volatile long cantidad;
+    private long ultimoTiempo;
+
+    long cantidad() {
+        return cantidad;
+    }
+
+    void agregar(long tiempo, long saldo) {
+        long n = cantidad;
+        int b = (int) (n >>> BITS_BLOQUE);
+        Bloque[] actuales = bloques;
+        if (b == actuales.length) {
+            actuales = Arrays.copyOf(actuales, actuales.length * 2);
+        }
+        if (actuales[b] == null) {
+            actuales[b] = new Bloque();
+            bloques = actuales;
+        }
+        //el bloque actual nunca se desborda, asi que sus datos estan en memoria
+        long[] datos = actuales[b].datos;
+        int i = (int) (n & (MOVIMIENTOS_POR_BLOQUE - 1)) * 2;
+        ultimoTiempo = Math.max(tiempo, ultimoTiempo); //los extractos por fecha necesitan instantes no decrecientes
+        datos[i] = ultimoTiempo;
+        datos[i + 1] = saldo;
+        cantidad = n + 1; //escritura volatil: publica el movimiento
+    }
+
+    //Desborda los bloques llenos salvo los ultimos enMemoria; devuelve la nueva posicion de fin del archivo
+    long desbordar(FileChannel canal, long fin, int enMemoria) throws IOException {
+        int llenos = (int) (cantidad >>> BITS_BLOQUE);
+        Bloque[] actuales = bloques;
+        ByteBuffer buffer = null;
+        for (int b = 0; b < llenos - enMemoria; b++) {
+            Bloque bloque = actuales[b];
+            long[] datos = bloque.datos;
+            if (datos == null) {
+                continue;
+            }
+            if (buffer == null) {
+                buffer = ByteBuffer.allocate(BYTES_POR_BLOQUE);
+            }
+            buffer.clear();
+            buffer.asLongBuffer().put(datos);
+            while (buffer.hasRemaining()) {
+                canal.write(buffer, fin + buffer.position());
+            }
+            bloque.posicion = fin;
+            bloque.datos = null; //recien ahora, con la posicion ya publicada
+            fin += BYTES_POR_BLOQUE;
+        }
+        return fin;
+    }
+
+    Bloque bloque(int b) {
+        return bloques[b];
+    }
+}
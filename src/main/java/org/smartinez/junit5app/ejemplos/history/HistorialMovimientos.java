@@ -0,0 +1,330 @@
+package org.smartinez.junit5app.ejemplos.history;
+
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+import org.smartinez.junit5app.ejemplos.models.OyenteOperaciones;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+//Historial de movimientos por cuenta, alimentado como oyente del Banco.
+//Cada movimiento guarda el saldo posterior en unidades de la escala del historial, asi que con cuentas en punto fijo
+//de la misma escala registrar no crea objetos. La escala tiene que alcanzar para los saldos de las cuentas
+//(con menos decimales el historial redondea). Un saldo que no entra en un long a esa escala se guarda recortado
+//a Long.MIN_VALUE/MAX_VALUE y se cuenta en getSaldosFueraDeRango(): el oyente corre despues de que el banco aplico
+//la operacion, asi que no puede rechazarla. Los extractos se arman en forma perezosa, de a un bloque por vez.
+public class HistorialMovimientos implements OyenteOperaciones, Closeable {
+
+    private static final System.Logger LOG = System.getLogger(HistorialMovimientos.class.getName());
+
+    private final int escala;
+    private final LongAdder saldosFueraDeRango = new LongAdder();
+    private final LongAdder fallasDesborde = new LongAdder();
+    private final MapaPorId<HistorialCuenta> historiales = new MapaPorId<>();
+
+    private final FileChannel desborde;
+    private final int bloquesEnMemoria;
+    private long finDesborde;
+    private ScheduledExecutorService desbordador;
+
+    public HistorialMovimientos(int escala) {
+        this.escala = escala;
+        this.desborde = null;
+        this.bloquesEnMemoria = Integer.MAX_VALUE;
+    }
+
+    //Con desborde: cada cuenta conserva en memoria sus ultimos bloquesEnMemoria bloques llenos (de 256 movimientos)
+    //y desbordar() manda los anteriores al archivo
+    public HistorialMovimientos(int escala, Path archivoDesborde, int bloquesEnMemoria) throws IOException {
+        if (bloquesEnMemoria < 0) {
+            throw new IllegalArgumentException("La cantidad de bloques en memoria no puede ser negativa");
+        }
+        this.escala = escala;
+        this.desborde = FileChannel.open(archivoDesborde, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.bloquesEnMemoria = bloquesEnMemoria;
+    }
+
+    //Registra el historial como oyente y abre el historial de las cuentas actuales, sin operaciones en el medio
+    public HistorialMovimientos adjuntar(Banco banco) {
+        banco.leerConsistente(cuentas -> {
+            banco.agregarOyente(this);
+            cuentas.forEach(this::cuentaAgregada);
+            return null;
+        });
+        return this;
+    }
+
+    public int getEscala() {
+        return escala;
+    }
+
+    @Override
+    public void cuentasReiniciadas() {
+        historiales.clear();
+    }
+
+    @Override
+    public void cuentaAgregada(Cuenta cuenta) {
+        registrar(cuenta);
+    }
+
+    @Override
+    public void debito(Cuenta cuenta, BigDecimal monto) {
+        registrar(cuenta);
+    }
+
+    @Override
+    public void credito(Cuenta cuenta, BigDecimal monto) {
+        registrar(cuenta);
+    }
+
+    @Override
+    public void transferencia(Cuenta origen, Cuenta destino, BigDecimal monto) {
+        registrar(origen);
+        registrar(destino);
+    }
+
+    @Override
+    public void saldoFijado(Cuenta cuenta, BigDecimal anterior) {
+        registrar(cuenta);
+    }
+
+    private void registrar(Cuenta cuenta) {
+        HistorialCuenta historial = historiales.get(cuenta.getId());
+        if (historial == null) {
+            historial = historiales.computeIfAbsent(cuenta.getId(), id -> new HistorialCuenta());
+        }
+        historial.agregar(System.currentTimeMillis(), unidades(cuenta));
+    }
+
+    private long unidades(Cuenta cuenta) {
+        if (cuenta.isEscalaFija() && cuenta.getEscala() == escala) {
+            return cuenta.getSaldoUnidades();
+        }
+        BigInteger unidades = cuenta.getSaldo().setScale(escala, RoundingMode.HALF_EVEN).unscaledValue();
+        if (unidades.bitLength() > 63) {
+            saldosFueraDeRango.increment();
+            return unidades.signum() < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        return unidades.longValue();
+    }
+
+    //movimientos cuyo saldo no entraba en un long a la escala del historial y se guardaron recortados
+    public long getSaldosFueraDeRango() {
+        return saldosFueraDeRango.sum();
+    }
+
+    public long getCantidadMovimientos(long cuentaId) {
+        HistorialCuenta historial = historiales.get(cuentaId);
+        return historial == null ? 0 : historial.cantidad();
+    }
+
+    public Stream<Movimiento> extracto(long cuentaId) {
+        return extracto(cuentaId, 0, Long.MAX_VALUE);
+    }
+
+    //Movimientos con secuencia en [desde, hasta); solo los que ya existen al armar el extracto
+    public Stream<Movimiento> extracto(long cuentaId, long desde, long hasta) {
+        HistorialCuenta historial = historiales.get(cuentaId);
+        if (historial == null) {
+            return Stream.empty();
+        }
+        long fin = Math.min(hasta, historial.cantidad());
+        long inicio = Math.max(0, Math.min(desde, fin));
+        Iterator<Movimiento> movimientos = new Lector(cuentaId, historial).iterador(inicio, fin);
+        return StreamSupport.stream(Spliterators.spliterator(movimientos, fin - inicio,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+    }
+
+    //Movimientos con instante en [desde, hasta). Los instantes no decrecen, asi que el rango se busca por biseccion
+    public Stream<Movimiento> extracto(long cuentaId, Instant desde, Instant hasta) {
+        HistorialCuenta historial = historiales.get(cuentaId);
+        if (historial == null) {
+            return Stream.empty();
+        }
+        Lector lector = new Lector(cuentaId, historial);
+        long cantidad = historial.cantidad();
+        return extracto(cuentaId, lector.primeroDesde(desde.toEpochMilli(), cantidad),
+                lector.primeroDesde(hasta.toEpochMilli(), cantidad));
+    }
+
+    //Una pagina del extracto: para la siguiente se pide desde la secuencia del ultimo movimiento + 1
+    public List<Movimiento> pagina(long cuentaId, long desde, int tamanio) {
+        return extracto(cuentaId, desde, desde + tamanio).toList();
+    }
+
+    //Manda a disco los bloques viejos de todas las cuentas; devuelve los bytes desbordados
+    public synchronized long desbordar() {
+        if (desborde == null) {
+            return 0;
+        }
+        long inicio = finDesborde;
+        try {
+            historiales.forEach(historial -> {
+                try {
+                    finDesborde = historial.desbordar(desborde, finDesborde, bloquesEnMemoria);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            //los bloques que se llegaron a escribir ya apuntan a su posicion: ese tramo del archivo no se reusa
+            try {
+                finDesborde = Math.max(finDesborde, desborde.size());
+            } catch (IOException tamanio) {
+                e.addSuppressed(tamanio);
+            }
+            throw e;
+        }
+        return finDesborde - inicio;
+    }
+
+    public synchronized void iniciarDesborde(Duration intervalo) {
+        if (desborde == null) {
+            throw new IllegalStateException("El historial no tiene archivo de desborde");
+        }
+        if (desbordador != null) {
+            throw new IllegalStateException("El desborde ya esta iniciado");
+        }
+        desbordador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "historial-desborde");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        //si la tarea lanza, scheduleWithFixedDelay no la vuelve a ejecutar: la falla se cuenta y se reintenta en el proximo intervalo
+        desbordador.scheduleWithFixedDelay(() -> {
+            try {
+                desbordar();
+            } catch (RuntimeException e) {
+                fallasDesborde.increment();
+                LOG.log(System.Logger.Level.WARNING, "No se pudo desbordar el historial", e);
+            }
+        }, intervalo.toMillis(), intervalo.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public long getFallasDesborde() {
+        return fallasDesborde.sum();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (desbordador != null) {
+            desbordador.shutdownNow();
+            desbordador = null;
+        }
+        if (desborde != null) {
+            desborde.close();
+        }
+    }
+
+    //Lee los movimientos de una cuenta guardando el ultimo bloque usado, cargado de disco si estaba desbordado
+    private class Lector {
+
+        private final long cuentaId;
+        private final HistorialCuenta historial;
+        private int numeroBloque = -1;
+        private long[] datos;
+
+        Lector(long cuentaId, HistorialCuenta historial) {
+            this.cuentaId = cuentaId;
+            this.historial = historial;
+        }
+
+        private long[] datos(long secuencia) {
+            int b = (int) (secuencia >>> HistorialCuenta.BITS_BLOQUE);
+            if (b != numeroBloque) {
+                HistorialCuenta.Bloque bloque = historial.bloque(b);
+                long[] enMemoria = bloque.datos;
+                datos = enMemoria != null ? enMemoria : cargar(bloque.posicion);
+                numeroBloque = b;
+            }
+            return datos;
+        }
+
+        private long[] cargar(long posicion) {
+            ByteBuffer buffer = ByteBuffer.allocate(HistorialCuenta.BYTES_POR_BLOQUE);
+            try {
+                while (buffer.hasRemaining()) {
+                    if (desborde.read(buffer, posicion + buffer.position()) < 0) {
+                        throw new IOException("Archivo de desborde truncado");
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            long[] cargados = new long[HistorialCuenta.MOVIMIENTOS_POR_BLOQUE * 2];
+            buffer.flip();
+            buffer.asLongBuffer().get(cargados);
+            return cargados;
+        }
+
+        private int indice(long secuencia) {
+            return (int) (secuencia & (HistorialCuenta.MOVIMIENTOS_POR_BLOQUE - 1)) * 2;
+        }
+
+        long tiempo(long secuencia) {
+            return datos(secuencia)[indice(secuencia)];
+        }
+
+        long saldo(long secuencia) {
+            return datos(secuencia)[indice(secuencia) + 1];
+        }
+
+        long primeroDesde(long tiempo, long cantidad) {
+            long bajo = 0;
+            long alto = cantidad;
+            while (bajo < alto) {
+                long medio = (bajo + alto) >>> 1;
+                if (tiempo(medio) < tiempo) {
+                    bajo = medio + 1;
+                } else {
+                    alto = medio;
+                }
+            }
+            return bajo;
+        }
+
+        Iterator<Movimiento> iterador(long inicio, long fin) {
+            return new Iterator<>() {
+                private long secuencia = inicio;
+                private long anterior = inicio == 0 ? 0 : saldo(inicio - 1);
+
+                @Override
+                public boolean hasNext() {
+                    return secuencia < fin;
+                }
+
+                @Override
+                public Movimiento next() {
+                    if (secuencia >= fin) {
+                        throw new NoSuchElementException();
+                    }
+                    long saldo = saldo(secuencia);
+                    Movimiento movimiento = new Movimiento(cuentaId, secuencia, Instant.ofEpochMilli(tiempo(secuencia)),
+                            BigDecimal.valueOf(saldo - anterior, escala), BigDecimal.valueOf(saldo, escala));
+                    anterior = saldo;
+                    secuencia++;
+                    return movimiento;
+                }
+            };
+        }
+    }
+}
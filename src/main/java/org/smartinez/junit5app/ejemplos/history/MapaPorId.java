@@ -0,0 +1,94 @@
+package org.smartinez.junit5app.ejemplos.history;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+//Mapa de id de cuenta a valor con direccionamiento abierto. Buscar no crea objetos (un Map<Long, V> crea un Long
+//por cada busqueda fuera del cache de Long.valueOf) y no toma cerrojos; las altas se serializan.
+final class MapaPorId<V> {
+
+    private static final class Entrada<V> {
+        final long id;
+        final V valor;
+
+        Entrada(long id, V valor) {
+            this.id = id;
+            this.valor = valor;
+        }
+    }
+
+    private volatile AtomicReferenceArray<Entrada<V>> tabla = new AtomicReferenceArray<>(64);
+    private int cantidad;
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    V get(long id) {
+        AtomicReferenceArray<Entrada<V>> tabla = this.tabla;
+        int mascara = tabla.length() - 1;
+        for (int i = hash(id) & mascara; ; i = (i + 1) & mascara) {
+            Entrada<V> entrada = tabla.get(i);
+            if (entrada == null) {
+                return null;
+            }
+            if (entrada.id == id) {
+                return entrada.valor;
+            }
+        }
+    }
+
+    V computeIfAbsent(long id, LongFunction<V> crear) {
+        V valor = get(id);
+        return valor != null ? valor : agregar(id, crear);
+    }
+
+    private synchronized V agregar(long id, LongFunction<V> crear) {
+        V existente = get(id);
+        if (existente != null) {
+            return existente;
+        }
+        AtomicReferenceArray<Entrada<V>> actual = tabla;
+        if ((cantidad + 1) * 2 > actual.length()) {
+            //la tabla nueva se arma aparte: las lecturas concurrentes siguen con la anterior hasta que se publica
+            AtomicReferenceArray<Entrada<V>> nueva = new AtomicReferenceArray<>(actual.length() * 2);
+            for (int i = 0; i < actual.length(); i++) {
+                Entrada<V> entrada = actual.get(i);
+                if (entrada != null) {
+                    insertar(nueva, entrada);
+                }
+            }
+            tabla = actual = nueva;
+        }
+        V valor = crear.apply(id);
+        insertar(actual, new Entrada<>(id, valor));
+        cantidad++;
+        return valor;
+    }
+
+    private static <V> void insertar(AtomicReferenceArray<Entrada<V>> tabla, Entrada<V> entrada) {
+        int mascara = tabla.length() - 1;
+        int i = hash(entrada.id) & mascara;
+        while (tabla.get(i) != null) {
+            i = (i + 1) & mascara;
+        }
+        tabla.set(i, entrada);
+    }
+
+    synchronized void clear() {
+        tabla = new AtomicReferenceArray<>(64);
+        cantidad = 0;
+    }
+
+    void forEach(Consumer<V> accion) {
+        AtomicReferenceArray<Entrada<V>> tabla = this.tabla;
+        for (int i = 0; i < tabla.length(); i++) {
+            Entrada<V> entrada = tabla.get(i);
+            if (entrada != null) {
+                accion.accept(entrada.valor);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.smartinez.junit5app.ejemplos.history;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+//Un movimiento del extracto: el monto es positivo para creditos y negativo para debitos.
+//El movimiento 0 de cada cuenta es la apertura, con el saldo inicial como monto
+public class Movimiento {
+
+    private final long cuentaId;
+    private final long secuencia;
+    private final Instant instante;
+    private final BigDecimal monto;
+    private final BigDecimal saldo;
+
+    Movimiento(long cuentaId, long secuencia, Instant instante, BigDecimal monto, BigDecimal saldo) {
+        this.cuentaId = cuentaId;
+        this.secuencia = secuencia;
+        this.instante = instante;
+        this.monto = monto;
+        this.saldo = saldo;
+    }
+
+    public long getCuentaId() {
+        return cuentaId;
+    }
+
+    public long getSecuencia() {
+        return secuencia;
+    }
+
+    public Instant getInstante() {
+        return instante;
+    }
+
+    public BigDecimal getMonto() {
+        return monto;
+    }
+
+    public BigDecimal getSaldo() {
+        return saldo;
+    }
+
+    @Override
+    public String toString() {
+        return "Movimiento{cuenta=" + cuentaId + ", secuencia=" + secuencia + ", instante=" + instante
+                + ", monto=" + monto + ", saldo=" + saldo + "}";
+    }
+}
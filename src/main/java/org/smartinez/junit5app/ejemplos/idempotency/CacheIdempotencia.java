@@ -0,0 +1,156 @@
+package org.smartinez.junit5app.ejemplos.idempotency;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+//Recuerda el resultado de las operaciones recientes por clave de idempotencia, para que un reintento con la misma
+//clave devuelva el resultado original en lugar de volver a ejecutar la operacion.
+//Las claves se reparten en segmentos con su propio cerrojo (no hay un punto de contencion global) y cada segmento
+//es un LinkedHashMap en orden de insercion: como todas las entradas viven lo mismo, las mas viejas estan siempre
+//al principio y vencerlas o desalojarlas por tamaño cuesta O(1) por entrada. Las que todavia estan corriendo no
+//se desalojan: sacarlas dejaria ejecutar un duplicado en paralelo con la original.
+public class CacheIdempotencia<T> {
+
+    private static final class Entrada<T> {
+        final long vence;
+        final Object huella;
+        final CompletableFuture<T> resultado = new CompletableFuture<>();
+
+        Entrada(long vence, Object huella) {
+            this.vence = vence;
+            this.huella = huella;
+        }
+    }
+
+    private static final class Segmento<T> {
+        final ReentrantLock cerrojo = new ReentrantLock();
+        final LinkedHashMap<String, Entrada<T>> entradas = new LinkedHashMap<>();
+    }
+
+    private final Segmento<T>[] segmentos;
+    private final int capacidadPorSegmento;
+    private final long ttlNanos;
+    private final LongAdder duplicados = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public CacheIdempotencia(int capacidad, Duration ttl) {
+        if (capacidad <= 0 || ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("La capacidad y el ttl tienen que ser positivos");
+        }
+        int cantidad = Math.min(Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1,
+                Integer.highestOneBit(capacidad));
+        this.segmentos = new Segmento[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            segmentos[i] = new Segmento<>();
+        }
+        this.capacidadPorSegmento = Math.max(1, capacidad / cantidad);
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    private Segmento<T> segmento(String clave) {
+        int h = clave.hashCode();
+        return segmentos[(h ^ (h >>> 16)) & (segmentos.length - 1)];
+    }
+
+    //Ejecuta la operacion una sola vez por clave mientras la clave este en la cache. Un duplicado recibe el mismo
+    //resultado (si la original todavia esta corriendo, lo espera). La huella describe la operacion: reusar una clave
+    //para otra operacion es un error del cliente. Si la operacion tira una excepcion la clave se olvida
+    public T ejecutar(String clave, Object huella, Supplier<T> operacion) {
+        Objects.requireNonNull(clave, "La clave de idempotencia no puede ser null");
+        Segmento<T> segmento = segmento(clave);
+        long ahora = System.nanoTime();
+        Entrada<T> entrada;
+        boolean nueva = false;
+        segmento.cerrojo.lock();
+        try {
+            vencer(segmento, ahora);
+            entrada = segmento.entradas.get(clave);
+            if (entrada == null) {
+                entrada = new Entrada<>(ahora + ttlNanos, huella);
+                segmento.entradas.put(clave, entrada);
+                nueva = true;
+                Iterator<Entrada<T>> viejas = segmento.entradas.values().iterator();
+                while (segmento.entradas.size() > capacidadPorSegmento && viejas.hasNext()) {
+                    if (viejas.next().resultado.isDone()) {
+                        viejas.remove();
+                    }
+                }
+            }
+        } finally {
+            segmento.cerrojo.unlock();
+        }
+
+        if (!nueva) {
+            if (!Objects.equals(entrada.huella, huella)) {
+                throw new IllegalArgumentException("La clave " + clave + " ya se uso para otra operacion");
+            }
+            duplicados.increment();
+            try {
+                return entrada.resultado.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw e.getCause() instanceof RuntimeException causa ? causa : e;
+            }
+        }
+
+        try {
+            T resultado = operacion.get();
+            entrada.resultado.complete(resultado);
+            return resultado;
+        } catch (Throwable e) { //tambien un Error: si no, los duplicados quedarian esperando para siempre
+            segmento.cerrojo.lock();
+            try {
+                segmento.entradas.remove(clave, entrada);
+            } finally {
+                segmento.cerrojo.unlock();
+            }
+            entrada.resultado.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void vencer(Segmento<T> segmento, long ahora) {
+        Iterator<Map.Entry<String, Entrada<T>>> viejas = segmento.entradas.entrySet().iterator();
+        while (viejas.hasNext()) {
+            Entrada<T> entrada = viejas.next().getValue();
+            if (entrada.vence - ahora > 0) {
+                break;
+            }
+            if (entrada.resultado.isDone()) {
+                viejas.remove();
+            }
+        }
+    }
+
+    public long getDuplicados() {
+        return duplicados.sum();
+    }
+
+    //Claves recordadas, incluidas las vencidas que todavia no se limpiaron
+    public int getTamanio() {
+        int tamanio = 0;
+        for (Segmento<T> segmento : segmentos) {
+            segmento.cerrojo.lock();
+            try {
+                tamanio += segmento.entradas.size();
+            } finally {
+                segmento.cerrojo.unlock();
+            }
+        }
+        return tamanio;
+    }
+
+    public int getCapacidad() {
+        return capacidadPorSegmento * segmentos.length;
+    }
+}
@@ -0,0 +1,126 @@
+package org.smartinez.junit5app.ejemplos.importer;
+
+//Separa una linea en campos y los convierte a numeros leyendo los bytes, sin Strings intermedios.
+//Los metodos devuelven false si el campo no es valido y dejan el valor en los atributos, asi no se crea ningun objeto.
+//No es thread-safe: cada hilo usa su propia instancia.
+public class CamposCsv {
+
+    private static final int DIGITOS_MAXIMOS = 18; //siempre entran en un long
+
+    private final byte separador;
+    private final int[] inicios;
+    private final int[] fines;
+    private byte[] bytes;
+    private int cantidad;
+
+    private long entero;
+    private long sinEscala;
+    private int escala;
+
+    public CamposCsv(byte separador, int camposMaximos) {
+        this.separador = separador;
+        this.inicios = new int[camposMaximos];
+        this.fines = new int[camposMaximos];
+    }
+
+    //devuelve la cantidad de campos, o -1 si hay mas de los esperados
+    public int separar(byte[] bytes, int desde, int hasta) {
+        this.bytes = bytes;
+        this.cantidad = 0;
+        int inicio = desde;
+        for (int i = desde; i <= hasta; i++) {
+            if (i == hasta || bytes[i] == separador) {
+                if (cantidad == inicios.length) {
+                    return cantidad = -1;
+                }
+                int a = inicio;
+                int b = i;
+                while (a < b && esEspacio(bytes[a])) {
+                    a++;
+                }
+                while (b > a && esEspacio(bytes[b - 1])) {
+                    b--;
+                }
+                inicios[cantidad] = a;
+                fines[cantidad] = b;
+                cantidad++;
+                inicio = i + 1;
+            }
+        }
+        return cantidad;
+    }
+
+    private static boolean esEspacio(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    public int inicio(int campo) {
+        return inicios[campo];
+    }
+
+    public int fin(int campo) {
+        return fines[campo];
+    }
+
+    public boolean leerEntero(int campo) {
+        int a = inicios[campo];
+        int b = fines[campo];
+        boolean negativo = a < b && bytes[a] == '-';
+        if (negativo) {
+            a++;
+        }
+        if (a == b || b - a > DIGITOS_MAXIMOS) {
+            return false;
+        }
+        long valor = 0;
+        for (int i = a; i < b; i++) {
+            int digito = bytes[i] - '0';
+            if (digito < 0 || digito > 9) {
+                return false;
+            }
+            valor = valor * 10 + digito;
+        }
+        entero = negativo ? -valor : valor;
+        return true;
+    }
+
+    //decimal sin signo con punto opcional, eg: 1000.12345 queda como sinEscala 100012345 y escala 5
+    public boolean leerDecimal(int campo) {
+        int a = inicios[campo];
+        int b = fines[campo];
+        long valor = 0;
+        int digitos = 0;
+        int punto = -1;
+        for (int i = a; i < b; i++) {
+            byte c = bytes[i];
+            if (c == '.' && punto < 0) {
+                punto = i;
+            } else if (c >= '0' && c <= '9') {
+                if (++digitos > DIGITOS_MAXIMOS) {
+                    return false;
+                }
+                valor = valor * 10 + (c - '0');
+            } else {
+                return false;
+            }
+        }
+        if (digitos == 0) {
+            return false;
+        }
+        sinEscala = valor;
+        escala = punto < 0 ? 0 : b - punto - 1;
+        return true;
+    }
+
+    public long getEntero() {
+        return entero;
+    }
+
+    public long getSinEscala() {
+        return sinEscala;
+    }
+
+    public int getEscala() {
+        return escala;
+    }
+}
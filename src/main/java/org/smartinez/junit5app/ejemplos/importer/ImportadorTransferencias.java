@@ -0,0 +1,176 @@
+package org.smartinez.junit5app.ejemplos.importer;
+
+import org.smartinez.junit5app.ejemplos.models.*;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+//Importa archivos CSV de transferencias (origen,destino,monto con los ids de las cuentas) de cualquier tamano.
+//El archivo se divide en regiones alineadas a fin de linea y cada hilo parsea la suya en streaming, directo de bytes
+//a numeros, y aplica las filas en lotes con Banco.transferirBatch. El orden se respeta dentro de cada region,
+//no entre regiones. Las filas invalidas o rechazadas van al archivo de rechazos como: offset;motivo;linea
+public class ImportadorTransferencias {
+
+    private static final int ORIGEN = 0;
+    private static final int DESTINO = 1;
+    private static final int MONTO = 2;
+
+    private final Banco banco;
+    private final Path rechazos;
+    private final int tamanoLote;
+    private final int hilos;
+
+    public ImportadorTransferencias(Banco banco, Path rechazos) {
+        this(banco, rechazos, 1000, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ImportadorTransferencias(Banco banco, Path rechazos, int tamanoLote, int hilos) {
+        if (tamanoLote < 1 || hilos < 1) {
+            throw new IllegalArgumentException("El tamano de lote y la cantidad de hilos tienen que ser positivos");
+        }
+        this.banco = banco;
+        this.rechazos = rechazos;
+        this.tamanoLote = tamanoLote;
+        this.hilos = hilos;
+    }
+
+    public ResultadoImportacion importar(Path csv) throws IOException {
+        try (FileChannel canal = FileChannel.open(csv, StandardOpenOption.READ);
+             OutputStream salidaRechazos = new BufferedOutputStream(Files.newOutputStream(rechazos), 1 << 16)) {
+            long[] limites = LectorRegiones.dividir(canal, hilos);
+            Contadores contadores = new Contadores();
+            ExecutorService executor = Executors.newFixedThreadPool(hilos);
+            try {
+                List<Future<?>> regiones = new ArrayList<>();
+                for (int i = 0; i < hilos; i++) {
+                    Region region = new Region(canal, salidaRechazos, contadores);
+                    long inicio = limites[i];
+                    long fin = limites[i + 1];
+                    regiones.add(executor.submit(() -> {
+                        LectorRegiones.recorrer(canal, inicio, fin, region);
+                        region.aplicarLote();
+                        return null;
+                    }));
+                }
+                for (Future<?> region : regiones) {
+                    region.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Importacion interrumpida", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                throw new IOException("Fallo la importacion de " + csv, e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+            return new ResultadoImportacion(contadores.filas.sum(), contadores.aplicadas.sum(), contadores.rechazadas.sum());
+        }
+    }
+
+    private static class Contadores {
+        final LongAdder filas = new LongAdder();
+        final LongAdder aplicadas = new LongAdder();
+        final LongAdder rechazadas = new LongAdder();
+    }
+
+    private class Region implements LectorRegiones.ConsumidorLinea {
+        private final FileChannel canal;
+        private final OutputStream salidaRechazos;
+        private final Contadores contadores;
+        private final CamposCsv campos = new CamposCsv((byte) ',', 3);
+        private final List<Transferencia> lote = new ArrayList<>(tamanoLote);
+        //para poder copiar al archivo de rechazos las filas que falle el lote
+        private final long[] offsets = new long[tamanoLote];
+        private final int[] largos = new int[tamanoLote];
+
+        Region(FileChannel canal, OutputStream salidaRechazos, Contadores contadores) {
+            this.canal = canal;
+            this.salidaRechazos = salidaRechazos;
+            this.contadores = contadores;
+        }
+
+        @Override
+        public void linea(byte[] bytes, int desde, int hasta, long offset) throws IOException {
+            if (offset == 0 && esCabecera(bytes[desde])) {
+                return;
+            }
+            contadores.filas.increment();
+            if (campos.separar(bytes, desde, hasta) != 3) {
+                rechazar(offset, "Cantidad de campos invalida", bytes, desde, hasta);
+                return;
+            }
+            if (!campos.leerEntero(ORIGEN)) {
+                rechazar(offset, "Id de cuenta invalido", bytes, desde, hasta);
+                return;
+            }
+            long origen = campos.getEntero();
+            if (!campos.leerEntero(DESTINO)) {
+                rechazar(offset, "Id de cuenta invalido", bytes, desde, hasta);
+                return;
+            }
+            long destino = campos.getEntero();
+            if (!campos.leerDecimal(MONTO) || campos.getSinEscala() == 0) {
+                rechazar(offset, "Monto invalido", bytes, desde, hasta);
+                return;
+            }
+            Optional<Cuenta> cuentaOrigen = banco.buscarPorId(origen);
+            Optional<Cuenta> cuentaDestino = banco.buscarPorId(destino);
+            if (cuentaOrigen.isEmpty() || cuentaDestino.isEmpty()) {
+                rechazar(offset, "Cuenta inexistente", bytes, desde, hasta);
+                return;
+            }
+            offsets[lote.size()] = offset;
+            largos[lote.size()] = hasta - desde;
+            lote.add(new Transferencia(cuentaOrigen.get(), cuentaDestino.get(),
+                    BigDecimal.valueOf(campos.getSinEscala(), campos.getEscala())));
+            if (lote.size() == tamanoLote) {
+                aplicarLote();
+            }
+        }
+
+        void aplicarLote() throws IOException {
+            if (lote.isEmpty()) {
+                return;
+            }
+            ResultadoLote resultado = banco.transferirBatch(lote, ModoLote.MEJOR_ESFUERZO);
+            contadores.aplicadas.add(resultado.getAplicadas());
+            for (ResultadoLote.Fallo fallo : resultado.getFallos()) {
+                int i = fallo.getIndice();
+                byte[] linea = new byte[largos[i]]; //camino raro: se relee la fila del archivo
+                canal.read(ByteBuffer.wrap(linea), offsets[i]);
+                rechazar(offsets[i], fallo.getMotivo(), linea, 0, linea.length);
+            }
+            lote.clear();
+        }
+
+        private void rechazar(long offset, String motivo, byte[] bytes, int desde, int hasta) throws IOException {
+            contadores.rechazadas.increment();
+            byte[] prefijo = (offset + ";" + motivo + ";").getBytes(StandardCharsets.UTF_8);
+            synchronized (salidaRechazos) {
+                salidaRechazos.write(prefijo);
+                salidaRechazos.write(bytes, desde, hasta - desde);
+                salidaRechazos.write('\n');
+            }
+        }
+    }
+
+    private static boolean esCabecera(byte primero) {
+        return (primero >= 'a' && primero <= 'z') || (primero >= 'A' && primero <= 'Z');
+    }
+}
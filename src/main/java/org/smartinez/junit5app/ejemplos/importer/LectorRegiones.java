@@ -0,0 +1,111 @@
+package org.smartinez.junit5app.ejemplos.importer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+//Recorre archivos de texto por lineas directamente sobre bytes, sin crear Strings.
+//Un archivo se puede dividir en regiones alineadas a fin de linea para procesarlas en paralelo.
+public class LectorRegiones {
+
+    private static final int TAMANO_BUFFER = 1 << 20;
+
+    public interface ConsumidorLinea {
+        //la linea es bytes[desde, hasta) sin el fin de linea; offset es su posicion en el archivo
+        void linea(byte[] bytes, int desde, int hasta, long offset) throws IOException;
+    }
+
+    public interface BuscadorLinea {
+        //igual que ConsumidorLinea, pero devuelve false para dejar de leer la region
+        boolean linea(byte[] bytes, int desde, int hasta, long offset) throws IOException;
+    }
+
+    private LectorRegiones() {
+    }
+
+    //Devuelve partes + 1 limites: la region i es [limites[i], limites[i + 1]) y siempre empieza al inicio de una linea
+    public static long[] dividir(FileChannel canal, int partes) throws IOException {
+        long tamano = canal.size();
+        long[] limites = new long[partes + 1];
+        limites[partes] = tamano;
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        for (int i = 1; i < partes; i++) {
+            long desde = Math.max(limites[i - 1], tamano * i / partes);
+            limites[i] = siguienteLinea(canal, desde, tamano, buffer);
+        }
+        return limites;
+    }
+
+    private static long siguienteLinea(FileChannel canal, long desde, long tamano, ByteBuffer buffer) throws IOException {
+        if (desde == 0) {
+            return 0;
+        }
+        long posicion = desde - 1; //si desde ya es inicio de linea se queda ahi
+        while (posicion < tamano) {
+            buffer.clear();
+            int leidos = canal.read(buffer, posicion);
+            if (leidos <= 0) {
+                break;
+            }
+            for (int i = 0; i < leidos; i++) {
+                if (buffer.get(i) == '\n') {
+                    return posicion + i + 1;
+                }
+            }
+            posicion += leidos;
+        }
+        return tamano;
+    }
+
+    public static void recorrer(FileChannel canal, long inicio, long fin, ConsumidorLinea consumidor) throws IOException {
+        buscar(canal, inicio, fin, TAMANO_BUFFER, (bytes, desde, hasta, offset) -> {
+            consumidor.linea(bytes, desde, hasta, offset);
+            return true;
+        });
+    }
+
+    //Recorre hasta que el buscador devuelve false. Con un buffer chico para leer solo unas pocas lineas;
+    //el buffer crece si una linea no entra
+    public static void buscar(FileChannel canal, long inicio, long fin, int tamanoBuffer, BuscadorLinea buscador) throws IOException {
+        byte[] bytes = new byte[tamanoBuffer];
+        int ocupados = 0;
+        long offsetBuffer = inicio; //posicion en el archivo de bytes[0]
+        long posicion = inicio;
+        while (posicion < fin) {
+            if (ocupados == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2); //linea mas larga que el buffer
+            }
+            ByteBuffer destino = ByteBuffer.wrap(bytes, ocupados, (int) Math.min(bytes.length - ocupados, fin - posicion));
+            int leidos = canal.read(destino, posicion);
+            if (leidos < 0) {
+                break;
+            }
+            posicion += leidos;
+            ocupados += leidos;
+
+            int inicioLinea = 0;
+            for (int i = ocupados - leidos; i < ocupados; i++) { //lo anterior ya se reviso y no tiene fin de linea
+                if (bytes[i] == '\n') {
+                    if (!emitir(bytes, inicioLinea, i, offsetBuffer, buscador)) {
+                        return;
+                    }
+                    inicioLinea = i + 1;
+                }
+            }
+            System.arraycopy(bytes, inicioLinea, bytes, 0, ocupados - inicioLinea);
+            ocupados -= inicioLinea;
+            offsetBuffer += inicioLinea;
+        }
+        if (ocupados > 0) {
+            emitir(bytes, 0, ocupados, offsetBuffer, buscador); //ultima linea sin fin de linea
+        }
+    }
+
+    private static boolean emitir(byte[] bytes, int desde, int hasta, long offsetBuffer, BuscadorLinea buscador) throws IOException {
+        if (hasta > desde && bytes[hasta - 1] == '\r') {
+            hasta--;
+        }
+        return hasta <= desde || buscador.linea(bytes, desde, hasta, offsetBuffer + desde);
+    }
+}
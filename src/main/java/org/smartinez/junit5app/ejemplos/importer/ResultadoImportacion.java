@@ -0,0 +1,30 @@
+package org.smartinez.junit5app.ejemplos.importer;
+
+public class ResultadoImportacion {
+    private final long filas;
+    private final long aplicadas;
+    private final long rechazadas;
+
+    ResultadoImportacion(long filas, long aplicadas, long rechazadas) {
+        this.filas = filas;
+        this.aplicadas = aplicadas;
+        this.rechazadas = rechazadas;
+    }
+
+    public long getFilas() {
+        return filas;
+    }
+
+    public long getAplicadas() {
+        return aplicadas;
+    }
+
+    public long getRechazadas() {
+        return rechazadas;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultadoImportacion{filas=" + filas + ", aplicadas=" + aplicadas + ", rechazadas=" + rechazadas + '}';
+    }
+}
@@ -0,0 +1,139 @@
+package org.smartinez.junit5app.ejemplos.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+//Histograma log-lineal al estilo HDR: cada potencia de 2 se divide en 32 sub-buckets, asi el error relativo
+//queda por debajo del 3% para cualquier valor entre 1 y Long.MAX_VALUE con un arreglo fijo de 1920 contadores.
+//Registrar es un incremento atomico sin cerrojos ni asignaciones. Los contadores estan repartidos en franjas
+//elegidas por hilo, como LongAdder, para que hilos que registran latencias parecidas no peleen por la misma
+//linea de cache; la foto suma las franjas.
+public class Histograma {
+
+    private static final int BITS_SUB = 5;
+    private static final int SUB_BUCKETS = 1 << BITS_SUB;
+    private static final int BUCKETS = SUB_BUCKETS * (64 - BITS_SUB + 1);
+    private static final int FRANJAS = Integer.highestOneBit(Math.min(32, Runtime.getRuntime().availableProcessors() * 2));
+
+    //cada franja se crea la primera vez que un hilo la usa: un histograma poco usado ocupa una sola
+    private final AtomicReferenceArray<AtomicLongArray> franjas = new AtomicReferenceArray<>(FRANJAS);
+    private final LongAdder cantidad = new LongAdder();
+    private final LongAdder suma = new LongAdder();
+    private final LongAccumulator maximo = new LongAccumulator(Math::max, 0);
+
+    public void registrar(long valor) {
+        if (valor < 0) {
+            valor = 0;
+        }
+        franja().incrementAndGet(indice(valor));
+        cantidad.increment();
+        suma.add(valor);
+        maximo.accumulate(valor);
+    }
+
+    private AtomicLongArray franja() {
+        int h = System.identityHashCode(Thread.currentThread());
+        h ^= (h >>> 16);
+        int i = h & (FRANJAS - 1);
+        AtomicLongArray franja = franjas.get(i);
+        if (franja == null && !franjas.compareAndSet(i, null, franja = new AtomicLongArray(BUCKETS))) {
+            franja = franjas.get(i);
+        }
+        return franja;
+    }
+
+    static int indice(long valor) {
+        if (valor < SUB_BUCKETS) {
+            return (int) valor;
+        }
+        int desplazamiento = 63 - Long.numberOfLeadingZeros(valor) - BITS_SUB;
+        int sub = (int) (valor >>> desplazamiento) - SUB_BUCKETS;
+        return SUB_BUCKETS + desplazamiento * SUB_BUCKETS + sub;
+    }
+
+    //mayor valor que cae en el bucket
+    static long limiteSuperior(int indice) {
+        if (indice < SUB_BUCKETS) {
+            return indice;
+        }
+        int desplazamiento = (indice - SUB_BUCKETS) / SUB_BUCKETS;
+        long sub = (indice - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << desplazamiento) - 1;
+    }
+
+    //La foto no es atomica respecto de registros concurrentes, pero cada contador es exacto
+    public Foto foto() {
+        long[] copia = new long[BUCKETS];
+        for (int f = 0; f < FRANJAS; f++) {
+            AtomicLongArray franja = franjas.get(f);
+            if (franja != null) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    copia[i] += franja.get(i);
+                }
+            }
+        }
+        return new Foto(copia, cantidad.sum(), suma.sum(), maximo.get());
+    }
+
+    public void reiniciar() {
+        for (int f = 0; f < FRANJAS; f++) {
+            AtomicLongArray franja = franjas.get(f);
+            if (franja != null) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    franja.set(i, 0);
+                }
+            }
+        }
+        cantidad.reset();
+        suma.reset();
+        maximo.reset();
+    }
+
+    public static class Foto {
+        private final long[] conteos;
+        private final long cantidad;
+        private final long suma;
+        private final long maximo;
+
+        Foto(long[] conteos, long cantidad, long suma, long maximo) {
+            this.conteos = conteos;
+            this.cantidad = cantidad;
+            this.suma = suma;
+            this.maximo = maximo;
+        }
+
+        public long getCantidad() {
+            return cantidad;
+        }
+
+        public long getMaximo() {
+            return maximo;
+        }
+
+        public double getMedia() {
+            return cantidad == 0 ? 0 : (double) suma / cantidad;
+        }
+
+        //percentil entre 0 y 100, eg: percentil(99.9)
+        public long percentil(double percentil) {
+            long total = 0;
+            for (long conteo : conteos) {
+                total += conteo;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long objetivo = Math.max(1, (long) Math.ceil(total * percentil / 100.0));
+            long acumulado = 0;
+            for (int i = 0; i < conteos.length; i++) {
+                acumulado += conteos[i];
+                if (acumulado >= objetivo) {
+                    return Math.min(limiteSuperior(i), maximo);
+                }
+            }
+            return maximo;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.smartinez.junit5app.ejemplos.metrics;
+
+import java.time.Instant;
+import java.util.Map;
+
+public class InstantaneaMetricas {
+    private final Instant momento;
+    private final Map<Operacion, DeOperacion> operaciones;
+    private final long rechazosSaldoInsuficiente;
+
+    InstantaneaMetricas(Instant momento, Map<Operacion, DeOperacion> operaciones, long rechazosSaldoInsuficiente) {
+        this.momento = momento;
+        this.operaciones = operaciones;
+        this.rechazosSaldoInsuficiente = rechazosSaldoInsuficiente;
+    }
+
+    public Instant getMomento() {
+        return momento;
+    }
+
+    public DeOperacion get(Operacion operacion) {
+        return operaciones.get(operacion);
+    }
+
+    public long getRechazosSaldoInsuficiente() {
+        return rechazosSaldoInsuficiente;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(momento.toString());
+        operaciones.forEach((operacion, metricas) -> sb.append(' ').append(operacion).append(metricas));
+        return sb.append(" rechazosSaldoInsuficiente=").append(rechazosSaldoInsuficiente).toString();
+    }
+
+    public static class DeOperacion {
+        private final long exitos;
+        private final long errores;
+        private final Histograma.Foto latencias;
+
+        DeOperacion(long exitos, long errores, Histograma.Foto latencias) {
+            this.exitos = exitos;
+            this.errores = errores;
+            this.latencias = latencias;
+        }
+
+        public long getExitos() {
+            return exitos;
+        }
+
+        public long getErrores() {
+            return errores;
+        }
+
+        //latencias en nanosegundos
+        public Histograma.Foto getLatencias() {
+            return latencias;
+        }
+
+        @Override
+        public String toString() {
+            return "{ok=" + exitos + ", error=" + errores
+                    + ", p50=" + latencias.percentil(50) + "ns, p99=" + latencias.percentil(99)
+                    + "ns, p999=" + latencias.percentil(99.9) + "ns, max=" + latencias.getMaximo() + "ns}";
+        }
+    }
+}
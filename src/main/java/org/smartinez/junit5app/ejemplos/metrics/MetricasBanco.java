@@ -0,0 +1,111 @@
+package org.smartinez.junit5app.ejemplos.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//Contadores sin cerrojos (LongAdder) e histogramas de latencia en nanosegundos por operacion.
+//Se activan con Banco.setMetricas; sin metricas el camino caliente solo compara una referencia con null.
+public class MetricasBanco implements Closeable {
+
+    private static final System.Logger LOG = System.getLogger(MetricasBanco.class.getName());
+
+    private final Map<Operacion, PorOperacion> operaciones = new EnumMap<>(Operacion.class);
+    private final LongAdder rechazosSaldoInsuficiente = new LongAdder();
+    private final LongAdder fallasVolcado = new LongAdder();
+    private ScheduledExecutorService volcador;
+
+    public MetricasBanco() {
+        for (Operacion operacion : Operacion.values()) {
+            operaciones.put(operacion, new PorOperacion());
+        }
+    }
+
+    //inicio es el System.nanoTime() tomado antes de la operacion
+    public void registrar(Operacion operacion, long inicio, boolean exito) {
+        PorOperacion metricas = operaciones.get(operacion);
+        metricas.latencias.registrar(System.nanoTime() - inicio);
+        (exito ? metricas.exitos : metricas.errores).increment();
+    }
+
+    public void rechazoSaldoInsuficiente() {
+        rechazosSaldoInsuficiente.increment();
+    }
+
+    public InstantaneaMetricas instantanea() {
+        Map<Operacion, InstantaneaMetricas.DeOperacion> fotos = new EnumMap<>(Operacion.class);
+        operaciones.forEach((operacion, metricas) -> fotos.put(operacion, new InstantaneaMetricas.DeOperacion(
+                metricas.exitos.sum(), metricas.errores.sum(), metricas.latencias.foto())));
+        return new InstantaneaMetricas(Instant.now(), fotos, rechazosSaldoInsuficiente.sum());
+    }
+
+    public void reiniciar() {
+        operaciones.values().forEach(metricas -> {
+            metricas.exitos.reset();
+            metricas.errores.reset();
+            metricas.latencias.reiniciar();
+        });
+        rechazosSaldoInsuficiente.reset();
+    }
+
+    //Agrega una linea con la instantanea al archivo cada intervalo, en un hilo aparte
+    public synchronized void iniciarVolcado(Path archivo, Duration intervalo) {
+        if (volcador != null) {
+            throw new IllegalStateException("El volcado ya esta iniciado");
+        }
+        volcador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "metricas-volcado");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        //si una tarea de scheduleAtFixedRate lanza, no se vuelve a ejecutar: las fallas se cuentan y se registran
+        volcador.scheduleAtFixedRate(() -> {
+            try {
+                volcar(archivo);
+            } catch (RuntimeException e) {
+                fallasVolcado.increment();
+                LOG.log(System.Logger.Level.WARNING, "No se pudieron volcar las metricas en " + archivo, e);
+            }
+        }, intervalo.toMillis(), intervalo.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    //volcados periodicos que fallaron; el volcado sigue en el proximo intervalo
+    public long getFallasVolcado() {
+        return fallasVolcado.sum();
+    }
+
+    public void volcar(Path archivo) {
+        try {
+            Files.writeString(archivo, instantanea().toString() + System.lineSeparator(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (volcador != null) {
+            volcador.shutdownNow();
+            volcador = null;
+        }
+    }
+
+    private static class PorOperacion {
+        final LongAdder exitos = new LongAdder();
+        final LongAdder errores = new LongAdder();
+        final Histograma latencias = new Histograma();
+    }
+}
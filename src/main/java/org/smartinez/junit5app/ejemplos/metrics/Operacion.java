@@ -0,0 +1,8 @@
+package org.smartinez.junit5app.ejemplos.metrics;
+
+public enum Operacion {
+    DEBITO,
+    CREDITO,
+    TRANSFERENCIA,
+    TRANSFERENCIA_LOTE
+}
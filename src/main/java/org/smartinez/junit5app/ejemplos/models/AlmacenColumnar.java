@@ -0,0 +1,246 @@
+package org.smartinez.junit5app.ejemplos.models;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Columnas fuera del heap para millones de cuentas: id (8 bytes), saldo en unidades (8) y codigo de persona (4),
+//mas el indice por id (una tabla hash de filas con carga hasta 3/4, entre 5 y 11 bytes por cuenta): menos de
+//32 bytes por cuenta y nada que recorra el GC. Los nombres se guardan una sola vez en un diccionario, y cada
+//persona tiene la lista de sus filas (un int por cuenta en el heap) para buscar por persona sin recorrer la columna.
+//Las columnas crecen por bloques, asi que agregar filas nunca copia las ya existentes.
+//Las altas son de a una (Banco las hace con su monitor tomado); las lecturas pueden ser concurrentes.
+final class AlmacenColumnar {
+
+    private static final int BITS_BLOQUE = 16;
+    private static final int FILAS_POR_BLOQUE = 1 << BITS_BLOQUE;
+    private static final int SIN_PERSONA = 0;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final int escala;
+    private volatile ByteBuffer[] ids = new ByteBuffer[0];
+    private volatile ByteBuffer[] unidades = new ByteBuffer[0];
+    private volatile ByteBuffer[] personas = new ByteBuffer[0];
+    private volatile int filas;
+
+    //direccionamiento abierto: cada entrada es fila + 1 (0 = libre) y el id se compara contra la columna
+    private volatile ByteBuffer indice = tabla(1024);
+
+    private final Map<String, Integer> codigos = new ConcurrentHashMap<>();
+    private volatile String[] nombres = new String[16];
+    private volatile FilasPersona[] filasPorCodigo = new FilasPersona[16];
+    private int cantidadNombres = 1; //el codigo 0 es la persona null
+
+    AlmacenColumnar(int escala) {
+        if (escala < 0 || escala > SaldoEnUnidades.ESCALA_MAXIMA) {
+            throw new IllegalArgumentException("La escala debe estar entre 0 y " + SaldoEnUnidades.ESCALA_MAXIMA);
+        }
+        this.escala = escala;
+    }
+
+    private static ByteBuffer tabla(int entradas) {
+        return ByteBuffer.allocateDirect(entradas * Integer.BYTES).order(ByteOrder.nativeOrder());
+    }
+
+    private static ByteBuffer bloque(int bytesPorFila) {
+        return ByteBuffer.allocateDirect(FILAS_POR_BLOQUE * bytesPorFila).order(ByteOrder.nativeOrder());
+    }
+
+    int escala() {
+        return escala;
+    }
+
+    int filas() {
+        return filas;
+    }
+
+    //Devuelve la fila nueva; quien llama ya verifico que el id no exista
+    int agregar(long id, String persona, long saldoUnidades) {
+        int fila = filas;
+        if (fila == ids.length * FILAS_POR_BLOQUE) {
+            ids = agregarBloque(ids, Long.BYTES);
+            unidades = agregarBloque(unidades, Long.BYTES);
+            personas = agregarBloque(personas, Integer.BYTES);
+        }
+        LONGS.setRelease(ids[fila >>> BITS_BLOQUE], posicion(fila, Long.BYTES), id);
+        LONGS.setRelease(unidades[fila >>> BITS_BLOQUE], posicion(fila, Long.BYTES), saldoUnidades);
+        int codigo = codigo(persona);
+        INTS.setRelease(personas[fila >>> BITS_BLOQUE], posicion(fila, Integer.BYTES), codigo);
+        if (codigo != SIN_PERSONA) {
+            filasPorCodigo[codigo].agregar(fila);
+        }
+        if ((fila + 1) * 4L > indice.capacity() / Integer.BYTES * 3L) {
+            indice = reindexar(fila, indice.capacity() / Integer.BYTES * 2);
+        }
+        indexar(indice, id, fila);
+        filas = fila + 1; //escritura volatil: publica la fila completa
+        return fila;
+    }
+
+    private static ByteBuffer[] agregarBloque(ByteBuffer[] bloques, int bytesPorFila) {
+        ByteBuffer[] nuevos = Arrays.copyOf(bloques, bloques.length + 1);
+        nuevos[bloques.length] = bloque(bytesPorFila);
+        return nuevos;
+    }
+
+    private static int posicion(int fila, int bytes) {
+        return (fila & (FILAS_POR_BLOQUE - 1)) * bytes;
+    }
+
+    //La tabla nueva se arma aparte y se publica entera: las lecturas concurrentes siguen usando la anterior
+    private ByteBuffer reindexar(int cantidad, int entradas) {
+        ByteBuffer nueva = tabla(entradas);
+        for (int fila = 0; fila < cantidad; fila++) {
+            indexar(nueva, id(fila), fila);
+        }
+        return nueva;
+    }
+
+    private static void indexar(ByteBuffer tabla, long id, int fila) {
+        int mascara = tabla.capacity() / Integer.BYTES - 1;
+        int i = hash(id) & mascara;
+        while ((int) INTS.getAcquire(tabla, i * Integer.BYTES) != 0) {
+            i = (i + 1) & mascara;
+        }
+        INTS.setRelease(tabla, i * Integer.BYTES, fila + 1);
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    //-1 si no hay una cuenta con ese id
+    int buscarFila(long id) {
+        ByteBuffer tabla = indice;
+        int mascara = tabla.capacity() / Integer.BYTES - 1;
+        for (int i = hash(id) & mascara; ; i = (i + 1) & mascara) {
+            int entrada = (int) INTS.getAcquire(tabla, i * Integer.BYTES);
+            if (entrada == 0) {
+                return -1;
+            }
+            if (id(entrada - 1) == id) {
+                return entrada - 1;
+            }
+        }
+    }
+
+    long id(int fila) {
+        return (long) LONGS.getAcquire(ids[fila >>> BITS_BLOQUE], posicion(fila, Long.BYTES));
+    }
+
+    long unidades(int fila) {
+        return (long) LONGS.getAcquire(unidades[fila >>> BITS_BLOQUE], posicion(fila, Long.BYTES));
+    }
+
+    //se llama con la franja de la cuenta tomada
+    void fijarUnidades(int fila, long valor) {
+        LONGS.setRelease(unidades[fila >>> BITS_BLOQUE], posicion(fila, Long.BYTES), valor);
+    }
+
+    String persona(int fila) {
+        return nombres[codigoPersona(fila)];
+    }
+
+    //Sincronizado para que dos cambios de la misma cuenta no dejen la fila en una lista ajena. La fila entra en la
+    //lista nueva antes de cambiar la columna y sale de la anterior despues; filasDePersona descarta la que encuentre
+    //a mitad de camino
+    synchronized void fijarPersona(int fila, String persona) {
+        int anterior = codigoPersona(fila);
+        int codigo = codigo(persona);
+        if (codigo == anterior) {
+            return;
+        }
+        if (codigo != SIN_PERSONA) {
+            filasPorCodigo[codigo].agregar(fila);
+        }
+        INTS.setRelease(personas[fila >>> BITS_BLOQUE], posicion(fila, Integer.BYTES), codigo);
+        if (anterior != SIN_PERSONA) {
+            filasPorCodigo[anterior].quitar(fila);
+        }
+    }
+
+    private int codigoPersona(int fila) {
+        return (int) INTS.getAcquire(personas[fila >>> BITS_BLOQUE], posicion(fila, Integer.BYTES));
+    }
+
+    //Filas de la persona en orden ascendente, sacadas de su lista: O(cuentas de la persona), no O(filas)
+    int[] filasDePersona(String persona) {
+        Integer codigo = persona == null ? null : codigos.get(persona);
+        if (codigo == null) {
+            return new int[0];
+        }
+        int[] candidatas = filasPorCodigo[codigo].copia();
+        int n = 0;
+        for (int fila : candidatas) {
+            if (codigoPersona(fila) == codigo) {
+                candidatas[n++] = fila;
+            }
+        }
+        Arrays.sort(candidatas, 0, n);
+        return n == candidatas.length ? candidatas : Arrays.copyOf(candidatas, n);
+    }
+
+    private int codigo(String persona) {
+        if (persona == null) {
+            return SIN_PERSONA;
+        }
+        Integer codigo = codigos.get(persona);
+        return codigo != null ? codigo : registrar(persona);
+    }
+
+    private synchronized int registrar(String persona) {
+        Integer existente = codigos.get(persona);
+        if (existente != null) {
+            return existente;
+        }
+        int codigo = cantidadNombres++;
+        String[] actuales = nombres;
+        if (codigo == actuales.length) {
+            actuales = Arrays.copyOf(actuales, actuales.length * 2);
+        }
+        actuales[codigo] = persona;
+        FilasPersona[] listas = filasPorCodigo;
+        if (codigo == listas.length) {
+            listas = Arrays.copyOf(listas, listas.length * 2);
+        }
+        listas[codigo] = new FilasPersona();
+        filasPorCodigo = listas;
+        nombres = actuales; //se publican el nombre y la lista antes que el codigo
+        codigos.put(persona, codigo);
+        return codigo;
+    }
+
+    //Lista de filas de una persona. Las altas (con el monitor de Banco) y los cambios de persona (con el del almacen)
+    //no se excluyen entre si, asi que se protege con su propio monitor; son pocas filas por persona
+    private static final class FilasPersona {
+        private int[] filas = new int[2];
+        private int cantidad;
+
+        synchronized void agregar(int fila) {
+            if (cantidad == filas.length) {
+                filas = Arrays.copyOf(filas, cantidad * 2);
+            }
+            filas[cantidad++] = fila;
+        }
+
+        synchronized void quitar(int fila) {
+            for (int i = 0; i < cantidad; i++) {
+                if (filas[i] == fila) {
+                    filas[i] = filas[--cantidad];
+                    return;
+                }
+            }
+        }
+
+        synchronized int[] copia() {
+            return Arrays.copyOf(filas, cantidad);
+        }
+    }
+}
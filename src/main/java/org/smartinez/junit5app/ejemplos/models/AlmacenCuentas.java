@@ -0,0 +1,28 @@
+package org.smartinez.junit5app.ejemplos.models;
+
+import java.util.List;
+
+//Donde guarda Banco sus cuentas y sus indices. Las altas, la reindexacion y vaciar se llaman con el monitor
+//del Banco tomado; las busquedas pueden correr en cualquier momento
+interface AlmacenCuentas {
+
+    //vista de solo lectura de todas las cuentas
+    List<Cuenta> cuentas();
+
+    //las cuentas de este momento, para recorrerlas sin el monitor del Banco
+    List<Cuenta> foto();
+
+    Cuenta buscarPorId(long id);
+
+    List<Cuenta> buscarPorPersona(String persona);
+
+    //devuelve false si ya hay una cuenta con el mismo id
+    boolean agregar(Cuenta cuenta);
+
+    //si es esta misma cuenta (y no otra con el mismo id) la que esta guardada
+    boolean contiene(Cuenta cuenta);
+
+    void reindexarPersona(Cuenta cuenta, String anterior);
+
+    void vaciar();
+}
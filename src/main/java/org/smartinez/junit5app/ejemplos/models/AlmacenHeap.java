@@ -0,0 +1,77 @@
+package org.smartinez.junit5app.ejemplos.models;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+//Almacen por defecto: las cuentas son objetos comunes en el heap
+final class AlmacenHeap implements AlmacenCuentas {
+
+    private final List<Cuenta> cuentas = new ArrayList<>();
+    //indices hash para buscar cuentas en O(1) en lugar de recorrer la lista
+    private final Map<Long, Cuenta> cuentasPorId = new ConcurrentHashMap<>();
+    private final Map<String, List<Cuenta>> cuentasPorPersona = new ConcurrentHashMap<>();
+
+    @Override
+    public List<Cuenta> cuentas() {
+        return Collections.unmodifiableList(cuentas);
+    }
+
+    @Override
+    public List<Cuenta> foto() {
+        return Arrays.asList(cuentas.toArray(new Cuenta[0]));
+    }
+
+    @Override
+    public Cuenta buscarPorId(long id) {
+        return cuentasPorId.get(id);
+    }
+
+    @Override
+    public List<Cuenta> buscarPorPersona(String persona) {
+        List<Cuenta> encontradas = persona == null ? null : cuentasPorPersona.get(persona);
+        return encontradas == null ? List.of() : Collections.unmodifiableList(encontradas);
+    }
+
+    @Override
+    public boolean agregar(Cuenta cuenta) {
+        if (cuentasPorId.putIfAbsent(cuenta.getId(), cuenta) != null) {
+            return false;
+        }
+        cuentas.add(cuenta);
+        indexarPersona(cuenta);
+        return true;
+    }
+
+    @Override
+    public boolean contiene(Cuenta cuenta) {
+        return cuentasPorId.get(cuenta.getId()) == cuenta;
+    }
+
+    @Override
+    public void reindexarPersona(Cuenta cuenta, String anterior) {
+        if (anterior != null) {
+            List<Cuenta> encontradas = cuentasPorPersona.get(anterior);
+            if (encontradas != null) {
+                encontradas.removeIf(c -> c == cuenta); //por identidad, equals compara persona y saldo
+                if (encontradas.isEmpty()) {
+                    cuentasPorPersona.remove(anterior);
+                }
+            }
+        }
+        indexarPersona(cuenta);
+    }
+
+    private void indexarPersona(Cuenta cuenta) {
+        if (cuenta.getPersona() != null) {
+            cuentasPorPersona.computeIfAbsent(cuenta.getPersona(), p -> new CopyOnWriteArrayList<>()).add(cuenta);
+        }
+    }
+
+    @Override
+    public void vaciar() {
+        cuentas.clear();
+        cuentasPorId.clear();
+        cuentasPorPersona.clear();
+    }
+}
@@ -1,12 +1,23 @@
 package org.smartinez.junit5app.ejemplos.models;
 
+import org.smartinez.junit5app.ejemplos.idempotency.CacheIdempotencia;
+import org.smartinez.junit5app.ejemplos.metrics.MetricasBanco;
+import org.smartinez.junit5app.ejemplos.metrics.Operacion;
+
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.List;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class Banco {
 
-    private List<Cuenta> cuentas;
+    private final AlmacenCuentas almacen;
+    private volatile OyenteOperaciones[] oyentes = new OyenteOperaciones[0];
+    private volatile MetricasBanco metricas;
+    private volatile CacheIdempotencia<ResultadoOperacion> idempotencia;
     private String nombre;
 
     public String getNombre() {
@@ -14,26 +25,494 @@ public class Banco {
     }
 
     public Banco() {
-        this.cuentas = new ArrayList<>();
+        this.almacen = new AlmacenHeap();
+    }
+
+    private Banco(int escala) {
+        this.almacen = new CuentasColumnares(this, escala);
+    }
+
+    //Banco para decenas de millones de cuentas: ids, saldos y personas van en columnas fuera del heap y las
+    //cuentas son vistas livianas sobre cada fila. Todas quedan en punto fijo con esta escala
+    public static Banco columnar(int escala) {
+        return new Banco(escala);
     }
 
+    //La lista no se puede modificar desde afuera para que no se desincronice de los indices
     public List<Cuenta> getCuentas() {
-        return cuentas;
+        return almacen.cuentas();
+    }
+
+    //Las cuentas de este momento, para recorrerlas varias veces sin el monitor aunque se agreguen otras.
+    //El banco columnar no copia nada; el de objetos copia las referencias
+    public synchronized List<Cuenta> getFotoCuentas() {
+        return almacen.foto();
+    }
+
+    //Los oyentes ven el reemplazo como un lote: el reinicio y las altas nuevas se confirman juntos.
+    //Todas las cuentas se verifican antes de vaciar, asi un oyente que rechaza una no deja el banco a medio reemplazar
+    public synchronized void setCuentas(List<Cuenta> cuentas) {
+        cuentas.forEach(cuenta -> verificarOyentes(cuenta.getSaldo(), cuenta.getPersona()));
+        OyenteOperaciones[] oyentes = this.oyentes;
+        int iniciados = 0;
+        try {
+            for (OyenteOperaciones oyente : oyentes) {
+                oyente.loteIniciado();
+                iniciados++;
+            }
+            almacen.vaciar();
+            for (OyenteOperaciones oyente : oyentes) {
+                oyente.cuentasReiniciadas();
+            }
+            cuentas.forEach(this::addCuenta);
+        } finally {
+            for (int i = 0; i < iniciados; i++) {
+                oyentes[i].loteConfirmado();
+            }
+        }
+    }
+
+    public synchronized void addCuenta(Cuenta cuenta){
+        verificarOyentes(cuenta.getSaldo(), cuenta.getPersona());
+        CerrojosCuentas.bloquear(cuenta);
+        try {
+            if (!almacen.agregar(cuenta)) {
+                throw new IllegalArgumentException("Ya existe una cuenta con id " + cuenta.getId());
+            }
+            cuenta.setBanco(this); //para que la cuenta este asociada al banco al cual es agregada
+            for (OyenteOperaciones oyente : oyentes) {
+                oyente.cuentaAgregada(cuenta);
+            }
+        } finally {
+            CerrojosCuentas.desbloquear(cuenta);
+        }
+    }
+
+    //Los oyentes se guardan en un arreglo copy-on-write: recorrerlos no crea objetos y sin oyentes no cuesta nada
+    public synchronized void agregarOyente(OyenteOperaciones oyente) {
+        OyenteOperaciones[] nuevos = Arrays.copyOf(oyentes, oyentes.length + 1);
+        nuevos[oyentes.length] = oyente;
+        oyentes = nuevos;
+        //las operaciones sin cerrojo que empezaron sin este oyente no le avisan: se espera a que terminen,
+        //asi quien lo agrega dentro de leerConsistente las ve ya aplicadas en su foto
+        CerrojosCuentas.esperarSinCerrojo();
+    }
+
+    public synchronized void quitarOyente(OyenteOperaciones oyente) {
+        oyentes = Arrays.stream(oyentes).filter(o -> o != oyente).toArray(OyenteOperaciones[]::new);
+    }
+
+    boolean tieneOyentes() {
+        return oyentes.length > 0;
+    }
+
+    void verificarOyentes(BigDecimal monto, String persona) {
+        for (OyenteOperaciones oyente : oyentes) {
+            oyente.verificar(monto, persona);
+        }
+    }
+
+    boolean oyentesAdmiten(BigDecimal monto) {
+        try {
+            verificarOyentes(monto, null);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    void notificarDebito(Cuenta cuenta, BigDecimal monto) {
+        for (OyenteOperaciones oyente : oyentes) {
+            oyente.debito(cuenta, monto);
+        }
+    }
+
+    void notificarCredito(Cuenta cuenta, BigDecimal monto) {
+        for (OyenteOperaciones oyente : oyentes) {
+            oyente.credito(cuenta, monto);
+        }
+    }
+
+    void notificarTransferencia(Cuenta origen, Cuenta destino, BigDecimal monto) {
+        for (OyenteOperaciones oyente : oyentes) {
+            oyente.transferencia(origen, destino, monto);
+        }
+    }
+
+    void notificarSaldoFijado(Cuenta cuenta, BigDecimal anterior) {
+        for (OyenteOperaciones oyente : oyentes) {
+            oyente.saldoFijado(cuenta, anterior);
+        }
+    }
+
+    void notificarPersona(Cuenta cuenta, String anterior) {
+        for (OyenteOperaciones oyente : oyentes) {
+            oyente.personaCambiada(cuenta, anterior);
+        }
+    }
+
+    public Optional<Cuenta> buscarPorId(long id) {
+        return Optional.ofNullable(almacen.buscarPorId(id));
+    }
+
+    public Optional<Cuenta> buscarPorPersona(String persona) {
+        List<Cuenta> encontradas = almacen.buscarPorPersona(persona);
+        return encontradas.isEmpty() ? Optional.empty() : Optional.of(encontradas.get(0));
     }
 
-    public void setCuentas(List<Cuenta> cuentas) {
-        this.cuentas = cuentas;
+    public List<Cuenta> buscarCuentasPorPersona(String persona) {
+        return almacen.buscarPorPersona(persona);
     }
-    public void addCuenta(Cuenta cuenta){
-        cuentas.add(cuenta);
-        cuenta.setBanco(this); //para que la cuenta este asociada al banco al cual es agregada
+
+    synchronized void reindexarPersona(Cuenta cuenta, String anterior) {
+        if (!almacen.contiene(cuenta)) {
+            return;
+        }
+        almacen.reindexarPersona(cuenta, anterior);
+        notificarPersona(cuenta, anterior);
+    }
+
+    //Ejecuta la lectura con todas las franjas tomadas: ninguna operacion puede correr en el medio,
+    //asi que lo que se lee es una foto consistente del banco en un instante. La lectura tiene que ser corta
+    public synchronized <T> T leerConsistente(Function<List<Cuenta>, T> lectura) {
+        CerrojosCuentas.bloquearTodas();
+        try {
+            return lectura.apply(getCuentas());
+        } finally {
+            CerrojosCuentas.desbloquearTodas();
+        }
+    }
+
+    public MetricasBanco getMetricas() {
+        return metricas;
     }
+
+    //null desactiva las metricas
+    public void setMetricas(MetricasBanco metricas) {
+        this.metricas = metricas;
+    }
+
     public void setNombre(String nombre) {
         this.nombre = nombre;
     }
 
+    //Si no se configuro una, la primera transferencia con clave crea una cache de 100.000 claves por 10 minutos
+    public CacheIdempotencia<ResultadoOperacion> getIdempotencia() {
+        CacheIdempotencia<ResultadoOperacion> idempotencia = this.idempotencia;
+        if (idempotencia == null) {
+            synchronized (this) {
+                idempotencia = this.idempotencia;
+                if (idempotencia == null) {
+                    idempotencia = new CacheIdempotencia<>(100_000, Duration.ofMinutes(10));
+                    this.idempotencia = idempotencia;
+                }
+            }
+        }
+        return idempotencia;
+    }
+
+    public void setIdempotencia(CacheIdempotencia<ResultadoOperacion> idempotencia) {
+        this.idempotencia = idempotencia;
+    }
+
+    //Transferencia con clave de idempotencia: si el cliente la reintenta con la misma clave recibe el resultado
+    //original sin que se vuelva a aplicar. Reusar la clave para otra transferencia tira IllegalArgumentException
+    public ResultadoOperacion transferir(String clave, Cuenta origen, Cuenta destino, BigDecimal monto){
+        return transferir(clave, origen, destino, monto, resultado -> {
+        });
+    }
+
+    //alAplicar recibe el resultado solo en la llamada que aplico la transferencia, no en los reintentos
+    public ResultadoOperacion transferir(String clave, Cuenta origen, Cuenta destino, BigDecimal monto,
+                                         Consumer<ResultadoOperacion> alAplicar){
+        //el monto sin ceros a la derecha: 10.0 y 10.00 son la misma transferencia
+        List<Object> huella = List.of(origen.getId(), destino.getId(), monto.stripTrailingZeros());
+        return getIdempotencia().ejecutar(clave, huella, () -> {
+            ResultadoOperacion resultado = tryTransferir(origen, destino, monto);
+            alAplicar.accept(resultado);
+            return resultado;
+        });
+    }
+
     public void transferir(Cuenta origen, Cuenta destino, BigDecimal monto){
-        origen.debito(monto);
-        destino.credito(monto);
+        MetricasBanco metricas = this.metricas;
+        long inicio = metricas == null ? 0 : System.nanoTime();
+        boolean exito = false;
+        CerrojosCuentas.bloquear(origen, destino);
+        try {
+            if (!destino.admiteCredito(monto)) {
+                throw new ArithmeticException("El monto " + monto + " no se puede acreditar en la cuenta " + destino.getId());
+            }
+            verificarOyentes(monto, null);
+            origen.debitar(monto); //si no hay saldo tira la excepcion antes de tocar el destino
+            acreditarODevolver(origen, destino, monto);
+            notificarTransferencia(origen, destino, monto);
+            exito = true;
+        } finally {
+            CerrojosCuentas.desbloquear(origen, destino);
+            if (metricas != null) {
+                metricas.registrar(Operacion.TRANSFERENCIA, inicio, exito);
+            }
+        }
+    }
+
+    //El destino ya se valido, pero una cuenta sin cerrojo puede haber recibido creditos desde entonces:
+    //si el credito falla se devuelve el debito para que el dinero no desaparezca
+    private static void acreditarODevolver(Cuenta origen, Cuenta destino, BigDecimal monto) {
+        try {
+            destino.acreditar(monto);
+        } catch (RuntimeException e) {
+            origen.acreditar(monto);
+            throw e;
+        }
+    }
+
+    //Como transferir pero devuelve el resultado en lugar de tirar DineroInsuficienteException
+    public ResultadoOperacion tryTransferir(Cuenta origen, Cuenta destino, BigDecimal monto){
+        MetricasBanco metricas = this.metricas;
+        long inicio = metricas == null ? 0 : System.nanoTime();
+        ResultadoOperacion resultado = ResultadoOperacion.MONTO_INVALIDO;
+        CerrojosCuentas.bloquear(origen, destino);
+        try {
+            if (!destino.admiteCredito(monto) || !oyentesAdmiten(monto)) {
+                return resultado;
+            }
+            resultado = origen.intentarDebitar(monto);
+            if (resultado.isOk()) {
+                try {
+                    acreditarODevolver(origen, destino, monto);
+                } catch (ArithmeticException e) {
+                    return resultado = ResultadoOperacion.MONTO_INVALIDO;
+                }
+                notificarTransferencia(origen, destino, monto);
+            }
+            return resultado;
+        } finally {
+            CerrojosCuentas.desbloquear(origen, destino);
+            if (metricas != null) {
+                metricas.registrar(Operacion.TRANSFERENCIA, inicio, resultado.isOk());
+            }
+        }
+    }
+
+    //Camino rapido para cuentas en modo punto fijo con la misma escala: sin BigDecimal de por medio
+    public void transferirUnidades(Cuenta origen, Cuenta destino, long unidades){
+        if(origen.getEscala() != destino.getEscala()){
+            throw new IllegalArgumentException("Las cuentas tienen escalas distintas");
+        }
+        MetricasBanco metricas = this.metricas;
+        long inicio = metricas == null ? 0 : System.nanoTime();
+        boolean exito = false;
+        CerrojosCuentas.bloquear(origen, destino);
+        try {
+            if (!destino.admiteCreditoUnidades(unidades)) {
+                throw new ArithmeticException("Acreditar " + unidades + " unidades desborda la cuenta " + destino.getId());
+            }
+            origen.debitarUnidades(unidades);
+            try {
+                destino.acreditarUnidades(unidades);
+            } catch (RuntimeException e) {
+                origen.acreditarUnidades(unidades);
+                throw e;
+            }
+            if (tieneOyentes()) {
+                notificarTransferencia(origen, destino, BigDecimal.valueOf(unidades, origen.getEscala()));
+            }
+            exito = true;
+        } finally {
+            CerrojosCuentas.desbloquear(origen, destino);
+            if (metricas != null) {
+                metricas.registrar(Operacion.TRANSFERENCIA, inicio, exito);
+            }
+        }
+    }
+
+    //Aplica a todas las cuentas el interes saldo * tasa, redondeado a la escala de cada cuenta
+    public ResultadoBarrido aplicarInteres(BigDecimal tasa) {
+        return barrer(cuenta -> {
+            BigDecimal saldo = cuenta.getSaldo();
+            int escala = cuenta.isEscalaFija() ? cuenta.getEscala() : Math.max(saldo.scale(), 0);
+            return saldo.multiply(tasa).setScale(escala, RoundingMode.HALF_EVEN);
+        });
+    }
+
+    //Debita una comision fija de todas las cuentas; las que no tienen saldo cuentan como debitos fallidos
+    public ResultadoBarrido cobrarComision(BigDecimal comision) {
+        BigDecimal delta = comision.negate();
+        return barrer(cuenta -> delta);
+    }
+
+    //Barrido general en paralelo con fork/join: la regla devuelve el delta de cada cuenta (positivo acredita,
+    //negativo debita, cero o null no hace nada) y se evalua con la franja de la cuenta tomada
+    public ResultadoBarrido barrer(Function<Cuenta, BigDecimal> regla) {
+        return barrer(regla, ForkJoinPool.commonPool());
+    }
+
+    public ResultadoBarrido barrer(Function<Cuenta, BigDecimal> regla, ForkJoinPool pool) {
+        List<Cuenta> todas = getFotoCuentas();
+        return pool.invoke(new BarridoCuentas(this, todas, 0, todas.size(), regla));
+    }
+
+    public ResultadoLote transferirBatch(List<Transferencia> lote) {
+        return transferirBatch(lote, ModoLote.TODO_O_NADA);
+    }
+
+    //Valida todo el lote contra los saldos y recien despues aplica el delta neto de cada cuenta, en una sola pasada.
+    //Los cerrojos de todas las cuentas involucradas se toman una unica vez, en orden, para todo el lote
+    public ResultadoLote transferirBatch(List<Transferencia> lote, ModoLote modo) {
+        MetricasBanco metricas = this.metricas;
+        if (metricas == null) {
+            return aplicarLote(lote, modo);
+        }
+        long inicio = System.nanoTime();
+        boolean exito = false;
+        try {
+            ResultadoLote resultado = aplicarLote(lote, modo);
+            resultado.getFallos().stream()
+                    .filter(fallo -> "Dinero Insuficiente".equals(fallo.getMotivo()))
+                    .forEach(fallo -> metricas.rechazoSaldoInsuficiente());
+            exito = true;
+            return resultado;
+        } finally {
+            metricas.registrar(Operacion.TRANSFERENCIA_LOTE, inicio, exito);
+        }
+    }
+
+    private ResultadoLote aplicarLote(List<Transferencia> lote, ModoLote modo) {
+        ResultadoLote resultado;
+        do {
+            resultado = intentarLote(lote, modo);
+        } while (resultado == null);
+        return resultado;
+    }
+
+    //el saldo que el lote le deja a la cuenta tiene que poder aplicarse como un unico credito neto
+    private static boolean admiteCreditoNeto(Cuenta cuenta, BigDecimal nuevoSaldo, Map<Long, BigDecimal> iniciales) {
+        BigDecimal credito = nuevoSaldo.subtract(iniciales.get(cuenta.getId()));
+        return credito.signum() <= 0 || cuenta.admiteCredito(credito);
+    }
+
+    //null si una cuenta sin cerrojo cambio de saldo entre la validacion y la aplicacion (ya deshecho)
+    private ResultadoLote intentarLote(List<Transferencia> lote, ModoLote modo) {
+        Map<Long, Cuenta> involucradas = new HashMap<>();
+        for (Transferencia t : lote) {
+            involucradas.putIfAbsent(t.getOrigen().getId(), t.getOrigen());
+            involucradas.putIfAbsent(t.getDestino().getId(), t.getDestino());
+        }
+        int[] franjas = involucradas.keySet().stream()
+                .mapToInt(CerrojosCuentas::franja)
+                .distinct()
+                .sorted()
+                .toArray();
+
+        CerrojosCuentas.bloquear(franjas);
+        try {
+            Map<Long, BigDecimal> iniciales = new HashMap<>();
+            involucradas.forEach((id, cuenta) -> iniciales.put(id, cuenta.getSaldo()));
+            Map<Long, BigDecimal> saldos = new HashMap<>(iniciales);
+            List<ResultadoLote.Fallo> fallos = new ArrayList<>();
+            int aceptadas = 0;
+
+            for (int i = 0; i < lote.size(); i++) {
+                Transferencia t = lote.get(i);
+                BigDecimal monto = t.getMonto();
+                if (monto == null || monto.signum() < 0 || !t.getOrigen().admiteMonto(monto) || !t.getDestino().admiteMonto(monto)
+                        || !oyentesAdmiten(monto)) {
+                    fallos.add(new ResultadoLote.Fallo(i, t, "Monto invalido"));
+                    continue;
+                }
+                long origen = t.getOrigen().getId();
+                long destino = t.getDestino().getId();
+                BigDecimal nuevoSaldoOrigen = saldos.get(origen).subtract(monto);
+                if (modo == ModoLote.MEJOR_ESFUERZO && nuevoSaldoOrigen.signum() < 0) {
+                    fallos.add(new ResultadoLote.Fallo(i, t, "Dinero Insuficiente"));
+                    continue;
+                }
+                BigDecimal nuevoSaldoDestino = (destino == origen ? nuevoSaldoOrigen : saldos.get(destino)).add(monto);
+                //en mejor esfuerzo se rechaza la transferencia que haria desbordar el credito neto del destino;
+                //en todo o nada alcanza con el neto final, que se revisa abajo
+                if (modo == ModoLote.MEJOR_ESFUERZO && !admiteCreditoNeto(t.getDestino(), nuevoSaldoDestino, iniciales)) {
+                    fallos.add(new ResultadoLote.Fallo(i, t, "Monto invalido"));
+                    continue;
+                }
+                saldos.put(origen, nuevoSaldoOrigen);
+                saldos.put(destino, nuevoSaldoDestino);
+                aceptadas++;
+            }
+
+            if (modo == ModoLote.TODO_O_NADA) {
+                //en todo o nada alcanza con que el saldo neto de cada cuenta no quede negativo
+                boolean montosValidos = fallos.isEmpty();
+                for (int i = 0; i < lote.size() && montosValidos; i++) {
+                    Transferencia t = lote.get(i);
+                    if (saldos.get(t.getOrigen().getId()).signum() < 0) {
+                        fallos.add(new ResultadoLote.Fallo(i, t, "Dinero Insuficiente"));
+                    } else if (!admiteCreditoNeto(t.getDestino(), saldos.get(t.getDestino().getId()), iniciales)) {
+                        fallos.add(new ResultadoLote.Fallo(i, t, "Monto invalido"));
+                    }
+                }
+                if (!fallos.isEmpty()) {
+                    return new ResultadoLote(0, fallos);
+                }
+            }
+
+            //los deltas salen de los saldos validados y no del saldo actual: una cuenta sin cerrojo puede haber
+            //recibido operaciones en el medio, que asi no se pisan. Primero los debitos, que son los que pueden fallar
+            Map<Long, BigDecimal> deltas = new HashMap<>();
+            saldos.forEach((id, saldo) -> deltas.put(id, saldo.subtract(iniciales.get(id))));
+            deltas.values().forEach(delta -> verificarOyentes(delta.abs(), null)); //antes de tocar ninguna cuenta
+            //los oyentes ven el lote entre inicio y confirmacion, como un debito o credito neto por cuenta.
+            //Se inicia antes de tocar las cuentas: si un oyente no puede iniciarlo, el lote no se aplica
+            OyenteOperaciones[] oyentes = this.oyentes;
+            int iniciados = 0;
+            try {
+                for (OyenteOperaciones oyente : oyentes) {
+                    oyente.loteIniciado();
+                    iniciados++;
+                }
+                List<Cuenta> debitadas = new ArrayList<>();
+                for (Cuenta cuenta : involucradas.values()) {
+                    BigDecimal delta = deltas.get(cuenta.getId());
+                    if (delta.signum() < 0) {
+                        if (!cuenta.descontar(delta.negate())) {
+                            debitadas.forEach(debitada -> debitada.acreditar(deltas.get(debitada.getId()).negate()));
+                            return null;
+                        }
+                        debitadas.add(cuenta);
+                    }
+                }
+                //los creditos netos ya se validaron; solo pueden desbordar si una cuenta sin cerrojo recibio un credito
+                //en el medio, y entonces se deshace todo y se reintenta como con un debito que no alcanza
+                List<Cuenta> acreditadas = new ArrayList<>();
+                for (Cuenta cuenta : involucradas.values()) {
+                    BigDecimal delta = deltas.get(cuenta.getId());
+                    if (delta.signum() > 0) {
+                        try {
+                            cuenta.acreditar(delta);
+                        } catch (ArithmeticException e) {
+                            acreditadas.forEach(acreditada -> acreditada.descontar(deltas.get(acreditada.getId())));
+                            debitadas.forEach(debitada -> debitada.acreditar(deltas.get(debitada.getId()).negate()));
+                            return null;
+                        }
+                        acreditadas.add(cuenta);
+                    }
+                }
+                involucradas.forEach((id, cuenta) -> {
+                    BigDecimal delta = deltas.get(id);
+                    if (delta.signum() > 0) {
+                        notificarCredito(cuenta, delta);
+                    } else if (delta.signum() < 0) {
+                        notificarDebito(cuenta, delta.negate());
+                    }
+                });
+            } finally {
+                for (int i = 0; i < iniciados; i++) {
+                    oyentes[i].loteConfirmado();
+                }
+            }
+            return new ResultadoLote(aceptadas, fallos);
+        } finally {
+            CerrojosCuentas.desbloquear(franjas);
+        }
     }
 }
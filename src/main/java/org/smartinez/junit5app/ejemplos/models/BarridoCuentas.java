@@ -0,0 +1,83 @@
+package org.smartinez.junit5app.ejemplos.models;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+//Divide la lista de cuentas en mitades hasta llegar a tramos chicos que se procesan secuencialmente.
+//Cada cuenta se actualiza con su franja tomada, asi el barrido convive con transferencias concurrentes
+//sin perder actualizaciones (el barrido no es una foto: cada cuenta se ve en el momento en que se procesa)
+class BarridoCuentas extends RecursiveTask<ResultadoBarrido> {
+
+    private static final int TRAMO = 4096;
+
+    private final Banco banco;
+    private final List<Cuenta> cuentas;
+    private final int desde;
+    private final int hasta;
+    private final Function<Cuenta, BigDecimal> regla;
+
+    BarridoCuentas(Banco banco, List<Cuenta> cuentas, int desde, int hasta, Function<Cuenta, BigDecimal> regla) {
+        this.banco = banco;
+        this.cuentas = cuentas;
+        this.desde = desde;
+        this.hasta = hasta;
+        this.regla = regla;
+    }
+
+    @Override
+    protected ResultadoBarrido compute() {
+        if (hasta - desde <= TRAMO) {
+            return procesarTramo();
+        }
+        int medio = (desde + hasta) >>> 1;
+        BarridoCuentas izquierda = new BarridoCuentas(banco, cuentas, desde, medio, regla);
+        izquierda.fork();
+        ResultadoBarrido derecha = new BarridoCuentas(banco, cuentas, medio, hasta, regla).compute();
+        return izquierda.join().combinar(derecha);
+    }
+
+    private ResultadoBarrido procesarTramo() {
+        BigDecimal acreditado = BigDecimal.ZERO;
+        BigDecimal debitado = BigDecimal.ZERO;
+        long fallidos = 0;
+        for (int i = desde; i < hasta; i++) {
+            Cuenta cuenta = cuentas.get(i);
+            CerrojosCuentas.bloquear(cuenta);
+            try {
+                BigDecimal delta = regla.apply(cuenta);
+                if (delta == null || delta.signum() == 0) {
+                    continue;
+                }
+                if (delta.signum() > 0) {
+                    //admiteCredito incluye el desborde de una cuenta en punto fijo; una cuenta sin cerrojo todavia puede
+                    //recibir un credito en el medio, asi que el desborde se cuenta como fallido y no corta el barrido
+                    if (!cuenta.admiteCredito(delta) || !banco.oyentesAdmiten(delta)) {
+                        fallidos++;
+                        continue;
+                    }
+                    try {
+                        cuenta.acreditar(delta);
+                    } catch (ArithmeticException e) {
+                        fallidos++;
+                        continue;
+                    }
+                    banco.notificarCredito(cuenta, delta);
+                    acreditado = acreditado.add(delta);
+                } else {
+                    BigDecimal monto = delta.negate();
+                    if (banco.oyentesAdmiten(monto) && cuenta.intentarDebitar(monto).isOk()) {
+                        banco.notificarDebito(cuenta, monto);
+                        debitado = debitado.add(monto);
+                    } else {
+                        fallidos++;
+                    }
+                }
+            } finally {
+                CerrojosCuentas.desbloquear(cuenta);
+            }
+        }
+        return new ResultadoBarrido(hasta - desde, acreditado, debitado, fallidos);
+    }
+}
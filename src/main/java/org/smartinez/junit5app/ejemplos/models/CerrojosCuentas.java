@@ -0,0 +1,124 @@
+package org.smartinez.junit5app.ejemplos.models;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Cerrojos rayados (lock striping): cada cuenta se asigna a una de N franjas segun su id.
+//Asi no hay un unico monitor global y el throughput escala con la cantidad de nucleos.
+final class CerrojosCuentas {
+
+    static final int FRANJAS = Integer.highestOneBit(Math.max(64, Runtime.getRuntime().availableProcessors() * 16));
+
+    private static final ReentrantLock[] CERROJOS = new ReentrantLock[FRANJAS];
+
+    //Operaciones sin cerrojo en curso, contadas por ranura segun el hilo y cada ranura en su propia linea de cache
+    private static final int RANURAS = Integer.highestOneBit(Math.max(16, Runtime.getRuntime().availableProcessors() * 2));
+    private static final int SEPARACION = 16; //longs entre ranuras: 128 bytes
+    private static final AtomicLongArray EN_CURSO = new AtomicLongArray(RANURAS * SEPARACION);
+
+    static {
+        for (int i = 0; i < FRANJAS; i++) {
+            CERROJOS[i] = new ReentrantLock();
+        }
+    }
+
+    private CerrojosCuentas() {
+    }
+
+    static int franja(Cuenta cuenta) {
+        return franja(cuenta.getId());
+    }
+
+    static int franja(long id) {
+        int h = Long.hashCode(id * 0x9E3779B97F4A7C15L); //dispersa ids consecutivos
+        h ^= (h >>> 16);
+        return h & (FRANJAS - 1);
+    }
+
+    static void bloquear(Cuenta cuenta) {
+        CERROJOS[franja(cuenta)].lock();
+    }
+
+    static void desbloquear(Cuenta cuenta) {
+        CERROJOS[franja(cuenta)].unlock();
+    }
+
+    //Siempre se toma primero la franja de menor indice: dos transferencias en sentido opuesto
+    //piden los cerrojos en el mismo orden y no pueden quedar en deadlock
+    static void bloquear(Cuenta a, Cuenta b) {
+        int fa = franja(a);
+        int fb = franja(b);
+        if (fa == fb) {
+            CERROJOS[fa].lock();
+        } else if (fa < fb) {
+            CERROJOS[fa].lock();
+            CERROJOS[fb].lock();
+        } else {
+            CERROJOS[fb].lock();
+            CERROJOS[fa].lock();
+        }
+    }
+
+    //franjas tiene que venir ordenada y sin repetidos
+    static void bloquear(int[] franjas) {
+        for (int franja : franjas) {
+            CERROJOS[franja].lock();
+        }
+    }
+
+    static void desbloquear(int[] franjas) {
+        for (int i = franjas.length - 1; i >= 0; i--) {
+            CERROJOS[franjas[i]].unlock();
+        }
+    }
+
+    static void bloquearTodas() {
+        for (ReentrantLock cerrojo : CERROJOS) {
+            cerrojo.lock();
+        }
+    }
+
+    static void desbloquearTodas() {
+        for (int i = FRANJAS - 1; i >= 0; i--) {
+            CERROJOS[i].unlock();
+        }
+    }
+
+    static void desbloquear(Cuenta a, Cuenta b) {
+        int fa = franja(a);
+        int fb = franja(b);
+        CERROJOS[fa].unlock();
+        if (fa != fb) {
+            CERROJOS[fb].unlock();
+        }
+    }
+
+    private static int ranura() {
+        int h = System.identityHashCode(Thread.currentThread());
+        h ^= (h >>> 16);
+        return (h & (RANURAS - 1)) * SEPARACION;
+    }
+
+    //Una cuenta sin cerrojo se anota antes de mirar si el banco tiene oyentes y se borra al terminar
+    static void entrarSinCerrojo() {
+        EN_CURSO.incrementAndGet(ranura());
+    }
+
+    static void salirSinCerrojo() {
+        EN_CURSO.decrementAndGet(ranura());
+    }
+
+    //Espera a que terminen las operaciones sin cerrojo ya empezadas. Llamada despues de publicar un oyente,
+    //las que empiecen desde ahi lo ven y toman su franja, asi que cada ranura llega a cero
+    static void esperarSinCerrojo() {
+        for (int i = 0; i < RANURAS; i++) {
+            for (int vueltas = 0; EN_CURSO.get(i * SEPARACION) != 0; vueltas++) {
+                if (vueltas < 100) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+    }
+}
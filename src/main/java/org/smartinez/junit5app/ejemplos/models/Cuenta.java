@@ -1,33 +1,119 @@
 package org.smartinez.junit5app.ejemplos.models;
 
 import org.smartinez.junit5app.ejemplos.exceptions.DineroInsuficienteException;
+import org.smartinez.junit5app.ejemplos.metrics.MetricasBanco;
+import org.smartinez.junit5app.ejemplos.metrics.Operacion;
 
 import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Cuenta {
+    private static final AtomicLong SECUENCIA = new AtomicLong();
+
+    private final long id;
     private String persona;
-    private BigDecimal saldo;
+    //solo cambia cuando un Banco columnar adopta la cuenta y muda el saldo a su fila
+    private volatile Saldo saldo;
     private Banco banco;
 
     public Cuenta(String persona, BigDecimal saldo) {
+        this(SECUENCIA.incrementAndGet(), persona, saldo);
+    }
+
+    //Cuenta en modo punto fijo: el saldo se guarda como long en unidades de 10^-escala
+    public Cuenta(String persona, BigDecimal saldo, int escala) {
+        this(SECUENCIA.incrementAndGet(), persona, saldo, escala);
+    }
+
+    //Con id explicito, para reconstruir cuentas ya existentes (eg: desde un archivo)
+    public Cuenta(long id, String persona, BigDecimal saldo) {
+        this(id, persona, new SaldoDecimal(saldo));
+    }
+
+    public Cuenta(long id, String persona, BigDecimal saldo, int escala) {
+        this(id, persona, new SaldoFijo(saldo, escala));
+    }
+
+    //Cuenta en punto fijo con otro modo de concurrencia: con CAS o ACUMULADO, debito y credito no toman cerrojo
+    public Cuenta(String persona, BigDecimal saldo, int escala, ModoConcurrencia modo) {
+        this(SECUENCIA.incrementAndGet(), persona, saldo, escala, modo);
+    }
+
+    public Cuenta(long id, String persona, BigDecimal saldo, int escala, ModoConcurrencia modo) {
+        this(id, persona, saldoEnModo(saldo, escala, modo));
+    }
+
+    private static Saldo saldoEnModo(BigDecimal saldo, int escala, ModoConcurrencia modo) {
+        SaldoFijo fijo = new SaldoFijo(saldo, escala); //valida escala y saldo
+        return switch (modo) {
+            case CERROJO -> fijo;
+            case CAS -> new SaldoAtomico(fijo.unidades(), escala);
+            case ACUMULADO -> new SaldoAcumulado(fijo.unidades(), escala);
+        };
+    }
+
+    private Cuenta(long id, String persona, Saldo saldo) {
+        SECUENCIA.accumulateAndGet(id, Math::max); //los ids generados nunca chocan con los explicitos
+        this.id = id;
         this.saldo = saldo;
         this.persona = persona;
     }
 
+    //Vista de una fila de un almacen columnar: no cuenta para la secuencia de ids, que ya la conto la cuenta original
+    private Cuenta(long id, Saldo saldo, Banco banco) {
+        this.id = id;
+        this.saldo = saldo;
+        this.banco = banco;
+    }
+
+    static Cuenta vista(long id, SaldoColumnar saldo, Banco banco) {
+        return new Cuenta(id, saldo, banco);
+    }
+
+    public long getId() {
+        return id;
+    }
+
     public String getPersona() {
-        return persona;
+        return saldo instanceof SaldoColumnar columnar ? columnar.persona() : persona;
     }
 
     public void setPersona(String persona) {
-        this.persona = persona;
+        Banco banco = this.banco;
+        if (banco != null) {
+            banco.verificarOyentes(null, persona);
+        }
+        String anterior = getPersona();
+        if (saldo instanceof SaldoColumnar columnar) {
+            columnar.fijarPersona(persona);
+        } else {
+            this.persona = persona;
+        }
+        if (banco != null) {
+            banco.reindexarPersona(this, anterior); //mantiene el indice por persona del banco
+        }
     }
 
     public BigDecimal getSaldo() {
-        return saldo;
+        return saldo.valor();
     }
 
     public void setSaldo(BigDecimal saldo) {
-        this.saldo = saldo;
+        CerrojosCuentas.bloquear(this);
+        try {
+            Banco banco = this.banco;
+            if (banco != null) {
+                banco.verificarOyentes(saldo, null);
+            }
+            BigDecimal anterior = this.saldo.valor();
+            this.saldo.fijar(saldo);
+            if (banco != null) {
+                banco.notificarSaldoFijado(this, anterior);
+            }
+        } finally {
+            CerrojosCuentas.desbloquear(this);
+        }
     }
 //          El manejo de la excepcion podria haber sido asi tambien
 //            if(monto.intValue() < 0){
@@ -47,17 +133,292 @@ public class Cuenta {
     }
 
     public void debito(BigDecimal monto){//BigDecimal es inmutable
-        //para modificarlo se crea una nueva instancia
-        BigDecimal nuevoSaldo = this.saldo.subtract(monto);
-        if(nuevoSaldo.compareTo(BigDecimal.ZERO) < 0){  //eg: -2 - 0 < 0 entonces tira la exception
-            throw new DineroInsuficienteException("Dinero Insuficiente");
+        MetricasBanco metricas = metricas();
+        long inicio = metricas == null ? 0 : System.nanoTime();
+        boolean exito = false;
+        boolean bloqueada = bloquear();
+        try {
+            Banco banco = this.banco;
+            if (banco != null) {
+                banco.verificarOyentes(monto, null);
+            }
+            debitar(monto);
+            if (banco != null && bloqueada) {
+                banco.notificarDebito(this, monto);
+            }
+            exito = true;
+        } finally {
+            desbloquear(bloqueada);
+            if (metricas != null) {
+                metricas.registrar(Operacion.DEBITO, inicio, exito);
+            }
         }
-        this.saldo = nuevoSaldo;
     }
 
     public void credito(BigDecimal monto){
+        MetricasBanco metricas = metricas();
+        long inicio = metricas == null ? 0 : System.nanoTime();
+        boolean exito = false;
+        boolean bloqueada = bloquear();
+        try {
+            Banco banco = this.banco;
+            if (banco != null) {
+                banco.verificarOyentes(monto, null);
+            }
+            acreditar(monto);
+            if (banco != null && bloqueada) {
+                banco.notificarCredito(this, monto);
+            }
+            exito = true;
+        } finally {
+            desbloquear(bloqueada);
+            if (metricas != null) {
+                metricas.registrar(Operacion.CREDITO, inicio, exito);
+            }
+        }
+    }
+
+    public ModoConcurrencia getModoConcurrencia() {
+        Saldo saldo = this.saldo;
+        if (saldo instanceof SaldoAtomico) {
+            return ModoConcurrencia.CAS;
+        }
+        return saldo instanceof SaldoAcumulado ? ModoConcurrencia.ACUMULADO : ModoConcurrencia.CERROJO;
+    }
+
+    public boolean isEscalaFija() {
+        return saldo instanceof SaldoEnUnidades;
+    }
+
+    public int getEscala() {
+        return saldoEnUnidades().escala();
+    }
+
+    public long getSaldoUnidades() {
+        return saldoEnUnidades().unidades();
+    }
+
+    public ResultadoOperacion tryDebito(BigDecimal monto){
+        MetricasBanco metricas = metricas();
+        long inicio = metricas == null ? 0 : System.nanoTime();
+        ResultadoOperacion resultado = ResultadoOperacion.MONTO_INVALIDO;
+        boolean bloqueada = bloquear();
+        try {
+            Banco banco = this.banco;
+            if (banco != null && !banco.oyentesAdmiten(monto)) {
+                return resultado;
+            }
+            resultado = intentarDebitar(monto);
+            if (resultado.isOk() && banco != null && bloqueada) {
+                banco.notificarDebito(this, monto);
+            }
+            return resultado;
+        } finally {
+            desbloquear(bloqueada);
+            if (metricas != null) {
+                metricas.registrar(Operacion.DEBITO, inicio, resultado.isOk());
+            }
+        }
+    }
+
+    public ResultadoOperacion tryDebitoUnidades(long unidades){
+        MetricasBanco metricas = metricas();
+        long inicio = metricas == null ? 0 : System.nanoTime();
+        ResultadoOperacion resultado = ResultadoOperacion.MONTO_INVALIDO;
+        boolean bloqueada = bloquear();
+        try {
+            resultado = intentarDebitarUnidades(unidades);
+            Banco banco = this.banco;
+            if (resultado.isOk() && bloqueada && banco != null && banco.tieneOyentes()) {
+                banco.notificarDebito(this, BigDecimal.valueOf(unidades, getEscala()));
+            }
+            return resultado;
+        } finally {
+            desbloquear(bloqueada);
+            if (metricas != null) {
+                metricas.registrar(Operacion.DEBITO, inicio, resultado.isOk());
+            }
+        }
+    }
+
+    //Variantes en unidades menores para el modo punto fijo: no crean objetos
+    public void debitoUnidades(long unidades){
+        MetricasBanco metricas = metricas();
+        long inicio = metricas == null ? 0 : System.nanoTime();
+        boolean exito = false;
+        boolean bloqueada = bloquear();
+        try {
+            debitarUnidades(unidades);
+            Banco banco = this.banco;
+            if (bloqueada && banco != null && banco.tieneOyentes()) { //sin oyentes no se crea ningun BigDecimal
+                banco.notificarDebito(this, BigDecimal.valueOf(unidades, getEscala()));
+            }
+            exito = true;
+        } finally {
+            desbloquear(bloqueada);
+            if (metricas != null) {
+                metricas.registrar(Operacion.DEBITO, inicio, exito);
+            }
+        }
+    }
+
+    public void creditoUnidades(long unidades){
+        MetricasBanco metricas = metricas();
+        long inicio = metricas == null ? 0 : System.nanoTime();
+        boolean exito = false;
+        boolean bloqueada = bloquear();
+        try {
+            acreditarUnidades(unidades);
+            Banco banco = this.banco;
+            if (bloqueada && banco != null && banco.tieneOyentes()) {
+                banco.notificarCredito(this, BigDecimal.valueOf(unidades, getEscala()));
+            }
+            exito = true;
+        } finally {
+            desbloquear(bloqueada);
+            if (metricas != null) {
+                metricas.registrar(Operacion.CREDITO, inicio, exito);
+            }
+        }
+    }
+
+    //Las cuentas sin cerrojo (CAS o ACUMULADO) operan sin la franja, salvo que el banco tenga oyentes:
+    //los oyentes se llaman con la franja tomada para que vean las operaciones de cada cuenta en el orden real.
+    //Una operacion que empezo sin oyentes no avisa a ninguno: el que se agrega espera a que termine y la ve en su foto
+    private boolean bloquear() {
+        if (saldo.sinCerrojo()) {
+            CerrojosCuentas.entrarSinCerrojo(); //antes de mirar los oyentes, para que agregarOyente la espere
+            Banco banco = this.banco;
+            if (banco == null || !banco.tieneOyentes()) {
+                return false;
+            }
+            CerrojosCuentas.salirSinCerrojo();
+        }
+        CerrojosCuentas.bloquear(this);
+        return true;
+    }
+
+    private void desbloquear(boolean bloqueada) {
+        if (bloqueada) {
+            CerrojosCuentas.desbloquear(this);
+        } else {
+            CerrojosCuentas.salirSinCerrojo();
+        }
+    }
+
+    private MetricasBanco metricas() {
+        Banco banco = this.banco;
+        return banco == null ? null : banco.getMetricas();
+    }
+
+    private SaldoEnUnidades saldoEnUnidades() {
+        if (!(saldo instanceof SaldoEnUnidades enUnidades)) {
+            throw new IllegalStateException("La cuenta no esta en modo de punto fijo");
+        }
+        return enUnidades;
+    }
+
+    Saldo representacion() {
+        return saldo;
+    }
+
+    //La llama un almacen columnar con la franja tomada, despues de copiar persona y saldo a la fila
+    void mudar(SaldoColumnar columnar) {
+        this.saldo = columnar;
+        this.persona = null;
+    }
+
+    //Las variantes sin cerrojo las usa Banco cuando ya tiene tomadas las franjas de ambas cuentas
+    void debitar(BigDecimal monto){
+        if(!saldo.debitar(monto)){  //eg: -2 - 0 < 0 entonces tira la exception
+            contarRechazo();
+            throw DineroInsuficienteException.getModo() == DineroInsuficienteException.Modo.PREASIGNADA
+                    ? DineroInsuficienteException.crear(id, null, null)
+                    : DineroInsuficienteException.crear(id, monto, saldo.valor());
+        }
+    }
+
+    void acreditar(BigDecimal monto){
+
+        saldo.acreditar(monto);
+    }
+
+    boolean admiteMonto(BigDecimal monto){
+        try {
+            saldo.validar(monto);
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    boolean admiteCredito(BigDecimal monto){
+        try {
+            saldo.validarCredito(monto);
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    boolean admiteCreditoUnidades(long unidades){
+        try {
+            Math.addExact(saldoEnUnidades().unidades(), unidades);
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    //Debita solo si alcanza, sin excepcion ni metricas: un lote lo usa para detectar que el saldo de una cuenta
+    //sin cerrojo cambio despues de validarlo, que no es un rechazo sino un reintento
+    boolean descontar(BigDecimal monto){
+        return saldo.debitar(monto);
+    }
+
+    void debitarUnidades(long unidades){
+        if(!saldoEnUnidades().debitarUnidades(unidades)){
+            contarRechazo();
+            throw DineroInsuficienteException.getModo() == DineroInsuficienteException.Modo.PREASIGNADA
+                    ? DineroInsuficienteException.crear(id, null, null)
+                    : DineroInsuficienteException.crear(id, BigDecimal.valueOf(unidades, getEscala()), saldo.valor());
+        }
+    }
 
-        this.saldo = this.saldo.add(monto);
+    //Como debitar pero sin excepciones: para cuando el saldo insuficiente es un resultado normal y no un error
+    ResultadoOperacion intentarDebitar(BigDecimal monto){
+        try {
+            if(saldo.debitar(monto)){
+                return ResultadoOperacion.OK;
+            }
+        } catch (ArithmeticException e) {
+            return ResultadoOperacion.MONTO_INVALIDO;
+        }
+        contarRechazo();
+        return ResultadoOperacion.SALDO_INSUFICIENTE;
+    }
+
+    ResultadoOperacion intentarDebitarUnidades(long unidades){
+        try {
+            if(saldoEnUnidades().debitarUnidades(unidades)){
+                return ResultadoOperacion.OK;
+            }
+        } catch (ArithmeticException e) {
+            return ResultadoOperacion.MONTO_INVALIDO;
+        }
+        contarRechazo();
+        return ResultadoOperacion.SALDO_INSUFICIENTE;
+    }
+
+    private void contarRechazo(){
+        MetricasBanco metricas = metricas();
+        if (metricas != null) {
+            metricas.rechazoSaldoInsuficiente();
+        }
+    }
+
+    void acreditarUnidades(long unidades){
+        saldoEnUnidades().acreditarUnidades(unidades);
     }
 
     @Override
@@ -66,10 +427,19 @@ public class Cuenta {
             return false;
         }
         Cuenta c = (Cuenta) obj;//castear
-        if(this.persona == null || this.saldo == null){
+        BigDecimal saldo = this.getSaldo();
+        String persona = this.getPersona();
+        if(persona == null || saldo == null){
             return false;
         }
 
-        return this.persona.equals(c.getPersona()) && this.saldo.equals(c.getSaldo());
+        return persona.equals(c.getPersona()) && saldo.equals(c.getSaldo());
+    }
+
+    //Coherente con equals: usa los mismos atributos. Como el saldo es mutable, el hash cambia con cada operacion,
+    //por eso Banco indexa las cuentas por id y no por la cuenta misma
+    @Override
+    public int hashCode() {
+        return Objects.hash(getPersona(), getSaldo());
     }
 }
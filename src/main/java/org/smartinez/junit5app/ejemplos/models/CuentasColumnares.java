@@ -0,0 +1,120 @@
+package org.smartinez.junit5app.ejemplos.models;
+
+import java.math.BigDecimal;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+//Almacen de Banco sobre un AlmacenColumnar: no guarda objetos Cuenta. Cada lectura arma una vista liviana
+//sobre la fila y las cuentas que se agregan pasan a ser vistas de su fila nueva (su saldo se muda a la columna).
+//Como las vistas son objetos nuevos, dos lecturas de la misma cuenta son iguales por id pero no por identidad.
+final class CuentasColumnares implements AlmacenCuentas {
+
+    private final Banco banco;
+    private final int escala;
+    //vaciar() cambia de almacen en lugar de reusar filas que todavia pueden tener vistas apuntandolas
+    private volatile AlmacenColumnar almacen;
+
+    CuentasColumnares(Banco banco, int escala) {
+        this.banco = banco;
+        this.escala = escala;
+        this.almacen = new AlmacenColumnar(escala);
+    }
+
+    private Cuenta vista(AlmacenColumnar almacen, int fila) {
+        return Cuenta.vista(almacen.id(fila), new SaldoColumnar(almacen, fila), banco);
+    }
+
+    @Override
+    public List<Cuenta> cuentas() {
+        return new Filas(null, -1);
+    }
+
+    @Override
+    public List<Cuenta> foto() {
+        AlmacenColumnar almacen = this.almacen;
+        return new Filas(almacen, almacen.filas());
+    }
+
+    @Override
+    public Cuenta buscarPorId(long id) {
+        AlmacenColumnar almacen = this.almacen;
+        int fila = almacen.buscarFila(id);
+        return fila < 0 ? null : vista(almacen, fila);
+    }
+
+    @Override
+    public List<Cuenta> buscarPorPersona(String persona) {
+        AlmacenColumnar almacen = this.almacen;
+        int[] filas = almacen.filasDePersona(persona);
+        Cuenta[] encontradas = new Cuenta[filas.length];
+        for (int i = 0; i < filas.length; i++) {
+            encontradas[i] = vista(almacen, filas[i]);
+        }
+        return List.of(encontradas);
+    }
+
+    @Override
+    public boolean agregar(Cuenta cuenta) {
+        //la fila siempre se protege con la franja: mudar una cuenta CAS o ACUMULADO le cambiaria el modo sin avisar
+        if (cuenta.getModoConcurrencia() != ModoConcurrencia.CERROJO) {
+            throw new IllegalArgumentException("Un banco columnar no admite cuentas en modo " + cuenta.getModoConcurrencia());
+        }
+        AlmacenColumnar almacen = this.almacen;
+        if (almacen.buscarFila(cuenta.getId()) >= 0) {
+            return false;
+        }
+        BigDecimal saldo = cuenta.getSaldo();
+        long unidades;
+        try {
+            unidades = SaldoEnUnidades.aUnidades(saldo, escala);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("El saldo " + saldo + " no se puede representar con escala " + escala);
+        }
+        int fila = almacen.agregar(cuenta.getId(), cuenta.getPersona(), unidades);
+        cuenta.mudar(new SaldoColumnar(almacen, fila));
+        return true;
+    }
+
+    @Override
+    public boolean contiene(Cuenta cuenta) {
+        return cuenta.representacion() instanceof SaldoColumnar columnar && columnar.almacen() == almacen;
+    }
+
+    @Override
+    public void reindexarPersona(Cuenta cuenta, String anterior) {
+        //la columna de personas ya tiene el nombre nuevo y no hay un indice aparte
+    }
+
+    @Override
+    public void vaciar() {
+        almacen = new AlmacenColumnar(escala);
+    }
+
+    //Vista de las filas. Sin almacen fijo sigue al almacen actual (como la lista del AlmacenHeap);
+    //con almacen fijo es una foto de sus primeras filas, que nunca cambian de cuenta
+    private class Filas extends AbstractList<Cuenta> implements RandomAccess {
+
+        private final AlmacenColumnar fijo;
+        private final int cantidad;
+
+        Filas(AlmacenColumnar fijo, int cantidad) {
+            this.fijo = fijo;
+            this.cantidad = cantidad;
+        }
+
+        @Override
+        public Cuenta get(int fila) {
+            AlmacenColumnar almacen = fijo != null ? fijo : CuentasColumnares.this.almacen;
+            if (fila < 0 || fila >= (fijo != null ? cantidad : almacen.filas())) {
+                throw new IndexOutOfBoundsException(fila);
+            }
+            return vista(almacen, fila);
+        }
+
+        @Override
+        public int size() {
+            return fijo != null ? cantidad : almacen.filas();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.smartinez.junit5app.ejemplos.models;
+
+//Como se protege el saldo de una cuenta en punto fijo frente a operaciones concurrentes
+public enum ModoConcurrencia {
+    //con la franja de la cuenta tomada (el modo de siempre)
+    CERROJO,
+    //debito y credito como ciclos compare-and-set sobre las unidades, sin cerrojo
+    CAS,
+    //para cuentas con muchisimos creditos chicos (eg: comercios): los creditos se suman en celdas
+    //separadas por hilo y se consolidan al leer el saldo o al debitar
+    ACUMULADO
+}
@@ -0,0 +1,8 @@
+package org.smartinez.junit5app.ejemplos.models;
+
+public enum ModoLote {
+    //si alguna transferencia falla no se aplica ninguna
+    TODO_O_NADA,
+    //se aplican las que se pueden, en orden, y se informan las que fallaron
+    MEJOR_ESFUERZO
+}
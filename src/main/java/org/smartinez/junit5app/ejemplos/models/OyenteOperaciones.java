@@ -0,0 +1,43 @@
+package org.smartinez.junit5app.ejemplos.models;
+
+import java.math.BigDecimal;
+
+//Recibe las operaciones ya aplicadas sobre las cuentas de un Banco.
+//Se llama con las franjas de las cuentas tomadas, asi que para una misma cuenta el orden es el orden real
+public interface OyenteOperaciones {
+
+    //Se llama antes de aplicar una operacion (monto o persona pueden ser null): un oyente que no podria
+    //registrarla la rechaza con IllegalArgumentException y el banco queda sin cambios
+    default void verificar(BigDecimal monto, String persona) {
+    }
+
+    //Los debitos y creditos netos de un lote llegan entre loteIniciado y loteConfirmado, en el mismo hilo.
+    //setCuentas() tambien va entre los dos: el reinicio y las altas nuevas
+    default void loteIniciado() {
+    }
+
+    default void loteConfirmado() {
+    }
+
+    default void cuentaAgregada(Cuenta cuenta) {
+    }
+
+    //setCuentas() descarta todas las cuentas; despues se avisa cuentaAgregada() por cada cuenta nueva
+    default void cuentasReiniciadas() {
+    }
+
+    default void debito(Cuenta cuenta, BigDecimal monto) {
+    }
+
+    default void credito(Cuenta cuenta, BigDecimal monto) {
+    }
+
+    default void transferencia(Cuenta origen, Cuenta destino, BigDecimal monto) {
+    }
+
+    default void saldoFijado(Cuenta cuenta, BigDecimal anterior) {
+    }
+
+    default void personaCambiada(Cuenta cuenta, String anterior) {
+    }
+}
@@ -0,0 +1,45 @@
+package org.smartinez.junit5app.ejemplos.models;
+
+import java.math.BigDecimal;
+
+public class ResultadoBarrido {
+    private final long cuentasProcesadas;
+    private final BigDecimal totalAcreditado;
+    private final BigDecimal totalDebitado;
+    private final long debitosFallidos;
+
+    ResultadoBarrido(long cuentasProcesadas, BigDecimal totalAcreditado, BigDecimal totalDebitado, long debitosFallidos) {
+        this.cuentasProcesadas = cuentasProcesadas;
+        this.totalAcreditado = totalAcreditado;
+        this.totalDebitado = totalDebitado;
+        this.debitosFallidos = debitosFallidos;
+    }
+
+    ResultadoBarrido combinar(ResultadoBarrido otro) {
+        return new ResultadoBarrido(cuentasProcesadas + otro.cuentasProcesadas, totalAcreditado.add(otro.totalAcreditado),
+                totalDebitado.add(otro.totalDebitado), debitosFallidos + otro.debitosFallidos);
+    }
+
+    public long getCuentasProcesadas() {
+        return cuentasProcesadas;
+    }
+
+    public BigDecimal getTotalAcreditado() {
+        return totalAcreditado;
+    }
+
+    public BigDecimal getTotalDebitado() {
+        return totalDebitado;
+    }
+
+    //debitos que no se aplicaron por saldo insuficiente o monto invalido, y creditos con monto invalido o que desbordaban
+    public long getDebitosFallidos() {
+        return debitosFallidos;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultadoBarrido{cuentas=" + cuentasProcesadas + ", acreditado=" + totalAcreditado
+                + ", debitado=" + totalDebitado + ", debitosFallidos=" + debitosFallidos + '}';
+    }
+}
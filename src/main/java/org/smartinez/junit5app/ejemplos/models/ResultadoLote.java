@@ -0,0 +1,56 @@
+package org.smartinez.junit5app.ejemplos.models;
+
+import java.util.Collections;
+import java.util.List;
+
+public class ResultadoLote {
+    private final int aplicadas;
+    private final List<Fallo> fallos;
+
+    ResultadoLote(int aplicadas, List<Fallo> fallos) {
+        this.aplicadas = aplicadas;
+        this.fallos = Collections.unmodifiableList(fallos);
+    }
+
+    public int getAplicadas() {
+        return aplicadas;
+    }
+
+    public List<Fallo> getFallos() {
+        return fallos;
+    }
+
+    public boolean isCompleto() {
+        return fallos.isEmpty();
+    }
+
+    public static class Fallo {
+        private final int indice;
+        private final Transferencia transferencia;
+        private final String motivo;
+
+        Fallo(int indice, Transferencia transferencia, String motivo) {
+            this.indice = indice;
+            this.transferencia = transferencia;
+            this.motivo = motivo;
+        }
+
+        //posicion de la transferencia dentro del lote
+        public int getIndice() {
+            return indice;
+        }
+
+        public Transferencia getTransferencia() {
+            return transferencia;
+        }
+
+        public String getMotivo() {
+            return motivo;
+        }
+
+        @Override
+        public String toString() {
+            return "Fallo{" + indice + ", " + transferencia + ", " + motivo + '}';
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.smartinez.junit5app.ejemplos.models;
+
+//Resultado de las variantes try* que no tiran excepciones por resultados de negocio
+public enum ResultadoOperacion {
+    OK,
+    SALDO_INSUFICIENTE,
+    //el monto no se puede representar en la escala de una cuenta de punto fijo, o desborda
+    MONTO_INVALIDO,
+    CUENTA_INEXISTENTE;
+
+    public boolean isOk() {
+        return this == OK;
+    }
+}
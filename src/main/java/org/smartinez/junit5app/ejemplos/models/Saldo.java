@@ -0,0 +1,30 @@
+package org.smartinez.junit5app.ejemplos.models;
+
+import java.math.BigDecimal;
+
+//Representacion interna del saldo de una Cuenta. Los metodos se llaman con la franja de la cuenta tomada.
+abstract class Saldo {
+
+    abstract BigDecimal valor();
+
+    abstract void fijar(BigDecimal valor);
+
+    //devuelve false (sin modificar nada) si el debito dejaria el saldo negativo
+    abstract boolean debitar(BigDecimal monto);
+
+    abstract void acreditar(BigDecimal monto);
+
+    //tira ArithmeticException si el monto no se puede representar en este saldo
+    void validar(BigDecimal monto) {
+    }
+
+    //como validar, y ademas que acreditar el monto no desborde el saldo
+    void validarCredito(BigDecimal monto) {
+        validar(monto);
+    }
+
+    //true si el saldo se protege solo (con CAS) y las operaciones de una sola cuenta no necesitan la franja
+    boolean sinCerrojo() {
+        return false;
+    }
+}
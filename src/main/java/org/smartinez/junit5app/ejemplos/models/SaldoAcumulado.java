@@ -0,0 +1,59 @@
+package org.smartinez.junit5app.ejemplos.models;
+
+import java.util.concurrent.atomic.LongAdder;
+
+//Saldo para cuentas que reciben muchisimos creditos concurrentes: cada credito suma en una celda del LongAdder
+//(sin competir por una unica variable) y los creditos pendientes se consolidan en el saldo base al leerlo o al
+//debitar. Leer y debitar se serializan con el monitor del saldo, asi el saldo leido es exacto y nunca negativo
+final class SaldoAcumulado extends SaldoEnUnidades {
+
+    private final int escala;
+    private final LongAdder pendientes = new LongAdder();
+    private long base;
+
+    SaldoAcumulado(long unidades, int escala) {
+        this.escala = escala;
+        this.base = unidades;
+    }
+
+    @Override
+    boolean sinCerrojo() {
+        return true;
+    }
+
+    @Override
+    int escala() {
+        return escala;
+    }
+
+    //sumThenReset toma cada celda con getAndSet: un credito concurrente queda en su celda para la proxima vez
+    @Override
+    synchronized long unidades() {
+        base = Math.addExact(base, pendientes.sumThenReset());
+        return base;
+    }
+
+    @Override
+    synchronized void fijarUnidades(long unidades) {
+        pendientes.reset();
+        base = unidades;
+    }
+
+    @Override
+    synchronized boolean debitarUnidades(long monto) {
+        long nuevo = Math.subtractExact(unidades(), monto);
+        if (nuevo < 0) {
+            return false;
+        }
+        base = nuevo;
+        return true;
+    }
+
+    @Override
+    void acreditarUnidades(long monto) {
+        if (monto < 0) {
+            throw new ArithmeticException("Un credito no puede ser negativo");
+        }
+        pendientes.add(monto);
+    }
+}
@@ -0,0 +1,69 @@
+package org.smartinez.junit5app.ejemplos.models;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+//Saldo en punto fijo actualizado con compare-and-set: varios hilos pueden debitar y acreditar a la vez sin cerrojo.
+//El debito lee, verifica que el saldo no quede negativo y recien ahi intenta el CAS, asi que el invariante se mantiene
+final class SaldoAtomico extends SaldoEnUnidades {
+
+    private static final VarHandle UNIDADES;
+
+    static {
+        try {
+            UNIDADES = MethodHandles.lookup().findVarHandle(SaldoAtomico.class, "unidades", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int escala;
+    private volatile long unidades;
+
+    SaldoAtomico(long unidades, int escala) {
+        this.escala = escala;
+        this.unidades = unidades;
+    }
+
+    @Override
+    boolean sinCerrojo() {
+        return true;
+    }
+
+    @Override
+    int escala() {
+        return escala;
+    }
+
+    @Override
+    long unidades() {
+        return unidades;
+    }
+
+    @Override
+    void fijarUnidades(long unidades) {
+        this.unidades = unidades;
+    }
+
+    @Override
+    boolean debitarUnidades(long monto) {
+        long actual;
+        long nuevo;
+        do {
+            actual = unidades;
+            nuevo = Math.subtractExact(actual, monto);
+            if (nuevo < 0) {
+                return false;
+            }
+        } while (!UNIDADES.weakCompareAndSet(this, actual, nuevo));
+        return true;
+    }
+
+    @Override
+    void acreditarUnidades(long monto) {
+        long actual;
+        do {
+            actual = unidades;
+        } while (!UNIDADES.weakCompareAndSet(this, actual, Math.addExact(actual, monto)));
+    }
+}
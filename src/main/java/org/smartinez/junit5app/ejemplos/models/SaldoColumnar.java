@@ -0,0 +1,44 @@
+package org.smartinez.junit5app.ejemplos.models;
+
+//Saldo que vive en una fila de un AlmacenColumnar: la Cuenta es solo una vista liviana sobre la fila
+final class SaldoColumnar extends SaldoEnUnidades {
+
+    private final AlmacenColumnar almacen;
+    private final int fila;
+
+    SaldoColumnar(AlmacenColumnar almacen, int fila) {
+        this.almacen = almacen;
+        this.fila = fila;
+    }
+
+    AlmacenColumnar almacen() {
+        return almacen;
+    }
+
+    int fila() {
+        return fila;
+    }
+
+    String persona() {
+        return almacen.persona(fila);
+    }
+
+    void fijarPersona(String persona) {
+        almacen.fijarPersona(fila, persona);
+    }
+
+    @Override
+    int escala() {
+        return almacen.escala();
+    }
+
+    @Override
+    long unidades() {
+        return almacen.unidades(fila);
+    }
+
+    @Override
+    void fijarUnidades(long unidades) {
+        almacen.fijarUnidades(fila, unidades);
+    }
+}
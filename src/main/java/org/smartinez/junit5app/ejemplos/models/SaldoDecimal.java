@@ -0,0 +1,38 @@
+package org.smartinez.junit5app.ejemplos.models;
+
+import java.math.BigDecimal;
+
+//Modo por defecto: el saldo es un BigDecimal inmutable, cada operacion crea una nueva instancia
+final class SaldoDecimal extends Saldo {
+
+    private volatile BigDecimal valor;
+
+    SaldoDecimal(BigDecimal valor) {
+        this.valor = valor;
+    }
+
+    @Override
+    BigDecimal valor() {
+        return valor;
+    }
+
+    @Override
+    void fijar(BigDecimal valor) {
+        this.valor = valor;
+    }
+
+    @Override
+    boolean debitar(BigDecimal monto) {
+        BigDecimal nuevoSaldo = this.valor.subtract(monto);
+        if (nuevoSaldo.signum() < 0) { //mas barato que compareTo(BigDecimal.ZERO)
+            return false;
+        }
+        this.valor = nuevoSaldo;
+        return true;
+    }
+
+    @Override
+    void acreditar(BigDecimal monto) {
+        this.valor = this.valor.add(monto);
+    }
+}
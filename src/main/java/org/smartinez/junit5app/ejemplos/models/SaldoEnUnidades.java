@@ -0,0 +1,65 @@
+package org.smartinez.junit5app.ejemplos.models;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+//Saldo guardado en unidades menores escaladas (eg: con escala 5, 1000.12345 = 100012345).
+//Las subclases solo deciden donde vive el long: en un campo (SaldoFijo) o en una columna (SaldoColumnar)
+abstract class SaldoEnUnidades extends Saldo {
+
+    static final int ESCALA_MAXIMA = 18;
+
+    //tira ArithmeticException si el monto tiene mas decimales que la escala o no entra en un long
+    static long aUnidades(BigDecimal monto, int escala) {
+        return monto.setScale(escala, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    abstract int escala();
+
+    abstract long unidades();
+
+    abstract void fijarUnidades(long unidades);
+
+    @Override
+    BigDecimal valor() {
+        return BigDecimal.valueOf(unidades(), escala());
+    }
+
+    @Override
+    void fijar(BigDecimal valor) {
+        fijarUnidades(aUnidades(valor, escala()));
+    }
+
+    @Override
+    void validar(BigDecimal monto) {
+        aUnidades(monto, escala());
+    }
+
+    @Override
+    void validarCredito(BigDecimal monto) {
+        Math.addExact(unidades(), aUnidades(monto, escala()));
+    }
+
+    @Override
+    boolean debitar(BigDecimal monto) {
+        return debitarUnidades(aUnidades(monto, escala()));
+    }
+
+    @Override
+    void acreditar(BigDecimal monto) {
+        acreditarUnidades(aUnidades(monto, escala()));
+    }
+
+    boolean debitarUnidades(long monto) {
+        long nuevo = Math.subtractExact(unidades(), monto);
+        if (nuevo < 0) {
+            return false;
+        }
+        fijarUnidades(nuevo);
+        return true;
+    }
+
+    void acreditarUnidades(long monto) {
+        fijarUnidades(Math.addExact(unidades(), monto));
+    }
+}
@@ -0,0 +1,34 @@
+package org.smartinez.junit5app.ejemplos.models;
+
+import java.math.BigDecimal;
+
+//Modo de punto fijo: el saldo se guarda como long en unidades menores escaladas.
+//Las operaciones en unidades no crean objetos y el BigDecimal se arma solo cuando se pide el saldo.
+final class SaldoFijo extends SaldoEnUnidades {
+
+    private final int escala;
+    private volatile long unidades;
+
+    SaldoFijo(BigDecimal valor, int escala) {
+        if (escala < 0 || escala > ESCALA_MAXIMA) {
+            throw new IllegalArgumentException("La escala debe estar entre 0 y " + ESCALA_MAXIMA);
+        }
+        this.escala = escala;
+        this.unidades = aUnidades(valor, escala);
+    }
+
+    @Override
+    int escala() {
+        return escala;
+    }
+
+    @Override
+    long unidades() {
+        return unidades;
+    }
+
+    @Override
+    void fijarUnidades(long unidades) {
+        this.unidades = unidades;
+    }
+}
@@ -0,0 +1,115 @@
+package org.smartinez.junit5app.ejemplos.network;
+
+import org.smartinez.junit5app.ejemplos.models.ResultadoOperacion;
+import org.smartinez.junit5app.ejemplos.sharding.ProtocoloFragmento;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.Socket;
+
+//Cliente de ServidorTransferencias sobre una conexion. No es thread-safe: un cliente por hilo.
+//Ademas de los metodos sincronicos permite pipelining: enviarTransferencia() solo encola el pedido
+//y recibirTransferencia() envia lo pendiente y lee la proxima respuesta, en el mismo orden de envio.
+public class ClienteTransferencias implements Closeable {
+
+    private static final ResultadoOperacion[] RESULTADOS = ResultadoOperacion.values();
+
+    private final Socket socket;
+    private final DataInputStream entrada;
+    private final DataOutputStream salida;
+    private long enviados;
+    private long recibidos;
+
+    public ClienteTransferencias(int puerto) throws IOException {
+        this(InetAddress.getLoopbackAddress(), puerto);
+    }
+
+    public ClienteTransferencias(InetAddress direccion, int puerto) throws IOException {
+        this.socket = new Socket(direccion, puerto);
+        this.socket.setTcpNoDelay(true);
+        this.entrada = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 16 * 1024));
+        this.salida = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 16 * 1024));
+    }
+
+    private interface Pedido {
+        void escribir(DataOutputStream salida) throws IOException;
+    }
+
+    private interface Respuesta<T> {
+        T leer(DataInputStream entrada) throws IOException;
+    }
+
+    private long enviar(byte operacion, Pedido pedido) {
+        try {
+            long idPedido = ++enviados;
+            salida.writeByte(operacion);
+            salida.writeLong(idPedido);
+            pedido.escribir(salida);
+            return idPedido;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <T> T recibir(Respuesta<T> respuesta) {
+        if (recibidos == enviados) {
+            throw new IllegalStateException("No hay pedidos pendientes");
+        }
+        try {
+            salida.flush();
+            long idPedido = entrada.readLong();
+            if (idPedido != ++recibidos) {
+                throw new IOException("Respuesta fuera de orden: " + idPedido + " en lugar de " + recibidos);
+            }
+            if (entrada.readByte() == ProtocoloTransferencias.ERROR) {
+                throw new IllegalStateException("Error en el servidor: " + entrada.readUTF());
+            }
+            return respuesta.leer(entrada);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public long crearCuenta(String persona, BigDecimal saldo) {
+        ProtocoloFragmento.verificarDecimal(saldo);
+        enviar(ProtocoloTransferencias.CREAR, s -> {
+            s.writeUTF(persona);
+            ProtocoloFragmento.escribirDecimal(s, saldo);
+        });
+        return recibir(DataInputStream::readLong);
+    }
+
+    //null si la cuenta no existe
+    public BigDecimal saldo(long id) {
+        enviar(ProtocoloTransferencias.SALDO, s -> s.writeLong(id));
+        return recibir(e -> e.readBoolean() ? ProtocoloFragmento.leerDecimal(e) : null);
+    }
+
+    public ResultadoOperacion transferir(long origen, long destino, BigDecimal monto) {
+        enviarTransferencia(origen, destino, monto);
+        return recibirTransferencia();
+    }
+
+    public long enviarTransferencia(long origen, long destino, BigDecimal monto) {
+        ProtocoloFragmento.verificarDecimal(monto);
+        return enviar(ProtocoloTransferencias.TRANSFERIR, s -> {
+            s.writeLong(origen);
+            s.writeLong(destino);
+            ProtocoloFragmento.escribirDecimal(s, monto);
+        });
+    }
+
+    public ResultadoOperacion recibirTransferencia() {
+        return recibir(e -> RESULTADOS[e.readUnsignedByte()]);
+    }
+
+    public long getPendientes() {
+        return enviados - recibidos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
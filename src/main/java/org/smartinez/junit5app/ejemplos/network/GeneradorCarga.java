@@ -0,0 +1,110 @@
+package org.smartinez.junit5app.ejemplos.network;
+
+import org.smartinez.junit5app.ejemplos.metrics.Histograma;
+import org.smartinez.junit5app.ejemplos.models.Banco;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+//Generador de carga para medir un ServidorTransferencias en loopback.
+//Cada conexion mantiene hasta 'ventana' transferencias en vuelo (pipelining) entre cuentas al azar.
+//  java -cp ... org.smartinez.junit5app.ejemplos.network.GeneradorCarga [puerto] [conexiones] [ventana] [segundos]
+//Sin puerto (o con 0) levanta un servidor local en la misma JVM.
+public class GeneradorCarga {
+
+    private static final BigDecimal SALDO_INICIAL = new BigDecimal("1000000");
+
+    private GeneradorCarga() {
+    }
+
+    public static ResultadoCarga ejecutar(int puerto, int conexiones, int ventana, int cuentas, Duration duracion)
+            throws IOException, InterruptedException {
+        if (cuentas < 2 || ventana < 1) {
+            throw new IllegalArgumentException("Se necesitan al menos 2 cuentas y una ventana positiva");
+        }
+        long[] ids = new long[cuentas];
+        try (ClienteTransferencias cliente = new ClienteTransferencias(puerto)) {
+            for (int i = 0; i < cuentas; i++) {
+                ids[i] = cliente.crearCuenta("carga-" + i, SALDO_INICIAL);
+            }
+        }
+
+        Histograma latencias = new Histograma();
+        LongAdder operaciones = new LongAdder();
+        List<Thread> hilos = new ArrayList<>();
+        List<RuntimeException> errores = new ArrayList<>();
+        long inicio = System.nanoTime();
+        long fin = inicio + duracion.toNanos();
+        for (int c = 0; c < conexiones; c++) {
+            long semilla = c;
+            Thread hilo = new Thread(() -> {
+                try {
+                    generar(puerto, ventana, ids, fin, new SplittableRandom(semilla), latencias, operaciones);
+                } catch (RuntimeException e) {
+                    synchronized (errores) {
+                        errores.add(e);
+                    }
+                }
+            }, "carga-" + c);
+            hilos.add(hilo);
+            hilo.start();
+        }
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+        long transcurrido = System.nanoTime() - inicio;
+        if (!errores.isEmpty()) {
+            throw errores.get(0);
+        }
+        return new ResultadoCarga(operaciones.sum(), transcurrido, latencias.foto());
+    }
+
+    private static void generar(int puerto, int ventana, long[] ids, long fin, SplittableRandom azar,
+                                Histograma latencias, LongAdder operaciones) {
+        //las respuestas llegan en orden, asi que alcanza con un buffer circular de tiempos de envio
+        long[] enviados = new long[ventana];
+        long cabeza = 0;
+        long cola = 0;
+        try (ClienteTransferencias cliente = new ClienteTransferencias(puerto)) {
+            while (true) {
+                boolean seguir = System.nanoTime() < fin;
+                while (seguir && cabeza - cola < ventana) {
+                    int origen = azar.nextInt(ids.length);
+                    int destino = (origen + 1 + azar.nextInt(ids.length - 1)) % ids.length;
+                    enviados[(int) (cabeza++ % ventana)] = System.nanoTime();
+                    cliente.enviarTransferencia(ids[origen], ids[destino], BigDecimal.ONE);
+                }
+                if (cabeza == cola) {
+                    return;
+                }
+                cliente.recibirTransferencia();
+                latencias.registrar(System.nanoTime() - enviados[(int) (cola++ % ventana)]);
+                operaciones.increment();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int puerto = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        int conexiones = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int ventana = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        int segundos = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        ServidorTransferencias local = puerto == 0 ? new ServidorTransferencias(new Banco(), 0) : null;
+        try {
+            int destino = local != null ? local.getPuerto() : puerto;
+            System.out.println(ejecutar(destino, conexiones, ventana, 1024, Duration.ofSeconds(segundos)));
+        } finally {
+            if (local != null) {
+                local.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.smartinez.junit5app.ejemplos.network;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+//Ejecutor con un hilo por conexion. En Java 21+ usa hilos virtuales; el pom todavia compila para Java 18,
+//asi que el metodo se busca por reflexion y en versiones anteriores se cae a un pool de hilos de plataforma
+final class HilosConexion {
+
+    private HilosConexion() {
+    }
+
+    static ExecutorService crear(String nombre) {
+        try {
+            Method metodo = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) metodo.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            //sin hilos virtuales (o en preview deshabilitado en Java 19/20)
+            ThreadFactory fabrica = tarea -> {
+                Thread hilo = new Thread(tarea, nombre);
+                hilo.setDaemon(true);
+                return hilo;
+            };
+            return Executors.newCachedThreadPool(fabrica);
+        }
+    }
+
+}
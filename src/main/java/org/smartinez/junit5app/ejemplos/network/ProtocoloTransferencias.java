@@ -0,0 +1,22 @@
+package org.smartinez.junit5app.ejemplos.network;
+
+//Protocolo binario del ServidorTransferencias.
+//Pedido: byte operacion + long idPedido + argumentos. Respuesta: long idPedido + byte estado (OK o ERROR + mensaje UTF)
+//+ resultado. El cliente puede mandar varios pedidos sin esperar (pipelining); las respuestas vuelven en el mismo orden.
+//Los decimales van con la codificacion de ProtocoloFragmento
+final class ProtocoloTransferencias {
+
+    static final byte CREAR = 1;
+    static final byte SALDO = 2;
+    static final byte TRANSFERIR = 3;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    //los montos que llegan con mas decimales (o con escala negativa) se rechazan: una escala enorme que llega
+    //del cliente haria crecer sin limite los BigDecimal que se calculen con ella
+    static final int ESCALA_MAXIMA = 18;
+
+    private ProtocoloTransferencias() {
+    }
+}
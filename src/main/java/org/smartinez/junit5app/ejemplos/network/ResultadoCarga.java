@@ -0,0 +1,44 @@
+package org.smartinez.junit5app.ejemplos.network;
+
+import org.smartinez.junit5app.ejemplos.metrics.Histograma;
+
+import java.util.concurrent.TimeUnit;
+
+public class ResultadoCarga {
+
+    private final long operaciones;
+    private final long duracionNanos;
+    private final Histograma.Foto latencias;
+
+    ResultadoCarga(long operaciones, long duracionNanos, Histograma.Foto latencias) {
+        this.operaciones = operaciones;
+        this.duracionNanos = duracionNanos;
+        this.latencias = latencias;
+    }
+
+    public long getOperaciones() {
+        return operaciones;
+    }
+
+    public long getDuracionNanos() {
+        return duracionNanos;
+    }
+
+    public double getOperacionesPorSegundo() {
+        return duracionNanos == 0 ? 0 : operaciones * (double) TimeUnit.SECONDS.toNanos(1) / duracionNanos;
+    }
+
+    //latencias de ida y vuelta en nanosegundos, medidas desde que el pedido se encola en el cliente
+    public Histograma.Foto getLatencias() {
+        return latencias;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d operaciones, %.0f ops/s, p50 %d us, p99 %d us, max %d us",
+                operaciones, getOperacionesPorSegundo(),
+                TimeUnit.NANOSECONDS.toMicros(latencias.percentil(50)),
+                TimeUnit.NANOSECONDS.toMicros(latencias.percentil(99)),
+                TimeUnit.NANOSECONDS.toMicros(latencias.getMaximo()));
+    }
+}
@@ -0,0 +1,188 @@
+package org.smartinez.junit5app.ejemplos.network;
+
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+import org.smartinez.junit5app.ejemplos.models.ResultadoOperacion;
+import org.smartinez.junit5app.ejemplos.sharding.ProtocoloFragmento;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+//Servidor TCP que expone un Banco: crear cuenta, consultar saldo y transferir.
+//Cada conexion se atiende en su propio hilo (virtual cuando la JVM los tiene) con E/S bloqueante simple.
+//Los pedidos de una conexion se procesan en orden y las respuestas solo se envian cuando no quedan
+//pedidos ya recibidos, asi un cliente que hace pipelining recibe varias respuestas por escritura.
+//Los errores de E/S se registran con System.Logger y se cuentan en getErrores(); el servidor sigue atendiendo.
+//  java -cp ... org.smartinez.junit5app.ejemplos.network.ServidorTransferencias <puerto>
+public class ServidorTransferencias implements Closeable {
+
+    private static final System.Logger LOG = System.getLogger(ServidorTransferencias.class.getName());
+
+    private final Banco banco;
+    private final ServerSocket servidor;
+    private final ExecutorService conexiones;
+    private final LongAdder errores = new LongAdder();
+
+    public ServidorTransferencias(Banco banco, int puerto) throws IOException {
+        this(banco, puerto, InetAddress.getLoopbackAddress());
+    }
+
+    public ServidorTransferencias(Banco banco, int puerto, InetAddress direccion) throws IOException {
+        this.banco = banco;
+        this.servidor = new ServerSocket(puerto, 1024, direccion);
+        this.conexiones = HilosConexion.crear("conexion-transferencias");
+        Thread aceptador = new Thread(this::aceptar, "servidor-transferencias-" + getPuerto());
+        aceptador.setDaemon(true);
+        aceptador.start();
+    }
+
+    public int getPuerto() {
+        return servidor.getLocalPort();
+    }
+
+    private void aceptar() {
+        while (!servidor.isClosed()) {
+            try {
+                Socket socket = servidor.accept();
+                socket.setTcpNoDelay(true);
+                conexiones.execute(() -> atender(socket));
+            } catch (IOException e) {
+                if (!servidor.isClosed()) {
+                    errores.increment();
+                    LOG.log(System.Logger.Level.WARNING, "No se pudo aceptar una conexion en el puerto " + getPuerto(), e);
+                }
+            }
+        }
+    }
+
+    private void atender(Socket socket) {
+        try (socket;
+             DataInputStream entrada = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 16 * 1024));
+             DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 16 * 1024))) {
+            while (true) {
+                byte operacion;
+                try {
+                    operacion = entrada.readByte();
+                } catch (EOFException e) {
+                    return; //el cliente cerro la conexion
+                }
+                long idPedido = entrada.readLong();
+                try {
+                    responder(operacion, idPedido, entrada, salida);
+                } catch (SocketException e) {
+                    throw e;
+                } catch (IOException e) {
+                    //un pedido mal formado deja el stream desalineado: se avisa al cliente y se corta la conexion
+                    error(salida, idPedido, String.valueOf(e.getMessage()));
+                    salida.flush();
+                    throw e;
+                }
+                if (entrada.available() == 0) {
+                    salida.flush();
+                }
+            }
+        } catch (SocketException e) {
+            //conexion cortada
+        } catch (IOException e) {
+            errores.increment();
+            LOG.log(System.Logger.Level.WARNING, "Se corto una conexion en el puerto " + getPuerto(), e);
+        }
+    }
+
+    //conexiones que no se pudieron aceptar o que se cortaron por un error de E/S o un pedido mal formado
+    public long getErrores() {
+        return errores.sum();
+    }
+
+    private void responder(byte operacion, long idPedido, DataInputStream entrada, DataOutputStream salida) throws IOException {
+        switch (operacion) {
+            case ProtocoloTransferencias.CREAR -> {
+                String persona = entrada.readUTF();
+                BigDecimal saldo = ProtocoloFragmento.leerDecimal(entrada);
+                String invalido = validar(saldo, false);
+                if (invalido != null) {
+                    error(salida, idPedido, "Saldo inicial invalido: " + invalido);
+                    return;
+                }
+                try {
+                    Cuenta cuenta = new Cuenta(persona, saldo);
+                    banco.addCuenta(cuenta);
+                    ok(salida, idPedido).writeLong(cuenta.getId());
+                } catch (RuntimeException e) {
+                    error(salida, idPedido, e);
+                }
+            }
+            case ProtocoloTransferencias.SALDO -> {
+                Optional<Cuenta> cuenta = banco.buscarPorId(entrada.readLong());
+                ok(salida, idPedido).writeBoolean(cuenta.isPresent());
+                if (cuenta.isPresent()) {
+                    ProtocoloFragmento.escribirDecimal(salida, cuenta.get().getSaldo());
+                }
+            }
+            case ProtocoloTransferencias.TRANSFERIR -> {
+                Optional<Cuenta> origen = banco.buscarPorId(entrada.readLong());
+                Optional<Cuenta> destino = banco.buscarPorId(entrada.readLong());
+                BigDecimal monto = ProtocoloFragmento.leerDecimal(entrada);
+                String invalido = validar(monto, true);
+                if (invalido != null) {
+                    error(salida, idPedido, "Monto invalido: " + invalido);
+                    return;
+                }
+                ResultadoOperacion resultado = origen.isPresent() && destino.isPresent()
+                        ? banco.tryTransferir(origen.get(), destino.get(), monto)
+                        : ResultadoOperacion.CUENTA_INEXISTENTE;
+                ok(salida, idPedido).writeByte(resultado.ordinal());
+            }
+            //con un pedido desconocido no se sabe donde empieza el siguiente: se corta la conexion
+            default -> throw new IOException("Operacion desconocida: " + operacion);
+        }
+    }
+
+    //Lo que llega del cliente no se usa sin revisar: un monto negativo sacaria dinero del destino
+    private static String validar(BigDecimal monto, boolean positivo) {
+        if (positivo ? monto.signum() <= 0 : monto.signum() < 0) {
+            return monto.toPlainString() + (positivo ? " no es positivo" : " es negativo");
+        }
+        if (monto.scale() < 0 || monto.scale() > ProtocoloTransferencias.ESCALA_MAXIMA) {
+            return "la escala " + monto.scale() + " no esta entre 0 y " + ProtocoloTransferencias.ESCALA_MAXIMA;
+        }
+        return null;
+    }
+
+    private static DataOutputStream ok(DataOutputStream salida, long idPedido) throws IOException {
+        salida.writeLong(idPedido);
+        salida.writeByte(ProtocoloTransferencias.OK);
+        return salida;
+    }
+
+    private static void error(DataOutputStream salida, long idPedido, RuntimeException e) throws IOException {
+        error(salida, idPedido, String.valueOf(e.getMessage()));
+    }
+
+    private static void error(DataOutputStream salida, long idPedido, String mensaje) throws IOException {
+        salida.writeLong(idPedido);
+        salida.writeByte(ProtocoloTransferencias.ERROR);
+        salida.writeUTF(mensaje);
+    }
+
+    @Override
+    public void close() throws IOException {
+        servidor.close();
+        conexiones.shutdownNow();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int puerto = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        try (ServidorTransferencias servidor = new ServidorTransferencias(new Banco(), puerto)) {
+            System.out.println("Banco escuchando en 127.0.0.1:" + servidor.getPuerto());
+            Thread.currentThread().join();
+        }
+    }
+}
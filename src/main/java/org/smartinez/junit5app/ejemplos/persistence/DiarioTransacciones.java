@@ -0,0 +1,437 @@
+package org.smartinez.junit5app.ejemplos.persistence;
+
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+import org.smartinez.junit5app.ejemplos.models.ModoConcurrencia;
+import org.smartinez.junit5app.ejemplos.models.OyenteOperaciones;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+//Diario binario de solo agregado. Cada operacion es un registro de ancho fijo escrito en un MappedByteBuffer,
+//sin serializar objetos: agregar es copiar 80 bytes a memoria. El fsync (force) se hace agrupado cada cierto intervalo.
+//
+//Formato del registro (80 bytes):
+//  0 long secuencia | 8 byte tipo | 9 byte escala | 10 byte flags | 11 byte largo persona | 12 int crc32c
+// 16 long id cuenta | 24 long id destino | 32 long monto sin escala | 40 persona UTF-8 (hasta 40 bytes)
+//
+//Los registros de un lote van juntos entre INICIO_LOTE y FIN_LOTE: al reproducir, un lote sin FIN_LOTE (cortado por
+//un crash) se descarta entero, y al reabrir el diario se borra para seguir escribiendo desde antes de su inicio.
+//Banco.setCuentas llega como un lote con un REINICIO seguido de las altas: al reproducirlo se vacia el banco.
+public class DiarioTransacciones implements OyenteOperaciones, Closeable {
+
+    public static final int TAMANO_REGISTRO = 80;
+    public static final int LARGO_MAXIMO_PERSONA = 40;
+
+    static final byte ALTA = 1;
+    static final byte DEBITO = 2;
+    static final byte CREDITO = 3;
+    static final byte TRANSFERENCIA = 4;
+    static final byte SALDO = 5;
+    static final byte PERSONA = 6;
+    static final byte INICIO_LOTE = 7;
+    static final byte FIN_LOTE = 8;
+    static final byte REINICIO = 9;
+
+    static final byte FLAG_ESCALA_FIJA = 1;
+    static final byte FLAG_CAS = 2;
+    static final byte FLAG_ACUMULADO = 4;
+
+    private static final int REGISTROS_POR_REGION = 1 << 20; //80 MiB mapeados por vez
+
+    private final FileChannel canal;
+    private final long tamanoRegion;
+    private final ByteBuffer registro = ByteBuffer.allocate(TAMANO_REGISTRO);
+    private final CRC32C crc = new CRC32C();
+    private final ScheduledExecutorService sincronizador;
+    private final boolean syncEnCadaRegistro;
+    //un lote retiene el cerrojo desde su inicio hasta su fin, asi sus registros quedan contiguos
+    private final ReentrantLock cerrojo = new ReentrantLock();
+
+    private volatile MappedByteBuffer region;
+    private long inicioRegion;
+    private long posicion; //offset del proximo registro dentro del archivo
+    private long secuencia;
+    private volatile boolean pendiente;
+
+    private DiarioTransacciones(Path archivo, Duration intervaloSync, int registrosPorRegion) throws IOException {
+        this.canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.tamanoRegion = (long) registrosPorRegion * TAMANO_REGISTRO;
+        Lector lector = new Lector(canal, tamanoRegion);
+        long inicioLote = -1;
+        long secuenciaAntesDelLote = 0;
+        while (lector.siguiente()) {
+            if (lector.tipo() == INICIO_LOTE) {
+                inicioLote = lector.fin();
+                secuenciaAntesDelLote = secuencia;
+            } else if (lector.tipo() == FIN_LOTE) {
+                inicioLote = -1;
+            }
+            secuencia = lector.secuencia();
+        }
+        this.posicion = lector.fin();
+        if (inicioLote >= 0) {
+            //lote sin confirmar: se borra para que sus registros no queden delante de los nuevos
+            canal.write(ByteBuffer.allocate((int) (posicion - inicioLote)), inicioLote);
+            canal.force(false);
+            posicion = inicioLote;
+            secuencia = secuenciaAntesDelLote;
+        }
+        mapearRegion(posicion - posicion % tamanoRegion);
+
+        this.syncEnCadaRegistro = intervaloSync.isZero();
+        if (syncEnCadaRegistro) {
+            this.sincronizador = null;
+        } else {
+            this.sincronizador = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread hilo = new Thread(r, "diario-sync");
+                hilo.setDaemon(true);
+                return hilo;
+            });
+            long nanos = intervaloSync.toNanos();
+            sincronizador.scheduleWithFixedDelay(this::sincronizarSiHacePendiente, nanos, nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    //intervaloSync en cero hace fsync en cada registro
+    public static DiarioTransacciones abrir(Path archivo, Duration intervaloSync) throws IOException {
+        return new DiarioTransacciones(archivo, intervaloSync, REGISTROS_POR_REGION);
+    }
+
+    static DiarioTransacciones abrir(Path archivo, Duration intervaloSync, int registrosPorRegion) throws IOException {
+        return new DiarioTransacciones(archivo, intervaloSync, registrosPorRegion);
+    }
+
+    public long getSecuencia() {
+        cerrojo.lock();
+        try {
+            return secuencia;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    //Los limites del registro se revisan antes de que el banco aplique la operacion: si no, quedaria aplicada
+    //en memoria y sin registrar, y la reproduccion no coincidiria con el banco
+    @Override
+    public void verificar(BigDecimal monto, String persona) {
+        if (monto != null) {
+            normalizar(monto);
+        }
+        if (persona != null && persona.getBytes(StandardCharsets.UTF_8).length > LARGO_MAXIMO_PERSONA) {
+            throw new IllegalArgumentException("La persona no entra en el registro del diario: " + persona);
+        }
+    }
+
+    //monto con escala entre 0 y 127 y valor sin escala que entra en un long
+    private static BigDecimal normalizar(BigDecimal monto) {
+        if (monto.signum() == 0) {
+            return monto.scale() < 0 || monto.scale() > Byte.MAX_VALUE ? BigDecimal.ZERO : monto;
+        }
+        if (monto.scale() < -18 || monto.scale() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("El monto no entra en un registro del diario: " + monto);
+        }
+        if (monto.scale() < 0) {
+            monto = monto.setScale(0);
+        }
+        if (monto.precision() > 18 && monto.unscaledValue().bitLength() > 63) {
+            throw new IllegalArgumentException("El monto no entra en un registro del diario: " + monto);
+        }
+        return monto;
+    }
+
+    @Override
+    public void loteIniciado() {
+        cerrojo.lock();
+        try {
+            agregar(INICIO_LOTE, (byte) 0, 0, 0, BigDecimal.ZERO, null);
+        } catch (RuntimeException e) {
+            cerrojo.unlock();
+            throw e;
+        }
+    }
+
+    @Override
+    public void loteConfirmado() {
+        try {
+            agregar(FIN_LOTE, (byte) 0, 0, 0, BigDecimal.ZERO, null);
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    @Override
+    public void cuentasReiniciadas() {
+        agregar(REINICIO, (byte) 0, 0, 0, BigDecimal.ZERO, null);
+    }
+
+    @Override
+    public void cuentaAgregada(Cuenta cuenta) {
+        BigDecimal saldo = cuenta.getSaldo();
+        byte flags = cuenta.isEscalaFija() ? FLAG_ESCALA_FIJA : 0;
+        flags |= switch (cuenta.getModoConcurrencia()) {
+            case CERROJO -> 0;
+            case CAS -> FLAG_CAS;
+            case ACUMULADO -> FLAG_ACUMULADO;
+        };
+        agregar(ALTA, flags, cuenta.getId(), 0, saldo, cuenta.getPersona());
+    }
+
+    @Override
+    public void debito(Cuenta cuenta, BigDecimal monto) {
+        agregar(DEBITO, (byte) 0, cuenta.getId(), 0, monto, null);
+    }
+
+    @Override
+    public void credito(Cuenta cuenta, BigDecimal monto) {
+        agregar(CREDITO, (byte) 0, cuenta.getId(), 0, monto, null);
+    }
+
+    @Override
+    public void transferencia(Cuenta origen, Cuenta destino, BigDecimal monto) {
+        agregar(TRANSFERENCIA, (byte) 0, origen.getId(), destino.getId(), monto, null);
+    }
+
+    @Override
+    public void saldoFijado(Cuenta cuenta, BigDecimal anterior) {
+        agregar(SALDO, (byte) 0, cuenta.getId(), 0, cuenta.getSaldo(), null);
+    }
+
+    @Override
+    public void personaCambiada(Cuenta cuenta, String anterior) {
+        agregar(PERSONA, (byte) 0, cuenta.getId(), 0, BigDecimal.ZERO, cuenta.getPersona());
+    }
+
+    private void agregar(byte tipo, byte flags, long id, long idDestino, BigDecimal monto, String persona) {
+        monto = normalizar(monto);
+        long sinEscala = monto.unscaledValue().longValueExact();
+        byte[] bytesPersona = persona == null ? null : persona.getBytes(StandardCharsets.UTF_8);
+        if (bytesPersona != null && bytesPersona.length > LARGO_MAXIMO_PERSONA) {
+            throw new IllegalArgumentException("La persona no entra en el registro del diario: " + persona);
+        }
+        cerrojo.lock();
+        try {
+            escribir(tipo, flags, id, idDestino, monto.scale(), sinEscala, bytesPersona);
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    private void escribir(byte tipo, byte flags, long id, long idDestino, int escala, long sinEscala, byte[] bytesPersona) {
+
+        registro.clear();
+        registro.putLong(secuencia + 1)
+                .put(tipo)
+                .put((byte) escala)
+                .put(flags)
+                .put((byte) (bytesPersona == null ? 0 : bytesPersona.length))
+                .putInt(0)
+                .putLong(id)
+                .putLong(idDestino)
+                .putLong(sinEscala);
+        if (bytesPersona != null) {
+            registro.put(bytesPersona);
+        }
+        registro.position(TAMANO_REGISTRO).flip();
+        crc.reset();
+        crc.update(registro);
+        registro.putInt(12, (int) crc.getValue());
+        registro.rewind();
+
+        if (posicion - inicioRegion == tamanoRegion) {
+            region.force(); //la region llena se baja a disco antes de soltarla
+            try {
+                mapearRegion(posicion);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        region.put((int) (posicion - inicioRegion), registro, 0, TAMANO_REGISTRO);
+        posicion += TAMANO_REGISTRO;
+        secuencia++;
+        if (syncEnCadaRegistro) {
+            region.force();
+        } else {
+            pendiente = true;
+        }
+    }
+
+    private void mapearRegion(long inicio) throws IOException {
+        this.region = canal.map(FileChannel.MapMode.READ_WRITE, inicio, tamanoRegion);
+        this.inicioRegion = inicio;
+    }
+
+    private void sincronizarSiHacePendiente() {
+        if (pendiente) {
+            sincronizar();
+        }
+    }
+
+    //Group commit: un solo msync cubre todos los registros agregados desde el anterior
+    public void sincronizar() {
+        pendiente = false;
+        region.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (sincronizador != null) {
+            sincronizador.shutdownNow();
+        }
+        cerrojo.lock();
+        try {
+            region.force();
+            canal.close();
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    public static long reproducir(Path archivo, Banco banco) throws IOException {
+        return reproducir(archivo, banco, 0);
+    }
+
+    //Aplica sobre el banco los registros con secuencia mayor a desdeSecuencia. Devuelve la ultima secuencia aplicada.
+    //Los lotes se aplican recien al leer su FIN_LOTE. El banco no tiene que tener este diario como oyente mientras se reproduce
+    public static long reproducir(Path archivo, Banco banco, long desdeSecuencia) throws IOException {
+        long ultima = desdeSecuencia;
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            Lector lector = new Lector(canal, (long) REGISTROS_POR_REGION * TAMANO_REGISTRO);
+            List<byte[]> lote = null;
+            while (lector.siguiente()) {
+                if (lector.secuencia() <= desdeSecuencia) {
+                    continue;
+                }
+                byte tipo = lector.tipo();
+                if (tipo == INICIO_LOTE) {
+                    lote = new ArrayList<>();
+                } else if (tipo == FIN_LOTE) {
+                    if (lote != null) {
+                        for (byte[] registro : lote) {
+                            aplicar(ByteBuffer.wrap(registro), banco);
+                        }
+                    }
+                    lote = null;
+                    ultima = lector.secuencia();
+                } else if (lote != null) {
+                    lote.add(lector.copia());
+                } else {
+                    aplicar(lector.registro, banco);
+                    ultima = lector.secuencia();
+                }
+            }
+        }
+        return ultima;
+    }
+
+    //Recorre los registros validos hasta el primero vacio o con crc incorrecto (eg: escritura cortada por un crash)
+    static class Lector {
+        private final FileChannel canal;
+        private final long tamanoRegion;
+        private final long tamanoArchivo;
+        private final byte[] bytes = new byte[TAMANO_REGISTRO];
+        private final ByteBuffer registro = ByteBuffer.wrap(bytes);
+        private final CRC32C crc = new CRC32C();
+        private MappedByteBuffer region;
+        private long inicioRegion = -1;
+        private long posicion;
+
+        Lector(FileChannel canal, long tamanoRegion) throws IOException {
+            this.canal = canal;
+            this.tamanoRegion = tamanoRegion;
+            this.tamanoArchivo = canal.size();
+        }
+
+        boolean siguiente() throws IOException {
+            long proxima = inicioRegion < 0 ? 0 : posicion + TAMANO_REGISTRO;
+            if (proxima + TAMANO_REGISTRO > tamanoArchivo) {
+                posicion = proxima;
+                return false;
+            }
+            if (region == null || proxima - inicioRegion >= tamanoRegion) {
+                inicioRegion = proxima - proxima % tamanoRegion;
+                region = canal.map(FileChannel.MapMode.READ_ONLY, inicioRegion, Math.min(tamanoRegion, tamanoArchivo - inicioRegion));
+            }
+            region.get((int) (proxima - inicioRegion), bytes);
+            posicion = proxima;
+            if (registro.get(8) == 0) {
+                return false;
+            }
+            int esperado = registro.getInt(12);
+            registro.putInt(12, 0);
+            crc.reset();
+            crc.update(bytes);
+            return (int) crc.getValue() == esperado;
+        }
+
+        //offset donde termina el ultimo registro valido
+        long fin() {
+            return posicion;
+        }
+
+        long secuencia() {
+            return registro.getLong(0);
+        }
+
+        byte tipo() {
+            return registro.get(8);
+        }
+
+        byte[] copia() {
+            return bytes.clone();
+        }
+    }
+
+    private static void aplicar(ByteBuffer registro, Banco banco) {
+        byte tipo = registro.get(8);
+        BigDecimal monto = BigDecimal.valueOf(registro.getLong(32), registro.get(9));
+        long id = registro.getLong(16);
+        switch (tipo) {
+            case ALTA -> {
+                byte flags = registro.get(10);
+                banco.addCuenta((flags & FLAG_ESCALA_FIJA) != 0
+                        ? new Cuenta(id, persona(registro), monto, monto.scale(), modo(flags))
+                        : new Cuenta(id, persona(registro), monto));
+            }
+            case DEBITO -> cuenta(banco, id).debito(monto);
+            case CREDITO -> cuenta(banco, id).credito(monto);
+            case TRANSFERENCIA -> banco.transferir(cuenta(banco, id), cuenta(banco, registro.getLong(24)), monto);
+            case SALDO -> cuenta(banco, id).setSaldo(monto);
+            case PERSONA -> cuenta(banco, id).setPersona(persona(registro));
+            case REINICIO -> banco.setCuentas(List.of());
+            default -> throw new IllegalStateException("Tipo de registro desconocido: " + tipo);
+        }
+    }
+
+    private static ModoConcurrencia modo(byte flags) {
+        if ((flags & FLAG_CAS) != 0) {
+            return ModoConcurrencia.CAS;
+        }
+        return (flags & FLAG_ACUMULADO) != 0 ? ModoConcurrencia.ACUMULADO : ModoConcurrencia.CERROJO;
+    }
+
+    private static String persona(ByteBuffer registro) {
+        return new String(registro.array(), 40, registro.get(11), StandardCharsets.UTF_8);
+    }
+
+    private static Cuenta cuenta(Banco banco, long id) {
+        return banco.buscarPorId(id)
+                .orElseThrow(() -> new IllegalStateException("El diario referencia una cuenta inexistente: " + id));
+    }
+}
@@ -0,0 +1,304 @@
+package org.smartinez.junit5app.ejemplos.persistence;
+
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+import org.smartinez.junit5app.ejemplos.models.ModoConcurrencia;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+//Foto compacta del estado de un Banco en formato columnar:
+//  cabecera: int magia | int version | long secuencia del diario | int cantidad
+//  columnas: long ids[n] | long saldos sin escala[n] | byte escalas[n] | byte flags[n] | int largos persona[n] | bytes personas
+//Los flags marcan la escala fija y el modo de concurrencia (la version 1 no tenia el modo: son todas CERROJO)
+//Se escribe y se lee en bloques grandes con NIO, sin serializar objetos.
+//Arrancar es cargar la ultima instantanea y reproducir el diario desde su secuencia.
+public class InstantaneaBanco {
+
+    private static final int MAGIA = 0x534E4150; //"SNAP"
+    private static final int VERSION = 2;
+    private static final int TAMANO_BLOQUE = 1 << 20;
+
+    private static final byte FLAG_ESCALA_FIJA = 1;
+    private static final byte FLAG_CAS = 2;
+    private static final byte FLAG_ACUMULADO = 4;
+    private static final int SIN_PERSONA = -1;
+
+    private final long secuenciaDiario;
+    private final long[] ids;
+    private final long[] saldos;
+    private final byte[] escalas;
+    private final byte[] flags;
+    private final String[] personas;
+    //primera cuenta cuyo saldo no entra en las columnas; se rechaza despues de soltar los cerrojos
+    private Cuenta rechazada;
+
+    private InstantaneaBanco(long secuenciaDiario, int cantidad) {
+        this.secuenciaDiario = secuenciaDiario;
+        this.ids = new long[cantidad];
+        this.saldos = new long[cantidad];
+        this.escalas = new byte[cantidad];
+        this.flags = new byte[cantidad];
+        this.personas = new String[cantidad];
+    }
+
+    public static void escribir(Banco banco, Path archivo) throws IOException {
+        escribir(banco, archivo, null);
+    }
+
+    //La foto se toma en un instante (con las cuentas bloqueadas solo lo que dura copiar los valores a arreglos)
+    //y junto con la secuencia del diario, para saber desde donde reproducirlo. El archivo se escribe despues, sin bloquear nada
+    public static void escribir(Banco banco, Path archivo, DiarioTransacciones diario) throws IOException {
+        InstantaneaBanco foto = banco.leerConsistente(cuentas -> copiar(cuentas, diario));
+        if (foto.rechazada != null) {
+            throw new IllegalArgumentException("El saldo de la cuenta " + foto.rechazada.getId()
+                    + " no entra en la instantanea: " + foto.rechazada.getSaldo());
+        }
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        foto.escribirEn(temporal);
+        Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static InstantaneaBanco copiar(List<Cuenta> cuentas, DiarioTransacciones diario) {
+        InstantaneaBanco foto = new InstantaneaBanco(diario == null ? 0 : diario.getSecuencia(), cuentas.size());
+        for (int i = 0; i < cuentas.size(); i++) {
+            Cuenta cuenta = cuentas.get(i);
+            foto.ids[i] = cuenta.getId();
+            if (cuenta.isEscalaFija()) {
+                foto.saldos[i] = cuenta.getSaldoUnidades();
+                foto.escalas[i] = (byte) cuenta.getEscala();
+                foto.flags[i] = (byte) (FLAG_ESCALA_FIJA | switch (cuenta.getModoConcurrencia()) {
+                    case CERROJO -> 0;
+                    case CAS -> FLAG_CAS;
+                    case ACUMULADO -> FLAG_ACUMULADO;
+                });
+            } else {
+                BigDecimal saldo = normalizar(cuenta.getSaldo());
+                if (saldo == null) {
+                    foto.rechazada = cuenta;
+                    return foto;
+                }
+                foto.saldos[i] = saldo.unscaledValue().longValueExact();
+                foto.escalas[i] = (byte) saldo.scale();
+            }
+            foto.personas[i] = cuenta.getPersona();
+        }
+        return foto;
+    }
+
+    //como en el diario: escala entre 0 y 127 y valor sin escala que entra en un long, o null si no entra
+    private static BigDecimal normalizar(BigDecimal saldo) {
+        if (saldo.signum() == 0) {
+            return saldo.scale() < 0 || saldo.scale() > Byte.MAX_VALUE ? BigDecimal.ZERO : saldo;
+        }
+        if (saldo.scale() < -18 || saldo.scale() > Byte.MAX_VALUE) {
+            return null;
+        }
+        if (saldo.scale() < 0) {
+            saldo = saldo.setScale(0);
+        }
+        return saldo.unscaledValue().bitLength() > 63 ? null : saldo;
+    }
+
+    private void escribirEn(Path archivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Escritor escritor = new Escritor(canal);
+            escritor.buffer.putInt(MAGIA).putInt(VERSION).putLong(secuenciaDiario).putInt(ids.length);
+            escritor.longs(ids);
+            escritor.longs(saldos);
+            escritor.bytes(escalas);
+            escritor.bytes(flags);
+            byte[][] bytesPersonas = new byte[personas.length][];
+            int[] largos = new int[personas.length];
+            for (int i = 0; i < personas.length; i++) {
+                bytesPersonas[i] = personas[i] == null ? null : personas[i].getBytes(StandardCharsets.UTF_8);
+                largos[i] = bytesPersonas[i] == null ? SIN_PERSONA : bytesPersonas[i].length;
+            }
+            escritor.ints(largos);
+            for (byte[] persona : bytesPersonas) {
+                if (persona != null) {
+                    escritor.bytes(persona);
+                }
+            }
+            escritor.vaciar();
+            canal.force(true);
+        }
+    }
+
+    //Agrega al banco las cuentas de la instantanea y devuelve la secuencia del diario desde la cual hay que reproducir
+    public static long cargar(Path archivo, Banco banco) throws IOException {
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            Lector lector = new Lector(canal);
+            if (lector.entero() != MAGIA) {
+                throw new IOException("El archivo no es una instantanea de banco: " + archivo);
+            }
+            int version = lector.entero();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Version de instantanea no soportada: " + version);
+            }
+            InstantaneaBanco foto = new InstantaneaBanco(lector.largo(), lector.entero());
+            lector.longs(foto.ids);
+            lector.longs(foto.saldos);
+            lector.bytes(foto.escalas);
+            lector.bytes(foto.flags);
+            int[] largos = new int[foto.ids.length];
+            lector.ints(largos);
+            byte[] scratch = new byte[256];
+            for (int i = 0; i < largos.length; i++) {
+                if (largos[i] != SIN_PERSONA) {
+                    if (scratch.length < largos[i]) {
+                        scratch = new byte[largos[i]];
+                    }
+                    lector.bytes(scratch, largos[i]);
+                    foto.personas[i] = new String(scratch, 0, largos[i], StandardCharsets.UTF_8);
+                }
+            }
+            foto.cargarEn(banco);
+            return foto.secuenciaDiario;
+        }
+    }
+
+    private void cargarEn(Banco banco) {
+        for (int i = 0; i < ids.length; i++) {
+            BigDecimal saldo = BigDecimal.valueOf(saldos[i], escalas[i]);
+            banco.addCuenta((flags[i] & FLAG_ESCALA_FIJA) != 0
+                    ? new Cuenta(ids[i], personas[i], saldo, escalas[i], modo(flags[i]))
+                    : new Cuenta(ids[i], personas[i], saldo));
+        }
+    }
+
+    private static ModoConcurrencia modo(byte flags) {
+        if ((flags & FLAG_CAS) != 0) {
+            return ModoConcurrencia.CAS;
+        }
+        return (flags & FLAG_ACUMULADO) != 0 ? ModoConcurrencia.ACUMULADO : ModoConcurrencia.CERROJO;
+    }
+
+    private static class Escritor {
+        private final FileChannel canal;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(TAMANO_BLOQUE).order(ByteOrder.LITTLE_ENDIAN);
+
+        Escritor(FileChannel canal) {
+            this.canal = canal;
+        }
+
+        void longs(long[] valores) throws IOException {
+            for (int i = 0; i < valores.length; ) {
+                int n = Math.min(valores.length - i, espacio() / Long.BYTES);
+                buffer.asLongBuffer().put(valores, i, n);
+                buffer.position(buffer.position() + n * Long.BYTES);
+                i += n;
+            }
+        }
+
+        void ints(int[] valores) throws IOException {
+            for (int i = 0; i < valores.length; ) {
+                int n = Math.min(valores.length - i, espacio() / Integer.BYTES);
+                buffer.asIntBuffer().put(valores, i, n);
+                buffer.position(buffer.position() + n * Integer.BYTES);
+                i += n;
+            }
+        }
+
+        void bytes(byte[] valores) throws IOException {
+            for (int i = 0; i < valores.length; ) {
+                int n = Math.min(valores.length - i, espacio());
+                buffer.put(valores, i, n);
+                i += n;
+            }
+        }
+
+        //vacia el buffer si no entra ni un long mas
+        private int espacio() throws IOException {
+            if (buffer.remaining() < Long.BYTES) {
+                vaciar();
+            }
+            return buffer.remaining();
+        }
+
+        void vaciar() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    private static class Lector {
+        private final FileChannel canal;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(TAMANO_BLOQUE).order(ByteOrder.LITTLE_ENDIAN);
+
+        Lector(FileChannel canal) {
+            this.canal = canal;
+            buffer.limit(0);
+        }
+
+        int entero() throws IOException {
+            asegurar(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        long largo() throws IOException {
+            asegurar(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        void longs(long[] destino) throws IOException {
+            for (int i = 0; i < destino.length; ) {
+                asegurar(Long.BYTES);
+                int n = Math.min(destino.length - i, buffer.remaining() / Long.BYTES);
+                buffer.asLongBuffer().get(destino, i, n);
+                buffer.position(buffer.position() + n * Long.BYTES);
+                i += n;
+            }
+        }
+
+        void ints(int[] destino) throws IOException {
+            for (int i = 0; i < destino.length; ) {
+                asegurar(Integer.BYTES);
+                int n = Math.min(destino.length - i, buffer.remaining() / Integer.BYTES);
+                buffer.asIntBuffer().get(destino, i, n);
+                buffer.position(buffer.position() + n * Integer.BYTES);
+                i += n;
+            }
+        }
+
+        void bytes(byte[] destino) throws IOException {
+            bytes(destino, destino.length);
+        }
+
+        void bytes(byte[] destino, int largo) throws IOException {
+            for (int i = 0; i < largo; ) {
+                asegurar(1);
+                int n = Math.min(largo - i, buffer.remaining());
+                buffer.get(destino, i, n);
+                i += n;
+            }
+        }
+
+        //garantiza al menos minimo bytes disponibles en el buffer, leyendo otro bloque del archivo si hace falta
+        private void asegurar(int minimo) throws IOException {
+            if (buffer.remaining() >= minimo) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < minimo) {
+                if (canal.read(buffer) < 0) {
+                    throw new IOException("La instantanea esta incompleta");
+                }
+            }
+            buffer.flip();
+        }
+    }
+}
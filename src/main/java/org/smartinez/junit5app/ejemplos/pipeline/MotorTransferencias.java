@@ -0,0 +1,381 @@
+package org.smartinez.junit5app.ejemplos.pipeline;
+
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+import org.smartinez.junit5app.ejemplos.models.OyenteOperaciones;
+import org.smartinez.junit5app.ejemplos.models.ResultadoOperacion;
+
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+//Motor alternativo para un Banco sobre un buffer circular de comandos preasignados (al estilo Disruptor).
+//Los productores reclaman una secuencia, completan el comando del slot y lo publican, sin crear objetos.
+//Un unico hilo escritor aplica los comandos en orden; despues el hilo del diario los registra y el de
+//confirmacion avisa a quien espera. Cada etapa sigue a la anterior por su secuencia, sin colas ni cerrojos.
+//El escritor usa las operaciones try* del Banco: como es el unico que escribe, sus cerrojos nunca tienen contencion.
+//Si se usa la etapa de diario (por ejemplo un DiarioTransacciones), no tiene que estar ademas como oyente del Banco.
+//Si el diario falla, la operacion queda informada con error y el motor rechaza las pendientes y las nuevas.
+public class MotorTransferencias implements Closeable {
+
+    private static final byte TRANSFERIR = 1;
+    private static final byte DEBITO = 2;
+    private static final byte CREDITO = 3;
+    private static final byte DESCARTADO = 4; //slot reclamado mientras se cerraba: pasa por las etapas sin hacer nada
+
+    private static final long ESPERA_MAXIMA_NANOS = 1_000_000;
+
+    private static final ThreadLocal<Espera> ESPERAS = ThreadLocal.withInitial(Espera::new);
+
+    private final Banco banco;
+    private final OyenteOperaciones diario;
+    private final Comando[] comandos;
+    private final int mascara;
+    //publicados[i] es la secuencia del ultimo comando publicado en el slot i
+    private final AtomicLongArray publicados;
+
+    private final AtomicLong reclamado = new AtomicLong();
+    private final AtomicLong aplicado = new AtomicLong();
+    private final AtomicLong journalizado = new AtomicLong();
+    private final AtomicLong confirmado = new AtomicLong();
+
+    private final Thread escritor;
+    private final Thread etapaDiario;
+    private final Thread confirmador;
+    private volatile boolean cerrado;
+    private volatile boolean corriendo = true;
+    private volatile Throwable falla; //primer error del diario o de una etapa caida
+
+    public MotorTransferencias(Banco banco, int capacidad) {
+        this(banco, capacidad, null);
+    }
+
+    public MotorTransferencias(Banco banco, int capacidad, OyenteOperaciones diario) {
+        if (capacidad < 2 || Integer.bitCount(capacidad) != 1) {
+            throw new IllegalArgumentException("La capacidad tiene que ser una potencia de 2");
+        }
+        this.banco = banco;
+        this.diario = diario;
+        this.comandos = new Comando[capacidad];
+        for (int i = 0; i < capacidad; i++) {
+            comandos[i] = new Comando();
+        }
+        this.mascara = capacidad - 1;
+        this.publicados = new AtomicLongArray(capacidad);
+
+        this.escritor = iniciar("motor-escritor", this::escribir);
+        this.etapaDiario = diario == null ? null : iniciar("motor-diario", this::journalizar);
+        this.confirmador = iniciar("motor-confirmacion", this::confirmar);
+    }
+
+    //Si una etapa se cae no avanza mas nada: se deja de correr y close() falla lo que quedo pendiente
+    private Thread iniciar(String nombre, Runnable etapa) {
+        Thread hilo = new Thread(() -> {
+            try {
+                etapa.run();
+            } catch (Throwable e) {
+                if (falla == null) {
+                    falla = e;
+                }
+                corriendo = false;
+            }
+        }, nombre);
+        hilo.setDaemon(true);
+        hilo.start();
+        return hilo;
+    }
+
+    //API bloqueante: devuelve el resultado cuando el comando ya esta aplicado, en el diario y confirmado
+
+    public ResultadoOperacion transferir(Cuenta origen, Cuenta destino, BigDecimal monto) {
+        return esperar(TRANSFERIR, origen, destino, monto);
+    }
+
+    public ResultadoOperacion debito(Cuenta cuenta, BigDecimal monto) {
+        return esperar(DEBITO, cuenta, null, monto);
+    }
+
+    public ResultadoOperacion credito(Cuenta cuenta, BigDecimal monto) {
+        return esperar(CREDITO, cuenta, null, monto);
+    }
+
+    //API asincronica
+
+    public CompletableFuture<ResultadoOperacion> transferirAsync(Cuenta origen, Cuenta destino, BigDecimal monto) {
+        CompletableFuture<ResultadoOperacion> futuro = new CompletableFuture<>();
+        publicar(TRANSFERIR, origen, destino, monto, null, futuro);
+        return futuro;
+    }
+
+    public CompletableFuture<ResultadoOperacion> debitoAsync(Cuenta cuenta, BigDecimal monto) {
+        CompletableFuture<ResultadoOperacion> futuro = new CompletableFuture<>();
+        publicar(DEBITO, cuenta, null, monto, null, futuro);
+        return futuro;
+    }
+
+    public CompletableFuture<ResultadoOperacion> creditoAsync(Cuenta cuenta, BigDecimal monto) {
+        CompletableFuture<ResultadoOperacion> futuro = new CompletableFuture<>();
+        publicar(CREDITO, cuenta, null, monto, null, futuro);
+        return futuro;
+    }
+
+    private ResultadoOperacion esperar(byte tipo, Cuenta cuenta, Cuenta destino, BigDecimal monto) {
+        Espera espera = ESPERAS.get(); //una por hilo y reutilizable: esperar no crea objetos
+        espera.hilo = Thread.currentThread();
+        espera.resultado = null;
+        espera.error = null;
+        publicar(tipo, cuenta, destino, monto, espera, null);
+        ResultadoOperacion resultado;
+        while ((resultado = espera.resultado) == null && espera.error == null) {
+            if (!corriendo) {
+                throw new IllegalStateException("El motor se detuvo", falla);
+            }
+            LockSupport.parkNanos(this, ESPERA_MAXIMA_NANOS);
+        }
+        if (espera.error != null) {
+            throw espera.error;
+        }
+        return resultado;
+    }
+
+    private void publicar(byte tipo, Cuenta cuenta, Cuenta destino, BigDecimal monto, Espera espera,
+                          CompletableFuture<ResultadoOperacion> futuro) {
+        verificarAbierto();
+        long secuencia = reclamado.incrementAndGet();
+        //se vuelve a mirar despues de reclamar: si close() ya empezo puede que no espere este slot, asi que
+        //se publica vacio (para no dejar un hueco en la secuencia) y se rechaza al llamador
+        boolean descartar = cerrado || falla != null;
+        long libre = secuencia - comandos.length; //el slot se puede reusar cuando su comando anterior ya se confirmo
+        for (int vueltas = 0; confirmado.get() < libre; vueltas++) {
+            if (!corriendo) {
+                throw new IllegalStateException("El motor esta cerrado");
+            }
+            esperarUnPoco(vueltas);
+        }
+        Comando comando = comandos[(int) secuencia & mascara];
+        comando.tipo = descartar ? DESCARTADO : tipo;
+        comando.cuenta = cuenta;
+        comando.destino = destino;
+        comando.monto = monto;
+        comando.espera = descartar ? null : espera;
+        comando.futuro = descartar ? null : futuro;
+        comando.resultado = null;
+        comando.error = null;
+        publicados.set((int) secuencia & mascara, secuencia); //escritura volatil: publica los campos del comando
+        if (descartar) {
+            verificarAbierto();
+        }
+    }
+
+    private void verificarAbierto() {
+        if (falla != null) {
+            throw new IllegalStateException("El motor se detuvo por un error", falla);
+        }
+        if (cerrado) {
+            throw new IllegalStateException("El motor esta cerrado");
+        }
+    }
+
+    private void escribir() {
+        long proximo = 1;
+        int vueltas = 0;
+        while (corriendo) {
+            if (publicados.get((int) proximo & mascara) != proximo) {
+                esperarUnPoco(vueltas++);
+                continue;
+            }
+            vueltas = 0;
+            long hasta = proximo; //se aplican de una todos los que ya estan publicados
+            while (hasta - proximo < mascara && publicados.get((int) (hasta + 1) & mascara) == hasta + 1) {
+                hasta++;
+            }
+            for (long s = proximo; s <= hasta; s++) {
+                aplicar(comandos[(int) s & mascara]);
+            }
+            aplicado.set(hasta);
+            proximo = hasta + 1;
+        }
+    }
+
+    private void aplicar(Comando comando) {
+        if (falla != null && comando.tipo != DESCARTADO) {
+            comando.error = new IllegalStateException("El motor se detuvo por un error", falla);
+            return;
+        }
+        try {
+            //el diario revisa sus limites antes de aplicar, igual que los oyentes del Banco
+            if (diario != null && comando.tipo != DESCARTADO && !admitido(comando.monto)) {
+                comando.resultado = ResultadoOperacion.MONTO_INVALIDO;
+                return;
+            }
+            comando.resultado = switch (comando.tipo) {
+                case TRANSFERIR -> banco.tryTransferir(comando.cuenta, comando.destino, comando.monto);
+                case DEBITO -> comando.cuenta.tryDebito(comando.monto);
+                case CREDITO -> acreditar(comando.cuenta, comando.monto);
+                case DESCARTADO -> null;
+                default -> throw new IllegalStateException("Comando desconocido: " + comando.tipo);
+            };
+        } catch (RuntimeException e) {
+            comando.error = e;
+        }
+    }
+
+    private boolean admitido(BigDecimal monto) {
+        try {
+            diario.verificar(monto, null);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static ResultadoOperacion acreditar(Cuenta cuenta, BigDecimal monto) {
+        try {
+            cuenta.credito(monto);
+            return ResultadoOperacion.OK;
+        } catch (ArithmeticException e) {
+            return ResultadoOperacion.MONTO_INVALIDO;
+        }
+    }
+
+    private void journalizar() {
+        seguir(aplicado, journalizado, comando -> {
+            if (comando.resultado != ResultadoOperacion.OK) {
+                return;
+            }
+            if (falla == null) {
+                try {
+                    switch (comando.tipo) {
+                        case TRANSFERIR -> diario.transferencia(comando.cuenta, comando.destino, comando.monto);
+                        case DEBITO -> diario.debito(comando.cuenta, comando.monto);
+                        case CREDITO -> diario.credito(comando.cuenta, comando.monto);
+                        default -> {
+                        }
+                    }
+                    return;
+                } catch (Throwable e) {
+                    falla = e; //la etapa sigue corriendo para que se confirme todo lo pendiente
+                }
+            }
+            comando.error = new IllegalStateException("La operacion se aplico pero no quedo en el diario", falla);
+        });
+    }
+
+    private void confirmar() {
+        seguir(diario == null ? aplicado : journalizado, confirmado, comando -> {
+            if (comando.futuro != null) {
+                if (comando.error != null) {
+                    comando.futuro.completeExceptionally(comando.error);
+                } else {
+                    comando.futuro.complete(comando.resultado);
+                }
+            }
+            Espera espera = comando.espera;
+            if (espera != null) {
+                espera.error = comando.error;
+                espera.resultado = comando.resultado;
+                LockSupport.unpark(espera.hilo);
+            }
+            //se sueltan las referencias para no retener objetos hasta la proxima vuelta del buffer
+            comando.cuenta = null;
+            comando.destino = null;
+            comando.monto = null;
+            comando.espera = null;
+            comando.futuro = null;
+        });
+    }
+
+    private interface Etapa {
+        void procesar(Comando comando);
+    }
+
+    //Una etapa procesa en lote todo lo que la etapa anterior ya termino y despues avanza su propia secuencia
+    private void seguir(AtomicLong anterior, AtomicLong propia, Etapa etapa) {
+        long proximo = 1;
+        int vueltas = 0;
+        while (corriendo) {
+            long limite = anterior.get();
+            if (limite < proximo) {
+                esperarUnPoco(vueltas++);
+                continue;
+            }
+            vueltas = 0;
+            for (long s = proximo; s <= limite; s++) {
+                etapa.procesar(comandos[(int) s & mascara]);
+            }
+            propia.set(limite);
+            proximo = limite + 1;
+        }
+    }
+
+    //Espera activa al principio (latencia minima con carga) y despues cede el procesador (sin carga no consume CPU)
+    private static void esperarUnPoco(int vueltas) {
+        if (vueltas < 100) {
+            Thread.onSpinWait();
+        } else if (vueltas < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    //Deja de aceptar comandos, espera a que se confirmen los ya publicados y detiene las etapas.
+    //Si una etapa se cayo no se la espera: los comandos que quedaron sin confirmar terminan con error
+    @Override
+    public void close() {
+        cerrado = true;
+        for (int vueltas = 0; confirmado.get() < reclamado.get() && corriendo; vueltas++) {
+            esperarUnPoco(vueltas);
+        }
+        corriendo = false;
+        for (Thread hilo : new Thread[]{escritor, etapaDiario, confirmador}) {
+            if (hilo != null) {
+                try {
+                    hilo.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        fallarPendientes();
+    }
+
+    private void fallarPendientes() {
+        IllegalStateException error = new IllegalStateException("El motor se detuvo", falla);
+        for (long s = confirmado.get() + 1; s <= reclamado.get(); s++) {
+            if (publicados.get((int) s & mascara) != s) {
+                continue;
+            }
+            Comando comando = comandos[(int) s & mascara];
+            if (comando.futuro != null) {
+                comando.futuro.completeExceptionally(error);
+            }
+            Espera espera = comando.espera;
+            if (espera != null) {
+                espera.error = error;
+                LockSupport.unpark(espera.hilo);
+            }
+        }
+    }
+
+    private static class Comando {
+        byte tipo;
+        Cuenta cuenta;
+        Cuenta destino;
+        BigDecimal monto;
+        Espera espera;
+        CompletableFuture<ResultadoOperacion> futuro;
+        ResultadoOperacion resultado;
+        RuntimeException error;
+    }
+
+    private static class Espera {
+        volatile Thread hilo;
+        volatile ResultadoOperacion resultado;
+        volatile RuntimeException error;
+    }
+}
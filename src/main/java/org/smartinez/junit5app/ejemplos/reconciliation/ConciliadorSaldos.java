@@ -0,0 +1,575 @@
+package org.smartinez.junit5app.ejemplos.reconciliation;
+
+import org.smartinez.junit5app.ejemplos.importer.CamposCsv;
+import org.smartinez.junit5app.ejemplos.importer.LectorRegiones;
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+//Concilia el Banco contra un archivo externo de saldos (id,saldo ordenado por id) en una sola pasada de merge.
+//El archivo se divide en regiones alineadas a fin de linea y la primera clave de cada una define un rango de ids.
+//Las cuentas del Banco se recorren una sola vez: cada id va al archivo temporal de su rango. Despues cada rango
+//ordena sus ids y los recorre junto con su region; los saldos se leen por el indice del Banco y las filas del
+//archivo se parsean directo de bytes, sin crear Cuentas.
+//Entre todos los hilos hay a lo sumo idsPorPasada ids en memoria: un rango con mas ids de los que le tocan (eg: un
+//archivo sesgado) se ordena por tramos dentro de su archivo temporal y los tramos se mezclan al recorrer la region.
+//Los saldos son los del momento en que se lee cada cuenta: conviene conciliar con el banco quieto.
+//Solo se escriben las diferencias, en el orden de los ids dentro de cada rango:
+//  DISTINTO;id;saldoBanco;saldoExterno | SOLO_BANCO;id;saldoBanco; | SOLO_EXTERNO;id;;saldoExterno
+//  INVALIDA;offset;motivo;linea (filas que no se pueden leer o que rompen el orden)
+public class ConciliadorSaldos {
+
+    private static final int ID = 0;
+    private static final int SALDO = 1;
+    private static final int TAMANO_SALIDA = 1 << 16;
+    private static final int IDS_POR_BLOQUE = 1 << 10; //ids que junta cada hilo por rango antes de escribirlos
+    private static final int MINIMO_POR_TRAMO = 64;
+    private static final long SIN_CLAVE = Long.MIN_VALUE;
+    private static final long[] POTENCIAS_DE_10 = new long[19];
+
+    static {
+        POTENCIAS_DE_10[0] = 1;
+        for (int i = 1; i < POTENCIAS_DE_10.length; i++) {
+            POTENCIAS_DE_10[i] = POTENCIAS_DE_10[i - 1] * 10;
+        }
+    }
+
+    private final Banco banco;
+    private final Path diferencias;
+    private final int hilos;
+    private final int idsPorPasada;
+
+    public ConciliadorSaldos(Banco banco, Path diferencias) {
+        this(banco, diferencias, Runtime.getRuntime().availableProcessors(), 4_000_000);
+    }
+
+    public ConciliadorSaldos(Banco banco, Path diferencias, int hilos, int idsPorPasada) {
+        if (hilos < 1 || idsPorPasada < 1) {
+            throw new IllegalArgumentException("La cantidad de hilos y de ids por pasada tienen que ser positivas");
+        }
+        this.banco = banco;
+        this.diferencias = diferencias;
+        this.hilos = hilos;
+        this.idsPorPasada = idsPorPasada;
+    }
+
+    //Los archivos temporales de ids van a un directorio nuevo junto al de diferencias y se borran al terminar
+    public ResultadoConciliacion conciliar(Path saldosExternos) throws IOException {
+        Path temporal = Files.createTempDirectory(diferencias.toAbsolutePath().getParent(), "conciliacion-");
+        try (FileChannel canal = FileChannel.open(saldosExternos, StandardOpenOption.READ);
+             OutputStream salida = new BufferedOutputStream(Files.newOutputStream(diferencias), TAMANO_SALIDA)) {
+            ExecutorService executor = Executors.newFixedThreadPool(hilos);
+            Conciliacion conciliacion = new Conciliacion(canal, salida, executor, temporal);
+            try {
+                return conciliacion.ejecutar();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Conciliacion interrumpida", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                throw new IOException("Fallo la conciliacion de " + saldosExternos, e.getCause());
+            } finally {
+                executor.shutdownNow();
+                conciliacion.cerrarRepartos();
+            }
+        } finally {
+            try (Stream<Path> archivos = Files.list(temporal)) {
+                for (Path archivo : (Iterable<Path>) archivos::iterator) {
+                    Files.deleteIfExists(archivo);
+                }
+            }
+            Files.deleteIfExists(temporal);
+        }
+    }
+
+    private class Conciliacion {
+        private final FileChannel canal;
+        private final OutputStream salida;
+        private final ExecutorService executor;
+        private final Path temporal;
+        private final List<Cuenta> cuentas = banco.getFotoCuentas();
+        private final int[] cortes = new int[hilos + 1]; //cada hilo recorre cuentas[cortes[t], cortes[t + 1])
+
+        private final LongAdder filas = new LongAdder();
+        private final LongAdder coincidentes = new LongAdder();
+        private final LongAdder distintas = new LongAdder();
+        private final LongAdder soloBanco = new LongAdder();
+        private final LongAdder soloExterno = new LongAdder();
+        private final LongAdder invalidas = new LongAdder();
+
+        private long[] limites;
+        //claves[r] es el primer id del rango r; los ids menores a claves[0] no estan en el archivo
+        private long[] claves;
+        //repartos[r] tiene los ids del Banco del rango r, como longs en el orden en que se encontraron
+        private FileChannel[] repartos = new FileChannel[0];
+
+        Conciliacion(FileChannel canal, OutputStream salida, ExecutorService executor, Path temporal) {
+            this.canal = canal;
+            this.salida = salida;
+            this.executor = executor;
+            this.temporal = temporal;
+            for (int t = 0; t <= hilos; t++) {
+                cortes[t] = (int) ((long) cuentas.size() * t / hilos);
+            }
+        }
+
+        ResultadoConciliacion ejecutar() throws IOException, InterruptedException, ExecutionException {
+            int partes = (int) Math.max(1, Math.min(hilos * 4L, canal.size() / 64));
+            dividir(partes);
+            repartir();
+            //corren a lo sumo hilos rangos a la vez, asi que a cada uno le toca esa parte de idsPorPasada
+            int idsPorRango = Math.max(1, idsPorPasada / hilos);
+            List<Future<?>> tareas = new ArrayList<>();
+            for (int r = 0; r < partes; r++) {
+                Region region = new Region(r);
+                tareas.add(executor.submit(() -> {
+                    region.conciliar(idsPorRango);
+                    return null;
+                }));
+            }
+            esperar(tareas);
+            return new ResultadoConciliacion(filas.sum(), coincidentes.sum(), distintas.sum(), soloBanco.sum(),
+                    soloExterno.sum(), invalidas.sum());
+        }
+
+        private void dividir(int partes) throws IOException {
+            limites = LectorRegiones.dividir(canal, partes);
+            claves = new long[partes];
+            CamposCsv campos = new CamposCsv((byte) ',', 2);
+            for (int r = 0; r < partes; r++) {
+                claves[r] = primeraClave(limites[r], limites[r + 1], campos);
+            }
+            //una region sin filas validas queda vacia; si el archivo no esta ordenado el rango se achica
+            for (int r = partes - 1; r >= 0; r--) {
+                if (claves[r] == SIN_CLAVE) {
+                    claves[r] = r == partes - 1 ? Long.MAX_VALUE : claves[r + 1];
+                }
+            }
+            for (int r = 1; r < partes; r++) {
+                claves[r] = Math.max(claves[r], claves[r - 1]);
+            }
+        }
+
+        //solo lee la region hasta su primera fila valida
+        private long primeraClave(long inicio, long fin, CamposCsv campos) throws IOException {
+            long[] clave = {SIN_CLAVE};
+            LectorRegiones.buscar(canal, inicio, fin, 4096, (bytes, desde, hasta, offset) -> {
+                if (campos.separar(bytes, desde, hasta) == 2 && campos.leerEntero(ID)) {
+                    clave[0] = campos.getEntero();
+                    return false;
+                }
+                return true;
+            });
+            return clave[0];
+        }
+
+        //rango de un id, o -1 si es menor a todas las claves
+        private int rango(long id) {
+            int bajo = 0;
+            int alto = claves.length - 1;
+            int encontrado = -1;
+            while (bajo <= alto) {
+                int medio = (bajo + alto) >>> 1;
+                if (claves[medio] <= id) {
+                    encontrado = medio;
+                    bajo = medio + 1;
+                } else {
+                    alto = medio - 1;
+                }
+            }
+            return encontrado;
+        }
+
+        //La unica pasada sobre las cuentas: cada hilo junta de a bloques los ids de cada rango y los agrega al
+        //archivo del rango. Las cuentas menores a la primera clave ya son SOLO_BANCO
+        private void repartir() throws IOException, InterruptedException, ExecutionException {
+            repartos = new FileChannel[claves.length];
+            for (int r = 0; r < claves.length; r++) {
+                repartos[r] = FileChannel.open(temporal.resolve("rango-" + r), StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            List<Future<?>> tareas = new ArrayList<>();
+            for (int t = 0; t < hilos; t++) {
+                int primera = cortes[t];
+                int ultima = cortes[t + 1];
+                tareas.add(executor.submit(() -> {
+                    long[][] bloques = new long[claves.length][IDS_POR_BLOQUE];
+                    int[] llenos = new int[claves.length];
+                    ByteBuffer buffer = ByteBuffer.allocate(IDS_POR_BLOQUE * Long.BYTES);
+                    Diferencias cola = new Diferencias();
+                    for (int i = primera; i < ultima; i++) {
+                        Cuenta cuenta = cuentas.get(i);
+                        int r = rango(cuenta.getId());
+                        if (r < 0) {
+                            cola.soloBanco(cuenta);
+                            continue;
+                        }
+                        bloques[r][llenos[r]++] = cuenta.getId();
+                        if (llenos[r] == IDS_POR_BLOQUE) {
+                            agregarIds(repartos[r], bloques[r], llenos[r], buffer);
+                            llenos[r] = 0;
+                        }
+                    }
+                    for (int r = 0; r < claves.length; r++) {
+                        agregarIds(repartos[r], bloques[r], llenos[r], buffer);
+                    }
+                    cola.vaciar();
+                    return null;
+                }));
+            }
+            esperar(tareas);
+        }
+
+        void cerrarRepartos() throws IOException {
+            for (FileChannel reparto : repartos) {
+                if (reparto != null) {
+                    reparto.close();
+                }
+            }
+        }
+
+        private void esperar(List<Future<?>> tareas) throws InterruptedException, ExecutionException {
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+        }
+
+        //Diferencias de un hilo: se acumulan en un buffer propio y se vuelcan a la salida compartida de a bloques
+        private class Diferencias {
+            private final StringBuilder buffer = new StringBuilder();
+
+            void soloBanco(Cuenta cuenta) throws IOException {
+                soloBanco.increment();
+                buffer.append("SOLO_BANCO;").append(cuenta.getId()).append(';')
+                        .append(cuenta.getSaldo().toPlainString()).append(";\n");
+                volcarSiLleno();
+            }
+
+            void soloExterno(long id, String saldo) throws IOException {
+                soloExterno.increment();
+                buffer.append("SOLO_EXTERNO;").append(id).append(";;").append(saldo).append('\n');
+                volcarSiLleno();
+            }
+
+            void distinto(Cuenta cuenta, String saldo) throws IOException {
+                distintas.increment();
+                buffer.append("DISTINTO;").append(cuenta.getId()).append(';')
+                        .append(cuenta.getSaldo().toPlainString()).append(';').append(saldo).append('\n');
+                volcarSiLleno();
+            }
+
+            void invalida(long offset, String motivo, String linea) throws IOException {
+                invalidas.increment();
+                buffer.append("INVALIDA;").append(offset).append(';').append(motivo).append(';').append(linea).append('\n');
+                volcarSiLleno();
+            }
+
+            private void volcarSiLleno() throws IOException {
+                if (buffer.length() >= TAMANO_SALIDA) {
+                    vaciar();
+                }
+            }
+
+            void vaciar() throws IOException {
+                if (buffer.length() == 0) {
+                    return;
+                }
+                byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+                buffer.setLength(0);
+                synchronized (salida) {
+                    salida.write(bytes);
+                }
+            }
+        }
+
+        //Merge de una region del archivo con los ids ordenados del Banco en su rango
+        private class Region implements LectorRegiones.ConsumidorLinea {
+            private final int rango;
+            private final long minimo;
+            private final long tope;
+            private final CamposCsv campos = new CamposCsv((byte) ',', 2);
+            private final Diferencias diferencias = new Diferencias();
+            private IdsOrdenados ids;
+            private long anterior = Long.MIN_VALUE;
+
+            Region(int rango) {
+                this.rango = rango;
+                this.minimo = claves[rango];
+                this.tope = rango + 1 < claves.length ? claves[rango + 1] : Long.MAX_VALUE;
+            }
+
+            void conciliar(int idsEnMemoria) throws IOException {
+                ids = ordenar(repartos[rango], idsEnMemoria);
+                LectorRegiones.recorrer(canal, limites[rango], limites[rango + 1], this);
+                while (ids.hay()) {
+                    soloBanco(ids.sacar());
+                }
+                diferencias.vaciar();
+            }
+
+            @Override
+            public void linea(byte[] bytes, int desde, int hasta, long offset) throws IOException {
+                if (offset == 0 && esCabecera(bytes[desde])) {
+                    return;
+                }
+                filas.increment();
+                if (campos.separar(bytes, desde, hasta) != 2 || !campos.leerEntero(ID) || !campos.leerDecimal(SALDO)) {
+                    diferencias.invalida(offset, "Fila invalida", texto(bytes, desde, hasta));
+                    return;
+                }
+                long id = campos.getEntero();
+                boolean ultimoRango = tope == Long.MAX_VALUE;
+                if (id <= anterior || id < minimo || (id >= tope && !ultimoRango)) {
+                    diferencias.invalida(offset, "Fuera de orden", texto(bytes, desde, hasta));
+                    return;
+                }
+                anterior = id;
+                while (ids.hay() && ids.actual() < id) {
+                    soloBanco(ids.sacar());
+                }
+                Cuenta cuenta = ids.hay() && ids.actual() == id ? banco.buscarPorId(ids.sacar()).orElse(null) : null;
+                if (cuenta == null) {
+                    diferencias.soloExterno(id, texto(bytes, campos.inicio(SALDO), campos.fin(SALDO)));
+                } else if (mismoSaldo(cuenta, campos.getSinEscala(), campos.getEscala())) {
+                    coincidentes.increment();
+                } else {
+                    diferencias.distinto(cuenta, texto(bytes, campos.inicio(SALDO), campos.fin(SALDO)));
+                }
+            }
+
+            private void soloBanco(long id) throws IOException {
+                Cuenta cuenta = banco.buscarPorId(id).orElse(null);
+                if (cuenta != null) {
+                    diferencias.soloBanco(cuenta);
+                }
+            }
+        }
+    }
+
+    private static void agregarIds(FileChannel reparto, long[] ids, int cantidad, ByteBuffer buffer) throws IOException {
+        if (cantidad == 0) {
+            return;
+        }
+        buffer.clear();
+        buffer.asLongBuffer().put(ids, 0, cantidad);
+        buffer.limit(cantidad * Long.BYTES);
+        synchronized (reparto) { //el bloque queda contiguo en el archivo
+            while (buffer.hasRemaining()) {
+                reparto.write(buffer);
+            }
+        }
+    }
+
+    private static void escribirIds(FileChannel reparto, long posicion, long[] ids, int cantidad, ByteBuffer buffer) throws IOException {
+        for (int i = 0; i < cantidad; ) {
+            int n = Math.min(cantidad - i, buffer.capacity() / Long.BYTES);
+            buffer.clear();
+            buffer.asLongBuffer().put(ids, i, n);
+            buffer.limit(n * Long.BYTES);
+            while (buffer.hasRemaining()) {
+                reparto.write(buffer, (posicion + i) * Long.BYTES + buffer.position());
+            }
+            i += n;
+        }
+    }
+
+    private static void leerIds(FileChannel reparto, long posicion, long[] ids, int cantidad, ByteBuffer buffer) throws IOException {
+        for (int i = 0; i < cantidad; ) {
+            int n = Math.min(cantidad - i, buffer.capacity() / Long.BYTES);
+            buffer.clear().limit(n * Long.BYTES);
+            while (buffer.hasRemaining()) {
+                if (reparto.read(buffer, (posicion + i) * Long.BYTES + buffer.position()) < 0) {
+                    throw new IOException("El archivo temporal de ids esta incompleto");
+                }
+            }
+            buffer.flip();
+            buffer.asLongBuffer().get(ids, i, n);
+            i += n;
+        }
+    }
+
+    //Ordena los ids de un rango. Si entran en idsEnMemoria se ordenan en un arreglo; si no, el archivo se ordena por
+    //tramos de ese tamaño (cada tramo se reescribe ordenado en su lugar) y los tramos se mezclan mientras se leen
+    static IdsOrdenados ordenar(FileChannel reparto, int idsEnMemoria) throws IOException {
+        long cantidad = reparto.size() / Long.BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(TAMANO_SALIDA);
+        if (cantidad <= idsEnMemoria) {
+            long[] ids = new long[(int) cantidad];
+            leerIds(reparto, 0, ids, ids.length, buffer);
+            Arrays.sort(ids);
+            return new IdsEnArreglo(ids);
+        }
+        long[] tramo = new long[idsEnMemoria];
+        int tramos = (int) ((cantidad + idsEnMemoria - 1) / idsEnMemoria);
+        for (int k = 0; k < tramos; k++) {
+            long inicio = (long) k * idsEnMemoria;
+            int n = (int) Math.min(idsEnMemoria, cantidad - inicio);
+            leerIds(reparto, inicio, tramo, n, buffer);
+            Arrays.sort(tramo, 0, n);
+            escribirIds(reparto, inicio, tramo, n, buffer);
+        }
+        //los buffers de lectura de todos los tramos juntos ocupan lo mismo que un tramo
+        return new IdsEnTramos(reparto, cantidad, idsEnMemoria, tramos, Math.max(MINIMO_POR_TRAMO, idsEnMemoria / tramos));
+    }
+
+    //Ids de un rango en orden ascendente, consumidos de a uno
+    interface IdsOrdenados {
+        boolean hay();
+
+        long actual();
+
+        long sacar() throws IOException;
+    }
+
+    private static final class IdsEnArreglo implements IdsOrdenados {
+        private final long[] ids;
+        private int siguiente;
+
+        IdsEnArreglo(long[] ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public boolean hay() {
+            return siguiente < ids.length;
+        }
+
+        @Override
+        public long actual() {
+            return ids[siguiente];
+        }
+
+        @Override
+        public long sacar() {
+            return ids[siguiente++];
+        }
+    }
+
+    //Mezcla de k tramos ordenados del mismo archivo, con un heap de tramos por su id actual
+    private static final class IdsEnTramos implements IdsOrdenados {
+        private final FileChannel reparto;
+        private final long[][] buffers;
+        private final int[] usados;
+        private final int[] cargados;
+        private final long[] proximos; //posicion en el archivo del proximo id a cargar de cada tramo
+        private final long[] fines;
+        private final int[] heap;
+        private final ByteBuffer lectura;
+        private int tamanoHeap;
+
+        IdsEnTramos(FileChannel reparto, long cantidad, int porTramo, int tramos, int porBuffer) throws IOException {
+            this.reparto = reparto;
+            this.buffers = new long[tramos][porBuffer];
+            this.usados = new int[tramos];
+            this.cargados = new int[tramos];
+            this.proximos = new long[tramos];
+            this.fines = new long[tramos];
+            this.heap = new int[tramos];
+            this.lectura = ByteBuffer.allocate(porBuffer * Long.BYTES);
+            for (int k = 0; k < tramos; k++) {
+                proximos[k] = (long) k * porTramo;
+                fines[k] = Math.min(cantidad, proximos[k] + porTramo);
+                cargar(k);
+                heap[tamanoHeap++] = k;
+            }
+            for (int i = tamanoHeap / 2 - 1; i >= 0; i--) {
+                hundir(i);
+            }
+        }
+
+        private void cargar(int tramo) throws IOException {
+            int n = (int) Math.min(buffers[tramo].length, fines[tramo] - proximos[tramo]);
+            leerIds(reparto, proximos[tramo], buffers[tramo], n, lectura);
+            proximos[tramo] += n;
+            cargados[tramo] = n;
+            usados[tramo] = 0;
+        }
+
+        private long cabeza(int tramo) {
+            return buffers[tramo][usados[tramo]];
+        }
+
+        private void hundir(int i) {
+            while (true) {
+                int menor = i;
+                for (int hijo = 2 * i + 1; hijo <= 2 * i + 2 && hijo < tamanoHeap; hijo++) {
+                    if (cabeza(heap[hijo]) < cabeza(heap[menor])) {
+                        menor = hijo;
+                    }
+                }
+                if (menor == i) {
+                    return;
+                }
+                int tramo = heap[i];
+                heap[i] = heap[menor];
+                heap[menor] = tramo;
+                i = menor;
+            }
+        }
+
+        @Override
+        public boolean hay() {
+            return tamanoHeap > 0;
+        }
+
+        @Override
+        public long actual() {
+            return cabeza(heap[0]);
+        }
+
+        @Override
+        public long sacar() throws IOException {
+            int tramo = heap[0];
+            long id = buffers[tramo][usados[tramo]++];
+            if (usados[tramo] == cargados[tramo]) {
+                if (proximos[tramo] < fines[tramo]) {
+                    cargar(tramo);
+                } else {
+                    heap[0] = heap[--tamanoHeap]; //tramo terminado
+                }
+            }
+            if (tamanoHeap > 0) {
+                hundir(0);
+            }
+            return id;
+        }
+    }
+
+    //Compara sin BigDecimal cuando la cuenta es de punto fijo y el saldo externo entra en su escala
+    static boolean mismoSaldo(Cuenta cuenta, long sinEscala, int escala) {
+        if (cuenta.isEscalaFija() && escala <= cuenta.getEscala() && cuenta.getEscala() - escala < POTENCIAS_DE_10.length) {
+            long potencia = POTENCIAS_DE_10[cuenta.getEscala() - escala];
+            long unidades = sinEscala * potencia;
+            if (Math.multiplyHigh(sinEscala, potencia) == 0 && unidades >= 0) {
+                return unidades == cuenta.getSaldoUnidades();
+            }
+        }
+        return cuenta.getSaldo().compareTo(BigDecimal.valueOf(sinEscala, escala)) == 0;
+    }
+
+    private static String texto(byte[] bytes, int desde, int hasta) {
+        return new String(bytes, desde, hasta - desde, StandardCharsets.UTF_8);
+    }
+
+    private static boolean esCabecera(byte primero) {
+        return (primero >= 'a' && primero <= 'z') || (primero >= 'A' && primero <= 'Z');
+    }
+}
@@ -0,0 +1,54 @@
+package org.smartinez.junit5app.ejemplos.reconciliation;
+
+public class ResultadoConciliacion {
+    private final long filas;
+    private final long coincidentes;
+    private final long distintas;
+    private final long soloBanco;
+    private final long soloExterno;
+    private final long invalidas;
+
+    ResultadoConciliacion(long filas, long coincidentes, long distintas, long soloBanco, long soloExterno, long invalidas) {
+        this.filas = filas;
+        this.coincidentes = coincidentes;
+        this.distintas = distintas;
+        this.soloBanco = soloBanco;
+        this.soloExterno = soloExterno;
+        this.invalidas = invalidas;
+    }
+
+    //filas del archivo externo, sin la cabecera
+    public long getFilas() {
+        return filas;
+    }
+
+    public long getCoincidentes() {
+        return coincidentes;
+    }
+
+    public long getDistintas() {
+        return distintas;
+    }
+
+    public long getSoloBanco() {
+        return soloBanco;
+    }
+
+    public long getSoloExterno() {
+        return soloExterno;
+    }
+
+    public long getInvalidas() {
+        return invalidas;
+    }
+
+    public long getDiferencias() {
+        return distintas + soloBanco + soloExterno + invalidas;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultadoConciliacion{filas=" + filas + ", coincidentes=" + coincidentes + ", distintas=" + distintas
+                + ", soloBanco=" + soloBanco + ", soloExterno=" + soloExterno + ", invalidas=" + invalidas + '}';
+    }
+}
@@ -0,0 +1,37 @@
+package org.smartinez.junit5app.ejemplos.sharding;
+
+import org.smartinez.junit5app.ejemplos.models.ResultadoOperacion;
+
+import java.io.Closeable;
+import java.math.BigDecimal;
+
+//Un fragmento (shard) del libro mayor: un Banco con una parte de las cuentas, local o en otra JVM.
+//Las transferencias entre fragmentos usan reservar/confirmar/cancelar: la reserva debita el origen y deja el
+//monto retenido hasta que el destino lo acredita (confirmar) o falla (cancelar devuelve el monto al origen).
+//El credito del destino va con el id de la reserva y es idempotente: repetirlo devuelve el mismo resultado sin
+//acreditar otra vez, asi el coordinador puede reintentarlo si no supo como termino. olvidar() descarta ese recuerdo
+public interface Fragmento extends Closeable {
+
+    void crearCuenta(long id, String persona, BigDecimal saldo);
+
+    //null si la cuenta no esta en este fragmento
+    BigDecimal saldo(long id);
+
+    ResultadoOperacion transferir(long origen, long destino, BigDecimal monto);
+
+    ResultadoOperacion acreditar(long idReserva, long id, BigDecimal monto);
+
+    void olvidar(long idReserva);
+
+    ResultadoOperacion reservar(long idReserva, long id, BigDecimal monto);
+
+    void confirmar(long idReserva);
+
+    void cancelar(long idReserva);
+
+    //saldos mas montos reservados todavia no confirmados
+    BigDecimal total();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,164 @@
+package org.smartinez.junit5app.ejemplos.sharding;
+
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+import org.smartinez.junit5app.ejemplos.models.ResultadoOperacion;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+//Fragmento en esta JVM. Todas las operaciones corren en el unico hilo del fragmento, asi las reservas
+//no necesitan sincronizacion y las cuentas del fragmento nunca tienen contencion entre hilos
+public class FragmentoLocal implements Fragmento {
+
+    private final Banco banco;
+    private final ExecutorService hilo;
+    private final Map<Long, Reserva> reservas = new HashMap<>();
+    private final Map<Long, ResultadoOperacion> creditos = new HashMap<>(); //por id de reserva, hasta olvidar()
+    private volatile Thread hiloFragmento;
+
+    public FragmentoLocal(String nombre) {
+        this.banco = new Banco();
+        this.banco.setNombre(nombre);
+        this.hilo = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "fragmento-" + nombre);
+            t.setDaemon(true);
+            hiloFragmento = t;
+            return t;
+        });
+    }
+
+    public Banco getBanco() {
+        return banco;
+    }
+
+    private <T> T ejecutar(Supplier<T> operacion) {
+        if (Thread.currentThread() == hiloFragmento) {
+            return operacion.get();
+        }
+        try {
+            return CompletableFuture.supplyAsync(operacion, hilo).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void crearCuenta(long id, String persona, BigDecimal saldo) {
+        ejecutar(() -> {
+            banco.addCuenta(new Cuenta(id, persona, saldo));
+            return null;
+        });
+    }
+
+    @Override
+    public BigDecimal saldo(long id) {
+        return ejecutar(() -> banco.buscarPorId(id).map(Cuenta::getSaldo).orElse(null));
+    }
+
+    @Override
+    public ResultadoOperacion transferir(long origen, long destino, BigDecimal monto) {
+        return ejecutar(() -> {
+            Optional<Cuenta> cuentaOrigen = banco.buscarPorId(origen);
+            Optional<Cuenta> cuentaDestino = banco.buscarPorId(destino);
+            if (cuentaOrigen.isEmpty() || cuentaDestino.isEmpty()) {
+                return ResultadoOperacion.CUENTA_INEXISTENTE;
+            }
+            return banco.tryTransferir(cuentaOrigen.get(), cuentaDestino.get(), monto);
+        });
+    }
+
+    @Override
+    public ResultadoOperacion acreditar(long idReserva, long id, BigDecimal monto) {
+        return ejecutar(() -> {
+            ResultadoOperacion anterior = creditos.get(idReserva);
+            if (anterior != null) {
+                return anterior;
+            }
+            ResultadoOperacion resultado;
+            Optional<Cuenta> cuenta = banco.buscarPorId(id);
+            if (cuenta.isEmpty()) {
+                resultado = ResultadoOperacion.CUENTA_INEXISTENTE;
+            } else {
+                //un rechazo tiene que ser un resultado: una excepcion dejaria la transferencia en duda para siempre
+                try {
+                    cuenta.get().credito(monto);
+                    resultado = ResultadoOperacion.OK;
+                } catch (ArithmeticException | IllegalArgumentException e) {
+                    resultado = ResultadoOperacion.MONTO_INVALIDO;
+                }
+            }
+            creditos.put(idReserva, resultado);
+            return resultado;
+        });
+    }
+
+    @Override
+    public void olvidar(long idReserva) {
+        ejecutar(() -> creditos.remove(idReserva));
+    }
+
+    @Override
+    public ResultadoOperacion reservar(long idReserva, long id, BigDecimal monto) {
+        return ejecutar(() -> {
+            Optional<Cuenta> cuenta = banco.buscarPorId(id);
+            if (cuenta.isEmpty()) {
+                return ResultadoOperacion.CUENTA_INEXISTENTE;
+            }
+            ResultadoOperacion resultado = cuenta.get().tryDebito(monto);
+            if (resultado.isOk()) {
+                reservas.put(idReserva, new Reserva(cuenta.get(), monto));
+            }
+            return resultado;
+        });
+    }
+
+    @Override
+    public void confirmar(long idReserva) {
+        ejecutar(() -> reservas.remove(idReserva));
+    }
+
+    @Override
+    public void cancelar(long idReserva) {
+        ejecutar(() -> {
+            Reserva reserva = reservas.remove(idReserva);
+            if (reserva != null) {
+                reserva.cuenta.credito(reserva.monto);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public BigDecimal total() {
+        return ejecutar(() -> {
+            BigDecimal total = reservas.values().stream().map(r -> r.monto).reduce(BigDecimal.ZERO, BigDecimal::add);
+            for (Cuenta cuenta : banco.getCuentas()) {
+                total = total.add(cuenta.getSaldo());
+            }
+            return total;
+        });
+    }
+
+    @Override
+    public void close() {
+        hilo.shutdown();
+    }
+
+    private static class Reserva {
+        final Cuenta cuenta;
+        final BigDecimal monto;
+
+        Reserva(Cuenta cuenta, BigDecimal monto) {
+            this.cuenta = cuenta;
+            this.monto = monto;
+        }
+    }
+}
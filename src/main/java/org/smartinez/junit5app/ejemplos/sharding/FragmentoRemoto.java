@@ -0,0 +1,159 @@
+package org.smartinez.junit5app.ejemplos.sharding;
+
+import org.smartinez.junit5app.ejemplos.models.ResultadoOperacion;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.Socket;
+
+//Fragmento que corre en otra JVM de la misma maquina, atendido por un ServidorFragmento en loopback.
+//Una conexion por fragmento; los pedidos se serializan sobre ella. Despues de un error de E/S la conexion
+//queda desalineada: se cierra y el proximo pedido abre una nueva
+public class FragmentoRemoto implements Fragmento {
+
+    private static final ResultadoOperacion[] RESULTADOS = ResultadoOperacion.values();
+
+    private final int puerto;
+    private Socket socket;
+    private DataInputStream entrada;
+    private DataOutputStream salida;
+    private boolean cerrado;
+
+    public FragmentoRemoto(int puerto) throws IOException {
+        this.puerto = puerto;
+        conectar();
+    }
+
+    private void conectar() throws IOException {
+        Socket nuevo = new Socket(InetAddress.getLoopbackAddress(), puerto);
+        nuevo.setTcpNoDelay(true);
+        this.entrada = new DataInputStream(new BufferedInputStream(nuevo.getInputStream()));
+        this.salida = new DataOutputStream(new BufferedOutputStream(nuevo.getOutputStream()));
+        this.socket = nuevo;
+    }
+
+    private void desconectar() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            //ya estaba rota
+        }
+        socket = null;
+    }
+
+    private interface Pedido {
+        void escribir(DataOutputStream salida) throws IOException;
+    }
+
+    private interface Respuesta<T> {
+        T leer(DataInputStream entrada) throws IOException;
+    }
+
+    private synchronized <T> T pedir(byte operacion, Pedido pedido, Respuesta<T> respuesta) {
+        if (cerrado) {
+            throw new IllegalStateException("El fragmento remoto esta cerrado");
+        }
+        try {
+            if (socket == null) {
+                conectar();
+            }
+            salida.writeByte(operacion);
+            pedido.escribir(salida);
+            salida.flush();
+            if (entrada.readByte() == ProtocoloFragmento.ERROR) {
+                throw new IllegalStateException("Error en el fragmento remoto: " + entrada.readUTF());
+            }
+            return respuesta.leer(entrada);
+        } catch (IOException e) {
+            if (socket != null) {
+                desconectar();
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ResultadoOperacion pedirResultado(byte operacion, Pedido pedido) {
+        return pedir(operacion, pedido, e -> RESULTADOS[e.readUnsignedByte()]);
+    }
+
+    @Override
+    public void crearCuenta(long id, String persona, BigDecimal saldo) {
+        ProtocoloFragmento.verificarDecimal(saldo);
+        pedir(ProtocoloFragmento.CREAR, s -> {
+            s.writeLong(id);
+            s.writeUTF(persona);
+            ProtocoloFragmento.escribirDecimal(s, saldo);
+        }, e -> null);
+    }
+
+    @Override
+    public BigDecimal saldo(long id) {
+        return pedir(ProtocoloFragmento.SALDO, s -> s.writeLong(id),
+                e -> e.readBoolean() ? ProtocoloFragmento.leerDecimal(e) : null);
+    }
+
+    @Override
+    public ResultadoOperacion transferir(long origen, long destino, BigDecimal monto) {
+        ProtocoloFragmento.verificarDecimal(monto);
+        return pedirResultado(ProtocoloFragmento.TRANSFERIR, s -> {
+            s.writeLong(origen);
+            s.writeLong(destino);
+            ProtocoloFragmento.escribirDecimal(s, monto);
+        });
+    }
+
+    @Override
+    public ResultadoOperacion acreditar(long idReserva, long id, BigDecimal monto) {
+        ProtocoloFragmento.verificarDecimal(monto);
+        return pedirResultado(ProtocoloFragmento.ACREDITAR, s -> {
+            s.writeLong(idReserva);
+            s.writeLong(id);
+            ProtocoloFragmento.escribirDecimal(s, monto);
+        });
+    }
+
+    @Override
+    public ResultadoOperacion reservar(long idReserva, long id, BigDecimal monto) {
+        ProtocoloFragmento.verificarDecimal(monto);
+        return pedirResultado(ProtocoloFragmento.RESERVAR, s -> {
+            s.writeLong(idReserva);
+            s.writeLong(id);
+            ProtocoloFragmento.escribirDecimal(s, monto);
+        });
+    }
+
+    @Override
+    public void confirmar(long idReserva) {
+        pedir(ProtocoloFragmento.CONFIRMAR, s -> s.writeLong(idReserva), e -> null);
+    }
+
+    @Override
+    public void cancelar(long idReserva) {
+        pedir(ProtocoloFragmento.CANCELAR, s -> s.writeLong(idReserva), e -> null);
+    }
+
+    @Override
+    public void olvidar(long idReserva) {
+        pedir(ProtocoloFragmento.OLVIDAR, s -> s.writeLong(idReserva), e -> null);
+    }
+
+    @Override
+    public BigDecimal total() {
+        return pedir(ProtocoloFragmento.TOTAL, s -> {
+        }, ProtocoloFragmento::leerDecimal);
+    }
+
+    @Override
+    public synchronized void close() {
+        cerrado = true;
+        if (socket == null) {
+            return;
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package org.smartinez.junit5app.ejemplos.sharding;
+
+import org.smartinez.junit5app.ejemplos.models.ResultadoOperacion;
+
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Libro mayor repartido en varios fragmentos segun el hash del id de cuenta.
+//Las transferencias dentro de un fragmento van por el camino local; entre fragmentos se reserva el monto
+//en el origen, se acredita en el destino y recien ahi se confirma (o se cancela y vuelve al origen),
+//asi en ningun momento se crea ni se pierde dinero. Las reservas las numera este coordinador, que es uno solo.
+//Si un paso falla sin respuesta (eg: se corto la conexion con un fragmento remoto) no se sabe si se aplico:
+//la transferencia queda en duda con su reserva retenida y resolverEnDuda() la termina despues, reintentando el
+//credito (que es idempotente por id de reserva). Cancelar a ciegas devolveria al origen un monto que quiza
+//el destino ya acredito.
+public class LibroMayorFragmentado implements Closeable {
+
+    private final Fragmento[] fragmentos;
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicLong reservas = new AtomicLong();
+    private final Map<Long, EnDuda> enDuda = new ConcurrentHashMap<>();
+
+    public LibroMayorFragmentado(List<? extends Fragmento> fragmentos) {
+        if (fragmentos.isEmpty()) {
+            throw new IllegalArgumentException("Hace falta al menos un fragmento");
+        }
+        this.fragmentos = fragmentos.toArray(new Fragmento[0]);
+    }
+
+    public int fragmentoDe(long id) {
+        return Math.floorMod(Long.hashCode(id * 0x9E3779B97F4A7C15L), fragmentos.length);
+    }
+
+    public long crearCuenta(String persona, BigDecimal saldo) {
+        long id = ids.incrementAndGet();
+        fragmentos[fragmentoDe(id)].crearCuenta(id, persona, saldo);
+        return id;
+    }
+
+    //null si la cuenta no existe
+    public BigDecimal saldo(long id) {
+        return fragmentos[fragmentoDe(id)].saldo(id);
+    }
+
+    public ResultadoOperacion transferir(long origen, long destino, BigDecimal monto) {
+        Fragmento fragmentoOrigen = fragmentos[fragmentoDe(origen)];
+        Fragmento fragmentoDestino = fragmentos[fragmentoDe(destino)];
+        if (fragmentoOrigen == fragmentoDestino) {
+            return fragmentoOrigen.transferir(origen, destino, monto);
+        }
+
+        long idReserva = reservas.incrementAndGet();
+        ResultadoOperacion reserva;
+        try {
+            reserva = fragmentoOrigen.reservar(idReserva, origen, monto);
+        } catch (RuntimeException e) {
+            //todavia no se acredito nada: si la reserva llego a hacerse, resolverla es cancelarla
+            enDuda.put(idReserva, new EnDuda(fragmentoOrigen, fragmentoDestino, destino, monto, false));
+            throw e;
+        }
+        if (!reserva.isOk()) {
+            return reserva;
+        }
+        EnDuda transferencia = new EnDuda(fragmentoOrigen, fragmentoDestino, destino, monto, true);
+        try {
+            return completar(idReserva, transferencia);
+        } catch (RuntimeException e) {
+            enDuda.put(idReserva, transferencia);
+            throw e;
+        }
+    }
+
+    //Acredita en el destino y segun el resultado confirma o cancela la reserva. Todos los pasos se pueden repetir
+    private ResultadoOperacion completar(long idReserva, EnDuda transferencia) {
+        ResultadoOperacion credito = transferencia.destino.acreditar(idReserva, transferencia.cuentaDestino, transferencia.monto);
+        if (credito.isOk()) {
+            transferencia.origen.confirmar(idReserva);
+        } else {
+            transferencia.origen.cancelar(idReserva);
+        }
+        try {
+            transferencia.destino.olvidar(idReserva);
+        } catch (RuntimeException e) {
+            //la transferencia ya termino: si el destino no se entero, solo conserva el resultado de mas
+        }
+        return credito;
+    }
+
+    public int getTransferenciasEnDuda() {
+        return enDuda.size();
+    }
+
+    //Reintenta las transferencias en duda; las que vuelven a fallar siguen en duda. Devuelve las que se resolvieron
+    public int resolverEnDuda() {
+        int resueltas = 0;
+        for (Map.Entry<Long, EnDuda> entrada : enDuda.entrySet()) {
+            long idReserva = entrada.getKey();
+            EnDuda transferencia = entrada.getValue();
+            if (!enDuda.remove(idReserva, transferencia)) {
+                continue; //la esta resolviendo otro hilo
+            }
+            try {
+                if (transferencia.reservada) {
+                    completar(idReserva, transferencia);
+                } else {
+                    transferencia.origen.cancelar(idReserva);
+                }
+                resueltas++;
+            } catch (RuntimeException e) {
+                enDuda.put(idReserva, transferencia);
+            }
+        }
+        return resueltas;
+    }
+
+    //Aproximado: suma los totales de los fragmentos leidos uno despues del otro, no es un corte consistente.
+    //Con transferencias entre fragmentos en curso puede contar dos veces un monto ya acreditado en el destino
+    //cuya reserva todavia no se confirmo, o no contarlo si la transferencia paso entre dos lecturas.
+    //Con el libro quieto y sin transferencias en duda es exacto
+    public BigDecimal total() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Fragmento fragmento : fragmentos) {
+            total = total.add(fragmento.total());
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        for (Fragmento fragmento : fragmentos) {
+            fragmento.close();
+        }
+    }
+
+    private static class EnDuda {
+        final Fragmento origen;
+        final Fragmento destino;
+        final long cuentaDestino;
+        final BigDecimal monto;
+        final boolean reservada; //false: no se sabe si la reserva se hizo y el credito no se intento
+
+        EnDuda(Fragmento origen, Fragmento destino, long cuentaDestino, BigDecimal monto, boolean reservada) {
+            this.origen = origen;
+            this.destino = destino;
+            this.cuentaDestino = cuentaDestino;
+            this.monto = monto;
+            this.reservada = reservada;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.smartinez.junit5app.ejemplos.sharding;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+//Protocolo binario entre FragmentoRemoto y ServidorFragmento.
+//Pedido: byte operacion + argumentos. Respuesta: byte estado (OK o ERROR + mensaje UTF) + resultado
+//La codificacion de decimales es publica porque la usa tambien el protocolo de network
+public final class ProtocoloFragmento {
+
+    static final byte CREAR = 1;
+    static final byte SALDO = 2;
+    static final byte TRANSFERIR = 3;
+    static final byte ACREDITAR = 4;
+    static final byte RESERVAR = 5;
+    static final byte CONFIRMAR = 6;
+    static final byte CANCELAR = 7;
+    static final byte TOTAL = 8;
+    static final byte OLVIDAR = 9;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    //bytes del valor sin escala de un decimal: mas de 2400 digitos, muy por encima de cualquier monto
+    static final int LARGO_MAXIMO_DECIMAL = 1024;
+
+    private ProtocoloFragmento() {
+    }
+
+    //Se llama antes de escribir el codigo de operacion: si el decimal no entra, el pedido no llega a medio escribir al stream
+    public static BigDecimal verificarDecimal(BigDecimal valor) {
+        //toByteArray() usa bitLength() / 8 + 1 bytes
+        int largo = valor.unscaledValue().bitLength() / 8 + 1;
+        if (largo > LARGO_MAXIMO_DECIMAL) {
+            throw new IllegalArgumentException("El decimal es demasiado grande para el protocolo: " + largo + " bytes");
+        }
+        return valor;
+    }
+
+    //escala + largo (short) + bytes del valor sin escala: exacto para cualquier BigDecimal de hasta LARGO_MAXIMO_DECIMAL bytes
+    public static void escribirDecimal(DataOutput salida, BigDecimal valor) throws IOException {
+        byte[] sinEscala = verificarDecimal(valor).unscaledValue().toByteArray();
+        salida.writeInt(valor.scale());
+        salida.writeShort(sinEscala.length);
+        salida.write(sinEscala);
+    }
+
+    //Un largo fuera de rango es un stream corrupto: despues de eso no se puede seguir leyendo la conexion
+    public static BigDecimal leerDecimal(DataInput entrada) throws IOException {
+        int escala = entrada.readInt();
+        int largo = entrada.readUnsignedShort();
+        if (largo < 1 || largo > LARGO_MAXIMO_DECIMAL) {
+            throw new StreamCorruptedException("Largo de decimal invalido: " + largo);
+        }
+        byte[] sinEscala = new byte[largo];
+        entrada.readFully(sinEscala);
+        return new BigDecimal(new BigInteger(sinEscala), escala);
+    }
+}
@@ -0,0 +1,167 @@
+package org.smartinez.junit5app.ejemplos.sharding;
+
+import org.smartinez.junit5app.ejemplos.models.ResultadoOperacion;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.atomic.LongAdder;
+
+//Expone un FragmentoLocal por un socket en loopback, para correr cada fragmento en su propia JVM:
+//  java -cp ... org.smartinez.junit5app.ejemplos.sharding.ServidorFragmento <puerto> <nombre>
+//Los errores de E/S se registran con System.Logger y se cuentan en getErrores(); el servidor sigue atendiendo.
+public class ServidorFragmento implements Closeable {
+
+    private static final System.Logger LOG = System.getLogger(ServidorFragmento.class.getName());
+
+    private final FragmentoLocal fragmento;
+    private final ServerSocket servidor;
+    private final LongAdder errores = new LongAdder();
+
+    public ServidorFragmento(FragmentoLocal fragmento, int puerto) throws IOException {
+        this.fragmento = fragmento;
+        this.servidor = new ServerSocket(puerto, 50, InetAddress.getLoopbackAddress());
+        Thread aceptador = new Thread(this::aceptar, "servidor-fragmento-" + getPuerto());
+        aceptador.setDaemon(true);
+        aceptador.start();
+    }
+
+    public int getPuerto() {
+        return servidor.getLocalPort();
+    }
+
+    private void aceptar() {
+        while (!servidor.isClosed()) {
+            try {
+                Socket socket = servidor.accept();
+                socket.setTcpNoDelay(true);
+                Thread conexion = new Thread(() -> atender(socket), "conexion-fragmento");
+                conexion.setDaemon(true);
+                conexion.start();
+            } catch (IOException e) {
+                if (!servidor.isClosed()) {
+                    errores.increment();
+                    LOG.log(System.Logger.Level.WARNING, "No se pudo aceptar una conexion en el puerto " + getPuerto(), e);
+                }
+            }
+        }
+    }
+
+    private void atender(Socket socket) {
+        try (socket;
+             DataInputStream entrada = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            while (true) {
+                byte operacion;
+                try {
+                    operacion = entrada.readByte();
+                } catch (EOFException e) {
+                    return; //el cliente cerro la conexion
+                }
+                try {
+                    responder(operacion, entrada, salida);
+                } catch (RuntimeException e) {
+                    error(salida, e.getMessage());
+                } catch (SocketException e) {
+                    throw e;
+                } catch (IOException e) {
+                    //un pedido mal formado deja el stream desalineado: se avisa al cliente y se corta la conexion
+                    error(salida, e.getMessage());
+                    salida.flush();
+                    throw e;
+                }
+                salida.flush();
+            }
+        } catch (SocketException e) {
+            //conexion cortada
+        } catch (IOException e) {
+            errores.increment();
+            LOG.log(System.Logger.Level.WARNING, "Se corto una conexion en el puerto " + getPuerto(), e);
+        }
+    }
+
+    private static void error(DataOutputStream salida, String mensaje) throws IOException {
+        salida.writeByte(ProtocoloFragmento.ERROR);
+        salida.writeUTF(String.valueOf(mensaje));
+    }
+
+    //conexiones que no se pudieron aceptar o que se cortaron por un error de E/S o un pedido mal formado
+    public long getErrores() {
+        return errores.sum();
+    }
+
+    private void responder(byte operacion, DataInputStream entrada, DataOutputStream salida) throws IOException {
+        switch (operacion) {
+            case ProtocoloFragmento.CREAR -> {
+                long id = entrada.readLong();
+                String persona = entrada.readUTF();
+                fragmento.crearCuenta(id, persona, ProtocoloFragmento.leerDecimal(entrada));
+                salida.writeByte(ProtocoloFragmento.OK);
+            }
+            case ProtocoloFragmento.SALDO -> {
+                BigDecimal saldo = fragmento.saldo(entrada.readLong());
+                salida.writeByte(ProtocoloFragmento.OK);
+                salida.writeBoolean(saldo != null);
+                if (saldo != null) {
+                    ProtocoloFragmento.escribirDecimal(salida, saldo);
+                }
+            }
+            case ProtocoloFragmento.TRANSFERIR -> {
+                long origen = entrada.readLong();
+                long destino = entrada.readLong();
+                resultado(salida, fragmento.transferir(origen, destino, ProtocoloFragmento.leerDecimal(entrada)));
+            }
+            case ProtocoloFragmento.ACREDITAR -> {
+                long idReserva = entrada.readLong();
+                long id = entrada.readLong();
+                resultado(salida, fragmento.acreditar(idReserva, id, ProtocoloFragmento.leerDecimal(entrada)));
+            }
+            case ProtocoloFragmento.RESERVAR -> {
+                long idReserva = entrada.readLong();
+                long id = entrada.readLong();
+                resultado(salida, fragmento.reservar(idReserva, id, ProtocoloFragmento.leerDecimal(entrada)));
+            }
+            case ProtocoloFragmento.CONFIRMAR -> {
+                fragmento.confirmar(entrada.readLong());
+                salida.writeByte(ProtocoloFragmento.OK);
+            }
+            case ProtocoloFragmento.CANCELAR -> {
+                fragmento.cancelar(entrada.readLong());
+                salida.writeByte(ProtocoloFragmento.OK);
+            }
+            case ProtocoloFragmento.OLVIDAR -> {
+                fragmento.olvidar(entrada.readLong());
+                salida.writeByte(ProtocoloFragmento.OK);
+            }
+            case ProtocoloFragmento.TOTAL -> {
+                BigDecimal total = fragmento.total();
+                salida.writeByte(ProtocoloFragmento.OK);
+                ProtocoloFragmento.escribirDecimal(salida, total);
+            }
+            default -> throw new IOException("Operacion desconocida: " + operacion);
+        }
+    }
+
+    private static void resultado(DataOutputStream salida, ResultadoOperacion resultado) throws IOException {
+        salida.writeByte(ProtocoloFragmento.OK);
+        salida.writeByte(resultado.ordinal());
+    }
+
+    @Override
+    public void close() throws IOException {
+        servidor.close();
+        fragmento.close();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int puerto = Integer.parseInt(args[0]);
+        String nombre = args.length > 1 ? args[1] : "fragmento-" + puerto;
+        try (ServidorFragmento servidor = new ServidorFragmento(new FragmentoLocal(nombre), puerto)) {
+            System.out.println("Fragmento " + nombre + " escuchando en 127.0.0.1:" + servidor.getPuerto());
+            Thread.currentThread().join();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.smartinez.junit5app.ejemplos;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.smartinez.junit5app.ejemplos.exceptions.DineroInsuficienteException;
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+import org.smartinez.junit5app.ejemplos.models.ModoConcurrencia;
+import org.smartinez.junit5app.ejemplos.models.ModoLote;
+import org.smartinez.junit5app.ejemplos.models.Transferencia;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("banco")
+@Tag("concurrencia")
+class BancoConcurrenciaTest {
+
+    static final int HILOS = 8;
+    static final int CUENTAS = 50;
+    static final int TRANSFERENCIAS_POR_HILO = 20_000;
+
+    Banco banco;
+
+    @BeforeEach
+    void setUp() {
+        banco = new Banco();
+        banco.setNombre("Banco del Estado");
+        for (int i = 0; i < CUENTAS; i++) {
+            banco.addCuenta(new Cuenta("Cliente " + i, new BigDecimal("1000.50")));
+        }
+    }
+
+    private BigDecimal total() {
+        return banco.getCuentas().stream()
+                .map(Cuenta::getSaldo)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    private void ejecutarEnHilos(Runnable tarea) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(HILOS);
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<?>> futuros = new ArrayList<>();
+        for (int i = 0; i < HILOS; i++) {
+            futuros.add(executor.submit(() -> {
+                largada.await();
+                tarea.run();
+                return null;
+            }));
+        }
+        largada.countDown();
+        for (Future<?> futuro : futuros) {
+            futuro.get(); //propaga cualquier error de los hilos
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    @DisplayName("El dinero total se conserva con transferencias concurrentes y ningun saldo queda negativo")
+    void testConservacionDelDinero() throws Exception {
+        BigDecimal totalInicial = total();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> ejecutarEnHilos(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < TRANSFERENCIAS_POR_HILO; i++) {
+                Cuenta origen = banco.getCuentas().get(random.nextInt(CUENTAS));
+                Cuenta destino = banco.getCuentas().get(random.nextInt(CUENTAS));
+                try {
+                    banco.transferir(origen, destino, new BigDecimal(random.nextInt(1, 300)));
+                } catch (DineroInsuficienteException e) {
+                    //es un resultado valido, la transferencia no se aplica
+                }
+            }
+        }));
+
+        assertEquals(0, totalInicial.compareTo(total()), () -> "se creo o se perdio dinero: " + total());
+        assertTrue(banco.getCuentas().stream().allMatch(c -> c.getSaldo().signum() >= 0));
+    }
+
+    @Test
+    @DisplayName("Transferencias en sentido opuesto entre las mismas cuentas no producen deadlock")
+    void testSinDeadlock() throws Exception {
+        Cuenta a = banco.getCuentas().get(0);
+        Cuenta b = banco.getCuentas().get(1);
+        BigDecimal totalInicial = total();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> ejecutarEnHilos(() -> {
+            boolean haciaB = ThreadLocalRandom.current().nextBoolean();
+            for (int i = 0; i < TRANSFERENCIAS_POR_HILO; i++) {
+                try {
+                    if (haciaB) {
+                        banco.transferir(a, b, BigDecimal.ONE);
+                    } else {
+                        banco.transferir(b, a, BigDecimal.ONE);
+                    }
+                } catch (DineroInsuficienteException e) {
+                    //es un resultado valido
+                }
+            }
+        }));
+
+        assertEquals(0, totalInicial.compareTo(total()));
+    }
+
+    @Test
+    @DisplayName("debito y credito llamados directamente siguen siendo atomicos")
+    void testDebitoCreditoAtomicos() throws Exception {
+        Cuenta cuenta = new Cuenta("Andres", new BigDecimal("1000.12345"));
+
+        ejecutarEnHilos(() -> {
+            for (int i = 0; i < TRANSFERENCIAS_POR_HILO; i++) {
+                cuenta.credito(BigDecimal.TEN);
+                cuenta.debito(BigDecimal.TEN);
+            }
+        });
+
+        assertEquals("1000.12345", cuenta.getSaldo().toPlainString());
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = ModoConcurrencia.class, names = {"CAS", "ACUMULADO"})
+    @DisplayName("Las cuentas sin cerrojo no pierden operaciones ni quedan con saldo negativo")
+    void testSinCerrojo(ModoConcurrencia modo) throws Exception {
+        Cuenta cuenta = new Cuenta("Comercio", new BigDecimal("100.00"), 2, modo);
+        assertEquals(modo, cuenta.getModoConcurrencia());
+        AtomicInteger rechazados = new AtomicInteger();
+
+        ejecutarEnHilos(() -> {
+            for (int i = 0; i < TRANSFERENCIAS_POR_HILO; i++) {
+                cuenta.creditoUnidades(1);
+                if (!cuenta.tryDebito(new BigDecimal("0.02")).isOk()) {
+                    rechazados.incrementAndGet();
+                }
+                assertTrue(cuenta.getSaldoUnidades() >= 0);
+            }
+        });
+
+        long esperado = 10_000 + (long) HILOS * TRANSFERENCIAS_POR_HILO - 2L * (HILOS * TRANSFERENCIAS_POR_HILO - rechazados.get());
+        assertEquals(esperado, cuenta.getSaldoUnidades());
+        assertThrows(DineroInsuficienteException.class, () -> cuenta.debito(new BigDecimal("1000000")));
+    }
+
+    @Test
+    @DisplayName("Transferencias y lotes conservan el dinero aunque las cuentas sin cerrojo cambien en el medio")
+    void testLotesConCuentasSinCerrojo() throws Exception {
+        Banco bancoCas = new Banco();
+        List<Cuenta> cuentas = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Cuenta cuenta = new Cuenta("Comercio " + i, new BigDecimal("50.00"), 2, i % 2 == 0 ? ModoConcurrencia.CAS : ModoConcurrencia.ACUMULADO);
+            bancoCas.addCuenta(cuenta);
+            cuentas.add(cuenta);
+        }
+        AtomicLong debitado = new AtomicLong();
+
+        ejecutarEnHilos(() -> {
+            ThreadLocalRandom azar = ThreadLocalRandom.current();
+            for (int i = 0; i < 2_000; i++) {
+                Cuenta origen = cuentas.get(azar.nextInt(cuentas.size()));
+                Cuenta destino = cuentas.get(azar.nextInt(cuentas.size()));
+                bancoCas.transferirBatch(List.of(new Transferencia(origen, destino, new BigDecimal("3.00")),
+                        new Transferencia(destino, origen, new BigDecimal("1.00"))), ModoLote.MEJOR_ESFUERZO);
+                bancoCas.tryTransferir(destino, origen, BigDecimal.ONE);
+                if (origen.tryDebitoUnidades(7).isOk()) { //debito sin cerrojo en paralelo con los lotes
+                    debitado.addAndGet(7);
+                }
+            }
+        });
+
+        long total = cuentas.stream().mapToLong(Cuenta::getSaldoUnidades).sum();
+        assertEquals(8 * 5_000 - debitado.get(), total);
+        cuentas.forEach(cuenta -> assertTrue(cuenta.getSaldoUnidades() >= 0));
+    }
+}
@@ -0,0 +1,308 @@
+package org.smartinez.junit5app.ejemplos;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.parallel.Isolated;
+import org.smartinez.junit5app.ejemplos.exceptions.DineroInsuficienteException;
+import org.smartinez.junit5app.ejemplos.models.*;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("banco")
+class BancoTest {
+    Banco banco;
+    Cuenta cuenta1;
+    Cuenta cuenta2;
+
+    @BeforeEach
+    void setUp() {
+        banco = new Banco();
+        banco.setNombre("Banco del Estado");
+        cuenta1 = new Cuenta("John Doe", new BigDecimal("2500"));
+        cuenta2 = new Cuenta("Andres", new BigDecimal("1500.8989"));
+        banco.addCuenta(cuenta1);
+        banco.addCuenta(cuenta2);
+    }
+
+    @Nested
+    @DisplayName("Probando los indices de busqueda de cuentas")
+    class IndiceCuentasTest {
+        @Test
+        void testBuscarPorIdYPersona() {
+            assertNotEquals(cuenta1.getId(), cuenta2.getId());
+            assertSame(cuenta2, banco.buscarPorId(cuenta2.getId()).orElseThrow());
+            assertSame(cuenta1, banco.buscarPorPersona("John Doe").orElseThrow());
+            assertTrue(banco.buscarPorPersona("Maria").isEmpty());
+            assertTrue(banco.buscarPorId(-1).isEmpty());
+        }
+
+        @Test
+        void testIndiceSincronizadoAlCambiarPersona() {
+            cuenta2.setPersona("Andres Guzman");
+            assertTrue(banco.buscarPorPersona("Andres").isEmpty());
+            assertSame(cuenta2, banco.buscarPorPersona("Andres Guzman").orElseThrow());
+        }
+
+        @Test
+        void testSetCuentasReindexa() {
+            Cuenta cuenta3 = new Cuenta("Maria", new BigDecimal("100"));
+            banco.setCuentas(List.of(cuenta3));
+            assertEquals(1, banco.getCuentas().size());
+            assertTrue(banco.buscarPorId(cuenta1.getId()).isEmpty());
+            assertSame(cuenta3, banco.buscarPorPersona("Maria").orElseThrow());
+            assertSame(banco, cuenta3.getBanco());
+        }
+
+        @Test
+        void testCuentaDuplicada() {
+            assertThrows(IllegalArgumentException.class, () -> banco.addCuenta(cuenta1));
+            assertThrows(UnsupportedOperationException.class, () -> banco.getCuentas().add(cuenta1));
+        }
+
+        @Test
+        void testHashCodeCoherenteConEquals() {
+            Cuenta cuenta = new Cuenta("John Doe", new BigDecimal("8900.9997"));
+            Cuenta igual = new Cuenta("John Doe", new BigDecimal("8900.9997"));
+            assertEquals(cuenta, igual);
+            assertEquals(cuenta.hashCode(), igual.hashCode());
+            Set<Cuenta> cuentas = new HashSet<>(List.of(cuenta, igual));
+            assertEquals(1, cuentas.size());
+        }
+    }
+
+    @Nested
+    @DisplayName("Probando que una transferencia que el destino no admite no mueve dinero")
+    class DestinoInvalidoTest {
+        @Test
+        void testMontoConMasDecimalesQueElDestino() {
+            Cuenta destino = new Cuenta("Maria", new BigDecimal("10.00"), 2);
+            banco.addCuenta(destino);
+            assertThrows(ArithmeticException.class, () -> banco.transferir(cuenta1, destino, new BigDecimal("0.001")));
+            assertEquals("2500", cuenta1.getSaldo().toPlainString());
+            assertEquals("10.00", destino.getSaldo().toPlainString());
+            assertEquals(ResultadoOperacion.MONTO_INVALIDO, banco.tryTransferir(cuenta1, destino, new BigDecimal("0.001")));
+            assertEquals("2500", cuenta1.getSaldo().toPlainString());
+        }
+
+        @Test
+        void testCreditoQueDesbordaElDestino() {
+            Cuenta origen = new Cuenta("Pedro", new BigDecimal("1.00"), 2);
+            Cuenta destino = new Cuenta("Maria", BigDecimal.valueOf(Long.MAX_VALUE, 2), 2);
+            banco.addCuenta(origen);
+            banco.addCuenta(destino);
+            assertThrows(ArithmeticException.class, () -> banco.transferir(origen, destino, new BigDecimal("0.01")));
+            assertThrows(ArithmeticException.class, () -> banco.transferirUnidades(origen, destino, 1));
+            assertEquals(ResultadoOperacion.MONTO_INVALIDO, banco.tryTransferir(origen, destino, new BigDecimal("0.01")));
+            assertEquals("1.00", origen.getSaldo().toPlainString());
+            assertEquals(Long.MAX_VALUE, destino.getSaldoUnidades());
+        }
+    }
+
+    @Nested
+    @DisplayName("Probando las transferencias por lote")
+    class TransferirBatchTest {
+        @Test
+        void testLoteCompleto() {
+            ResultadoLote resultado = banco.transferirBatch(List.of(
+                    new Transferencia(cuenta2, cuenta1, new BigDecimal(500)),
+                    new Transferencia(cuenta1, cuenta2, new BigDecimal("0.1011"))));
+            assertTrue(resultado.isCompleto());
+            assertEquals(2, resultado.getAplicadas());
+            assertEquals(0, new BigDecimal("1001").compareTo(cuenta2.getSaldo()));
+            assertEquals(0, new BigDecimal("2999.8989").compareTo(cuenta1.getSaldo()));
+        }
+
+        @Test
+        void testTodoONadaUsaElSaldoNeto() {
+            //la primera sola dejaria a cuenta2 en negativo, pero el neto del lote es valido
+            ResultadoLote resultado = banco.transferirBatch(List.of(
+                    new Transferencia(cuenta2, cuenta1, new BigDecimal(2000)),
+                    new Transferencia(cuenta1, cuenta2, new BigDecimal(1000))), ModoLote.TODO_O_NADA);
+            assertTrue(resultado.isCompleto());
+            assertEquals("500.8989", cuenta2.getSaldo().toPlainString());
+            assertEquals("3500", cuenta1.getSaldo().toPlainString());
+        }
+
+        @Test
+        void testTodoONadaNoAplicaNada() {
+            ResultadoLote resultado = banco.transferirBatch(List.of(
+                    new Transferencia(cuenta1, cuenta2, new BigDecimal(100)),
+                    new Transferencia(cuenta2, cuenta1, new BigDecimal(5000))), ModoLote.TODO_O_NADA);
+            assertFalse(resultado.isCompleto());
+            assertEquals(0, resultado.getAplicadas());
+            assertEquals(1, resultado.getFallos().get(0).getIndice());
+            assertEquals("Dinero Insuficiente", resultado.getFallos().get(0).getMotivo());
+            assertEquals("2500", cuenta1.getSaldo().toPlainString());
+            assertEquals("1500.8989", cuenta2.getSaldo().toPlainString());
+        }
+
+        @Test
+        void testMejorEsfuerzo() {
+            ResultadoLote resultado = banco.transferirBatch(List.of(
+                    new Transferencia(cuenta2, cuenta1, new BigDecimal(5000)),
+                    new Transferencia(cuenta1, cuenta2, new BigDecimal(-1)),
+                    new Transferencia(cuenta2, cuenta1, new BigDecimal(500))), ModoLote.MEJOR_ESFUERZO);
+            assertEquals(1, resultado.getAplicadas());
+            assertEquals(List.of(0, 1), resultado.getFallos().stream().map(ResultadoLote.Fallo::getIndice).toList());
+            assertEquals("Monto invalido", resultado.getFallos().get(1).getMotivo());
+            assertEquals(0, new BigDecimal("1000.8989").compareTo(cuenta2.getSaldo()));
+            assertEquals(0, new BigDecimal("3000").compareTo(cuenta1.getSaldo()));
+        }
+
+        @Test
+        void testLoteQueDesbordaElDestino() {
+            Cuenta origen = new Cuenta("Maria", new BigDecimal("100.00"), 2);
+            Cuenta destino = new Cuenta("Comercio", BigDecimal.valueOf(Long.MAX_VALUE - 100, 2), 2);
+            banco.addCuenta(origen);
+            banco.addCuenta(destino);
+            //cada transferencia entra sola, pero el credito neto del destino desborda el long
+            List<Transferencia> lote = List.of(
+                    new Transferencia(origen, destino, new BigDecimal("0.51")),
+                    new Transferencia(origen, destino, new BigDecimal("0.50")));
+
+            ResultadoLote todoONada = banco.transferirBatch(lote, ModoLote.TODO_O_NADA);
+            assertEquals(0, todoONada.getAplicadas());
+            assertEquals("Monto invalido", todoONada.getFallos().get(0).getMotivo());
+            assertEquals("100.00", origen.getSaldo().toPlainString());
+            assertEquals(Long.MAX_VALUE - 100, destino.getSaldoUnidades());
+
+            ResultadoLote mejorEsfuerzo = banco.transferirBatch(lote, ModoLote.MEJOR_ESFUERZO);
+            assertEquals(1, mejorEsfuerzo.getAplicadas());
+            assertEquals(1, mejorEsfuerzo.getFallos().get(0).getIndice());
+            assertEquals("99.49", origen.getSaldo().toPlainString());
+            assertEquals(Long.MAX_VALUE - 49, destino.getSaldoUnidades());
+        }
+    }
+
+    @Nested
+    @DisplayName("Probando el camino sin excepciones para el saldo insuficiente")
+    @Isolated //cambia el modo global de DineroInsuficienteException que leen los tests de otras clases
+    class SinExcepcionesTest {
+        @AfterEach
+        void tearDown() {
+            DineroInsuficienteException.setModo(DineroInsuficienteException.Modo.COMPLETA);
+        }
+
+        @Test
+        void testTryDebitoYTryTransferir() {
+            assertEquals(ResultadoOperacion.SALDO_INSUFICIENTE, cuenta2.tryDebito(new BigDecimal(5000)));
+            assertEquals(ResultadoOperacion.SALDO_INSUFICIENTE, banco.tryTransferir(cuenta2, cuenta1, new BigDecimal(5000)));
+            assertEquals("1500.8989", cuenta2.getSaldo().toPlainString());
+            assertEquals(ResultadoOperacion.OK, banco.tryTransferir(cuenta2, cuenta1, new BigDecimal(500)));
+            assertEquals("1000.8989", cuenta2.getSaldo().toPlainString());
+            assertEquals(ResultadoOperacion.OK, cuenta1.tryDebito(new BigDecimal(3000)));
+            assertEquals(0, cuenta1.getSaldo().signum());
+        }
+
+        @Test
+        void testTryDebitoEscalaFija() {
+            Cuenta cuenta = new Cuenta("Maria", new BigDecimal("10.00"), 2);
+            assertEquals(ResultadoOperacion.MONTO_INVALIDO, cuenta.tryDebito(new BigDecimal("0.001")));
+            assertEquals(ResultadoOperacion.SALDO_INSUFICIENTE, cuenta.tryDebitoUnidades(1001));
+            assertEquals(ResultadoOperacion.OK, cuenta.tryDebitoUnidades(1000));
+            assertEquals(ResultadoOperacion.MONTO_INVALIDO, banco.tryTransferir(cuenta1, cuenta, new BigDecimal("0.001")));
+            assertEquals("2500", cuenta1.getSaldo().toPlainString());
+        }
+
+        @Test
+        void testExcepcionConDetalle() {
+            DineroInsuficienteException e = assertThrows(DineroInsuficienteException.class,
+                    () -> banco.transferir(cuenta2, cuenta1, new BigDecimal(5000)));
+            assertEquals("Dinero Insuficiente", e.getMessage());
+            assertEquals(cuenta2.getId(), e.getCuentaId());
+            assertEquals(new BigDecimal(5000), e.getMonto());
+            assertEquals(new BigDecimal("1500.8989"), e.getSaldoDisponible());
+            assertTrue(e.getStackTrace().length > 0);
+        }
+
+        @Test
+        void testExcepcionSinStackTrace() {
+            DineroInsuficienteException.setModo(DineroInsuficienteException.Modo.SIN_STACK_TRACE);
+            DineroInsuficienteException e = assertThrows(DineroInsuficienteException.class,
+                    () -> cuenta2.debito(new BigDecimal(5000)));
+            assertEquals(0, e.getStackTrace().length);
+            assertEquals(cuenta2.getId(), e.getCuentaId());
+        }
+
+        @Test
+        void testExcepcionPreasignada() {
+            DineroInsuficienteException.setModo(DineroInsuficienteException.Modo.PREASIGNADA);
+            DineroInsuficienteException e1 = assertThrows(DineroInsuficienteException.class,
+                    () -> cuenta2.debito(new BigDecimal(5000)));
+            DineroInsuficienteException e2 = assertThrows(DineroInsuficienteException.class,
+                    () -> cuenta1.debito(new BigDecimal(5000)));
+            assertSame(e1, e2);
+            assertEquals("Dinero Insuficiente", e1.getMessage());
+            assertEquals(DineroInsuficienteException.SIN_CUENTA, e1.getCuentaId());
+            e1.addSuppressed(new IllegalStateException("otra"));
+            assertEquals(0, e2.getSuppressed().length); //la instancia compartida no acumula suprimidas
+        }
+    }
+
+    @Nested
+    @DisplayName("Probando los barridos sobre todas las cuentas")
+    class BarridoTest {
+        @Test
+        void testAplicarInteres() {
+            Cuenta cuenta3 = new Cuenta("Maria", new BigDecimal("1000.12345"), 5);
+            banco.addCuenta(cuenta3);
+            ResultadoBarrido resultado = banco.aplicarInteres(new BigDecimal("0.01"));
+            assertEquals(3, resultado.getCuentasProcesadas());
+            assertEquals("2525", cuenta1.getSaldo().toPlainString());
+            assertEquals("1515.9079", cuenta2.getSaldo().toPlainString()); //15.008989 redondeado a 4 decimales
+            assertEquals("1010.12468", cuenta3.getSaldo().toPlainString());
+            assertEquals(new BigDecimal("25").add(new BigDecimal("15.0090")).add(new BigDecimal("10.00123")),
+                    resultado.getTotalAcreditado());
+        }
+
+        @Test
+        void testCobrarComision() {
+            banco.addCuenta(new Cuenta("Pobre", new BigDecimal("1")));
+            ResultadoBarrido resultado = banco.cobrarComision(new BigDecimal("10"));
+            assertEquals(1, resultado.getDebitosFallidos());
+            assertEquals(0, new BigDecimal("20").compareTo(resultado.getTotalDebitado()));
+            assertEquals("2490", cuenta1.getSaldo().toPlainString());
+            assertEquals("1", banco.buscarPorPersona("Pobre").orElseThrow().getSaldo().toPlainString());
+        }
+
+        @Test
+        void testCreditoQueDesbordaNoCortaElBarrido() {
+            Cuenta llena = new Cuenta("Comercio", BigDecimal.valueOf(Long.MAX_VALUE, 2), 2);
+            banco.addCuenta(llena);
+            ResultadoBarrido resultado = banco.barrer(cuenta -> BigDecimal.ONE);
+            assertEquals(3, resultado.getCuentasProcesadas());
+            assertEquals(1, resultado.getDebitosFallidos());
+            assertEquals(0, new BigDecimal("2").compareTo(resultado.getTotalAcreditado()));
+            assertEquals(Long.MAX_VALUE, llena.getSaldoUnidades());
+            assertEquals("2501", cuenta1.getSaldo().toPlainString());
+        }
+
+        @Test
+        @DisplayName("Un barrido grande en paralelo con transferencias concurrentes no pierde dinero")
+        void testBarridoConTransferenciasConcurrentes() throws InterruptedException {
+            int cuentas = 100_000;
+            for (int i = 0; i < cuentas; i++) {
+                banco.addCuenta(new Cuenta("Cliente " + i, new BigDecimal("100.00"), 2));
+            }
+            Cuenta a = banco.buscarPorPersona("Cliente 0").orElseThrow();
+            Cuenta b = banco.buscarPorPersona("Cliente 1").orElseThrow();
+            Thread transferencias = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    banco.tryTransferir(i % 2 == 0 ? a : b, i % 2 == 0 ? b : a, BigDecimal.ONE);
+                }
+            });
+            BigDecimal totalAntes = banco.getCuentas().stream().map(Cuenta::getSaldo).reduce(BigDecimal.ZERO, BigDecimal::add);
+            transferencias.start();
+            ResultadoBarrido resultado = banco.barrer(cuenta -> BigDecimal.ONE);
+            transferencias.join();
+
+            assertEquals(cuentas + 2, resultado.getCuentasProcesadas());
+            BigDecimal totalDespues = banco.getCuentas().stream().map(Cuenta::getSaldo).reduce(BigDecimal.ZERO, BigDecimal::add);
+            assertEquals(0, totalAntes.add(resultado.getTotalAcreditado()).compareTo(totalDespues));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.smartinez.junit5app.ejemplos;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.parallel.Isolated;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.smartinez.junit5app.ejemplos.exceptions.DineroInsuficienteException;
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+import org.smartinez.junit5app.ejemplos.models.ModoConcurrencia;
+import org.smartinez.junit5app.ejemplos.models.ResultadoOperacion;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//Prueba de carga: millones de transferencias aleatorias desde muchos hilos. No corre con el build normal,
+//se ejecuta con mvn test -Pload y se ajusta con -Dcarga.operaciones, -Dcarga.hilos y -Dcarga.cuentas
+@Tag("load")
+@Tag("concurrencia")
+@Isolated //mide throughput, no queremos otras clases compitiendo por los nucleos
+class CargaBancoTest {
+
+    static final long OPERACIONES = Long.getLong("carga.operaciones", 4_000_000);
+    static final int HILOS = Integer.getInteger("carga.hilos", Math.max(8, Runtime.getRuntime().availableProcessors() * 2));
+    static final int CUENTAS = Integer.getInteger("carga.cuentas", 1_000);
+    static final BigDecimal SALDO_INICIAL = new BigDecimal("1000.00");
+
+    private Banco crearBanco(String tipo) {
+        Banco banco = tipo.equals("columnar") ? Banco.columnar(2) : new Banco();
+        for (int i = 0; i < CUENTAS; i++) {
+            Cuenta cuenta = switch (tipo) {
+                case "decimal", "columnar" -> new Cuenta("Cliente " + i, SALDO_INICIAL);
+                case "fijo" -> new Cuenta("Cliente " + i, SALDO_INICIAL, 2);
+                default -> new Cuenta("Cliente " + i, SALDO_INICIAL, 2, ModoConcurrencia.valueOf(tipo));
+            };
+            banco.addCuenta(cuenta);
+        }
+        return banco;
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @ValueSource(strings = {"decimal", "fijo", "CAS", "ACUMULADO", "columnar"})
+    @DisplayName("Transferencias aleatorias concurrentes conservan el dinero y no dejan saldos negativos")
+    void testTransferenciasAleatorias(String tipo, TestReporter reporter) throws Exception {
+        Banco banco = crearBanco(tipo);
+        List<Cuenta> cuentas = banco.getCuentas();
+        BigDecimal totalInicial = SALDO_INICIAL.multiply(BigDecimal.valueOf(CUENTAS));
+        LongAdder aplicadas = new LongAdder();
+        LongAdder rechazadas = new LongAdder();
+        long porHilo = OPERACIONES / HILOS;
+
+        ExecutorService executor = Executors.newFixedThreadPool(HILOS);
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<?>> futuros = new ArrayList<>();
+        for (int h = 0; h < HILOS; h++) {
+            futuros.add(executor.submit(() -> {
+                largada.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (long i = 0; i < porHilo; i++) {
+                    Cuenta origen = cuentas.get(random.nextInt(CUENTAS));
+                    Cuenta destino = cuentas.get(random.nextInt(CUENTAS));
+                    BigDecimal monto = BigDecimal.valueOf(random.nextLong(1, 50_000), 2);
+                    if ((i & 7) == 0) { //una de cada ocho por el camino con excepciones
+                        try {
+                            banco.transferir(origen, destino, monto);
+                            aplicadas.increment();
+                        } catch (DineroInsuficienteException e) {
+                            rechazadas.increment();
+                        }
+                    } else if (banco.tryTransferir(origen, destino, monto) == ResultadoOperacion.OK) {
+                        aplicadas.increment();
+                    } else {
+                        rechazadas.increment();
+                    }
+                }
+                return null;
+            }));
+        }
+        long inicio = System.nanoTime();
+        largada.countDown();
+        try {
+            for (Future<?> futuro : futuros) {
+                futuro.get(10, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+
+        long total = aplicadas.sum() + rechazadas.sum();
+        //queda en el reporte de surefire asociado a esta invocacion, aunque las clases corran en paralelo
+        reporter.publishEntry(Map.of(
+                "tipo", tipo,
+                "transferencias", String.valueOf(total),
+                "hilos", String.valueOf(HILOS),
+                "segundos", String.format("%.2f", segundos),
+                "opsPorSegundo", String.format("%.0f", total / segundos),
+                "rechazadas", String.valueOf(rechazadas.sum())));
+
+        assertEquals(porHilo * HILOS, total);
+        assertTrue(aplicadas.sum() > 0);
+        banco.leerConsistente(foto -> {
+            BigDecimal suma = BigDecimal.ZERO;
+            for (Cuenta cuenta : foto) {
+                assertTrue(cuenta.getSaldo().signum() >= 0, () -> "Saldo negativo en la cuenta " + cuenta.getId());
+                suma = suma.add(cuenta.getSaldo());
+            }
+            assertEquals(0, totalInicial.compareTo(suma));
+            return null;
+        });
+    }
+}
@@ -3,6 +3,8 @@ package org.smartinez.junit5app.ejemplos;
 
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.condition.*;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvFileSource;
 import org.junit.jupiter.params.provider.CsvSource;
@@ -11,9 +13,11 @@ import org.junit.jupiter.params.provider.ValueSource;
 import org.smartinez.junit5app.ejemplos.exceptions.DineroInsuficienteException;
 import org.smartinez.junit5app.ejemplos.models.Banco;
 import org.smartinez.junit5app.ejemplos.models.Cuenta;
+import org.smartinez.junit5app.ejemplos.models.ModoConcurrencia;
 
 import java.math.BigDecimal;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -143,6 +147,139 @@ class CuentaTest {
     }
 
 
+    @Nested
+    @Tag("cuenta")
+    @DisplayName("Probando la cuenta en modo de punto fijo")
+    class CuentaEscalaFijaTest {
+        @Test
+        void testDebitoCreditoEscalaFija() {
+            Cuenta cuenta = new Cuenta("Andres", new BigDecimal("1000.12345"), 5);
+            assertEquals(100012345L, cuenta.getSaldoUnidades());
+            cuenta.debito(new BigDecimal(100));
+            assertEquals("900.12345", cuenta.getSaldo().toPlainString());
+            cuenta.creditoUnidades(10_000_000L);
+            assertEquals("1000.12345", cuenta.getSaldo().toPlainString());
+        }
+
+        @Test
+        void testDineroInsuficienteEscalaFija() {
+            Cuenta cuenta = new Cuenta("Andres", new BigDecimal("1000.12345"), 5);
+            assertThrows(DineroInsuficienteException.class, () -> cuenta.debitoUnidades(100012346L));
+            assertEquals(100012345L, cuenta.getSaldoUnidades());
+        }
+
+        @Test
+        void testPrecisionYDesbordamiento() {
+            Cuenta cuenta = new Cuenta("Andres", new BigDecimal("1000.12345"), 5);
+            assertThrows(ArithmeticException.class, () -> cuenta.credito(new BigDecimal("0.000001")));
+            assertThrows(ArithmeticException.class, () -> cuenta.creditoUnidades(Long.MAX_VALUE));
+            assertThrows(IllegalStateException.class, () -> new Cuenta("John", BigDecimal.TEN).getSaldoUnidades());
+        }
+
+        @Test
+        void testTransferirUnidades() {
+            Cuenta cuenta1 = new Cuenta("John Doe", new BigDecimal("2500"), 5);
+            Cuenta cuenta2 = new Cuenta("Andres", new BigDecimal("1500.8989"), 5);
+            Banco banco = new Banco();
+            banco.transferirUnidades(cuenta2, cuenta1, 50_000_000L);
+            assertEquals("1000.89890", cuenta2.getSaldo().toPlainString());
+            assertEquals("3000.00000", cuenta1.getSaldo().toPlainString());
+        }
+    }
+
+    @Nested
+    @Tag("banco")
+    @DisplayName("Probando las cuentas de un banco columnar (fuera del heap)")
+    class BancoColumnarTest {
+        @Test
+        void testRelacionBancoCuentasColumnar() {
+            Cuenta cuenta1 = new Cuenta("John Doe", new BigDecimal("2500"));
+            Cuenta cuenta2 = new Cuenta("Andres", new BigDecimal("1500.8989"));
+
+            Banco banco = Banco.columnar(4);
+            banco.setNombre("Banco del Estado");
+            banco.addCuenta(cuenta1);
+            banco.addCuenta(cuenta2);
+
+            banco.transferir(cuenta2, cuenta1, new BigDecimal(500));
+            assertAll(() -> assertEquals("1000.8989", cuenta2.getSaldo().toPlainString()),
+                    () -> assertEquals("3000.0000", cuenta1.getSaldo().toPlainString()),
+                    () -> assertTrue(cuenta1.isEscalaFija()),
+                    () -> assertEquals(2, banco.getCuentas().size()),
+                    () -> assertEquals("Banco del Estado", banco.getCuentas().get(0).getBanco().getNombre()),
+                    () -> assertEquals(cuenta2, banco.buscarPorPersona("Andres").orElseThrow()),
+                    () -> assertThrows(DineroInsuficienteException.class, () -> cuenta2.debito(new BigDecimal(1500))));
+        }
+
+        @Test
+        void testVistasComparten() {
+            Banco banco = Banco.columnar(5);
+            Cuenta cuenta = new Cuenta("Andres", new BigDecimal("1000.12345"));
+            banco.addCuenta(cuenta);
+            Cuenta vista = banco.buscarPorId(cuenta.getId()).orElseThrow();
+            assertNotSame(cuenta, vista);
+            vista.debito(new BigDecimal(100));
+            assertEquals("900.12345", cuenta.getSaldo().toPlainString());
+            cuenta.setPersona("Maria");
+            assertEquals("Maria", vista.getPersona());
+            assertTrue(banco.buscarCuentasPorPersona("Andres").isEmpty());
+            assertEquals(cuenta.getId(), banco.buscarPorPersona("Maria").orElseThrow().getId());
+            assertThrows(IllegalArgumentException.class, () -> banco.addCuenta(new Cuenta(cuenta.getId(), "Otra", BigDecimal.ONE)));
+            assertThrows(IllegalArgumentException.class, () -> banco.addCuenta(new Cuenta("John", new BigDecimal("0.000001"))));
+            assertThrows(ArithmeticException.class, () -> cuenta.credito(new BigDecimal("0.000001")));
+        }
+
+        @Test
+        void testRechazaCuentasSinCerrojo() {
+            Banco banco = Banco.columnar(2);
+            Cuenta cas = new Cuenta("Comercio", new BigDecimal("10.00"), 2, ModoConcurrencia.CAS);
+            assertThrows(IllegalArgumentException.class, () -> banco.addCuenta(cas));
+            assertEquals(ModoConcurrencia.CAS, cas.getModoConcurrencia());
+            assertTrue(banco.getCuentas().isEmpty());
+        }
+
+        @Test
+        void testBuscarPorPersonaDespuesDeCambios() {
+            Banco banco = Banco.columnar(2);
+            List<Cuenta> cuentas = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                cuentas.add(new Cuenta(100 + i, i % 2 == 0 ? "Andres" : "John", BigDecimal.TEN));
+            }
+            banco.setCuentas(cuentas);
+            banco.buscarPorId(102).orElseThrow().setPersona("John");
+            banco.buscarPorId(105).orElseThrow().setPersona("Maria");
+            banco.buscarPorId(104).orElseThrow().setPersona(null);
+            banco.buscarPorId(105).orElseThrow().setPersona("John");
+
+            assertEquals(List.of(100L, 106L, 108L), banco.buscarCuentasPorPersona("Andres").stream().map(Cuenta::getId).toList());
+            assertEquals(List.of(101L, 102L, 103L, 105L, 107L, 109L),
+                    banco.buscarCuentasPorPersona("John").stream().map(Cuenta::getId).toList());
+            assertTrue(banco.buscarCuentasPorPersona("Maria").isEmpty());
+            assertTrue(banco.buscarCuentasPorPersona(null).isEmpty());
+        }
+
+        @Test
+        void testMuchasCuentas() {
+            Banco banco = Banco.columnar(2);
+            List<Cuenta> cuentas = new ArrayList<>();
+            for (int i = 0; i < 150_000; i++) { //mas de dos bloques de columnas y varias ampliaciones del indice
+                cuentas.add(new Cuenta(1_000_000L + i * 7L, "persona-" + (i % 1000), new BigDecimal(i)));
+            }
+            banco.setCuentas(cuentas);
+            assertEquals(150_000, banco.getCuentas().size());
+            for (int i = 0; i < 150_000; i += 997) {
+                Cuenta cuenta = banco.buscarPorId(1_000_000L + i * 7L).orElseThrow();
+                assertEquals(0, new BigDecimal(i).compareTo(cuenta.getSaldo()));
+                assertEquals("persona-" + (i % 1000), cuenta.getPersona());
+            }
+            assertTrue(banco.buscarPorId(3).isEmpty());
+            assertEquals(150, banco.buscarCuentasPorPersona("persona-7").size());
+            banco.cobrarComision(BigDecimal.ONE);
+            assertEquals("0.00", banco.getCuentas().get(0).getSaldo().toPlainString());
+            assertEquals("149998.00", banco.getCuentas().get(149_999).getSaldo().toPlainString());
+        }
+    }
+
     @Test
     @Tag("cuenta")
     @Tag("error")
@@ -413,6 +550,7 @@ class CuentaTest {
 
     @Nested
     @Tag("timeout")
+    @Execution(ExecutionMode.CONCURRENT) //las pausas corren a la vez en lugar de una detras de otra
     class EjemploTimeOutTest{
         @Test
         @Timeout(1)
@@ -0,0 +1,141 @@
+package org.smartinez.junit5app.ejemplos.aggregates;
+
+import org.junit.jupiter.api.*;
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+import org.smartinez.junit5app.ejemplos.models.ModoConcurrencia;
+import org.smartinez.junit5app.ejemplos.models.Transferencia;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgregadosBancoTest {
+
+    Banco banco;
+    Cuenta john;
+    Cuenta andres;
+    Cuenta maria;
+
+    @BeforeEach
+    void setUp() {
+        banco = new Banco();
+        john = new Cuenta(1, "John Doe", new BigDecimal("2500"));
+        andres = new Cuenta(2, "Andres", new BigDecimal("1500.8989"));
+        banco.addCuenta(john);
+        banco.addCuenta(andres);
+    }
+
+    private void assertCoincide(AgregadosBanco agregados) {
+        List<Cuenta> cuentas = banco.getCuentas();
+        BigDecimal total = cuentas.stream().map(Cuenta::getSaldo).reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, total.compareTo(agregados.getSaldoTotal()));
+        assertEquals(cuentas.size(), agregados.getCantidadCuentas());
+        assertEquals(cuentas.stream().filter(c -> c.getSaldo().compareTo(agregados.getUmbral()) < 0).count(),
+                agregados.getCuentasBajoUmbral());
+        List<Long> esperados = cuentas.stream()
+                .sorted(Comparator.comparing(Cuenta::getSaldo).reversed().thenComparing(Cuenta::getId))
+                .limit(3).map(Cuenta::getId).toList();
+        assertEquals(esperados, agregados.getMayoresSaldos(3).stream().map(p -> p.getCuenta().getId()).toList());
+    }
+
+    @Test
+    @DisplayName("Los agregados siguen a cada tipo de operacion")
+    void testOperaciones() {
+        AgregadosBanco agregados = AgregadosBanco.adjuntar(banco, new BigDecimal("1000"));
+        assertCoincide(agregados);
+        maria = new Cuenta(3, "Maria", new BigDecimal("10.00000"), 5);
+        banco.addCuenta(maria);
+        assertEquals(1, agregados.getCuentasBajoUmbral());
+        banco.transferir(john, andres, new BigDecimal("2000"));
+        assertEquals(2, agregados.getCuentasBajoUmbral());
+        assertEquals(andres, agregados.getMayoresSaldos(1).get(0).getCuenta());
+        andres.debito(new BigDecimal("3000"));
+        maria.creditoUnidades(200_000_000L);
+        assertEquals(maria, agregados.getMayoresSaldos(1).get(0).getCuenta());
+        john.setSaldo(new BigDecimal("0.01"));
+        banco.transferirBatch(List.of(new Transferencia(maria, john, new BigDecimal("5")),
+                new Transferencia(john, andres, new BigDecimal("1"))));
+        banco.aplicarInteres(new BigDecimal("0.01"));
+        assertCoincide(agregados);
+        assertEquals(2, agregados.getMayoresSaldos(2).size());
+        assertEquals(3, agregados.getMayoresSaldos(10).size());
+    }
+
+    @Test
+    @DisplayName("setCuentas reinicia los agregados")
+    void testSetCuentas() {
+        AgregadosBanco agregados = AgregadosBanco.adjuntar(banco, new BigDecimal("1000"));
+        banco.setCuentas(List.of(new Cuenta(10, "Ana", new BigDecimal("5"))));
+        assertCoincide(agregados);
+        assertEquals(new BigDecimal("5"), agregados.getSaldoTotal());
+    }
+
+    @Test
+    @DisplayName("Los agregados son correctos con operaciones concurrentes")
+    void testConcurrencia() throws InterruptedException {
+        List<Cuenta> cuentas = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            Cuenta cuenta = new Cuenta(100 + i, "cuenta-" + i, new BigDecimal(1000 + i));
+            banco.addCuenta(cuenta);
+            cuentas.add(cuenta);
+        }
+        AgregadosBanco agregados = AgregadosBanco.adjuntar(banco, new BigDecimal("900"));
+        BigDecimal totalInicial = agregados.getSaldoTotal();
+        List<Thread> hilos = new ArrayList<>();
+        for (int h = 0; h < 4; h++) {
+            hilos.add(new Thread(() -> {
+                ThreadLocalRandom azar = ThreadLocalRandom.current();
+                for (int i = 0; i < 5_000; i++) {
+                    Cuenta origen = cuentas.get(azar.nextInt(cuentas.size()));
+                    Cuenta destino = cuentas.get(azar.nextInt(cuentas.size()));
+                    banco.tryTransferir(origen, destino, new BigDecimal(azar.nextInt(1, 200)));
+                    if (i % 10 == 0) {
+                        origen.credito(BigDecimal.ONE);
+                        destino.tryDebito(BigDecimal.ONE);
+                    }
+                    //el total no puede verse alterado por una transferencia a medias
+                    assertTrue(agregados.getSaldoTotal().compareTo(totalInicial.subtract(new BigDecimal(2000))) > 0);
+                }
+            }));
+        }
+        hilos.forEach(Thread::start);
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+        assertCoincide(agregados);
+    }
+
+    @Test
+    @DisplayName("Adjuntar mientras corren operaciones sin cerrojo no cuenta ninguna dos veces")
+    void testAdjuntarConCuentasSinCerrojo() throws InterruptedException {
+        List<Cuenta> cuentas = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Cuenta cuenta = new Cuenta(100 + i, "comercio-" + i, new BigDecimal("1000.00"), 2,
+                    i % 2 == 0 ? ModoConcurrencia.CAS : ModoConcurrencia.ACUMULADO);
+            banco.addCuenta(cuenta);
+            cuentas.add(cuenta);
+        }
+        List<Thread> hilos = new ArrayList<>();
+        for (int h = 0; h < 4; h++) {
+            hilos.add(new Thread(() -> {
+                ThreadLocalRandom azar = ThreadLocalRandom.current();
+                for (int i = 0; i < 20_000; i++) {
+                    Cuenta cuenta = cuentas.get(azar.nextInt(cuentas.size()));
+                    cuenta.creditoUnidades(3);
+                    cuenta.tryDebitoUnidades(2);
+                }
+            }));
+        }
+        hilos.forEach(Thread::start);
+        AgregadosBanco agregados = AgregadosBanco.adjuntar(banco, new BigDecimal("900"));
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+        assertCoincide(agregados);
+    }
+}
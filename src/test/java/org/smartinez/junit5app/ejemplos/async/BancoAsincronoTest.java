@@ -0,0 +1,176 @@
+package org.smartinez.junit5app.ejemplos.async;
+
+import org.junit.jupiter.api.*;
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+import org.smartinez.junit5app.ejemplos.models.ResultadoOperacion;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("banco")
+@Tag("concurrencia")
+class BancoAsincronoTest {
+
+    Banco banco;
+    Cuenta john;
+    Cuenta andres;
+
+    @BeforeEach
+    void setUp() {
+        banco = new Banco();
+        john = new Cuenta(1, "John Doe", new BigDecimal("100"));
+        andres = new Cuenta(2, "Andres", new BigDecimal("0"));
+        banco.addCuenta(john);
+        banco.addCuenta(andres);
+    }
+
+    @Test
+    @DisplayName("Con orden por cuenta las operaciones de una cuenta se aplican en el orden en que se enviaron")
+    void testOrdenPorCuenta() throws Exception {
+        try (BancoAsincrono asincrono = new BancoAsincrono(banco, 4, 64, PoliticaContrapresion.ESPERAR, OrdenOperaciones.POR_CUENTA)) {
+            CompletableFuture<ResultadoOperacion> primera = asincrono.transferirAsync(john, andres, new BigDecimal("60"));
+            CompletableFuture<ResultadoOperacion> segunda = asincrono.debitoAsync(john, new BigDecimal("60"));
+            CompletableFuture<ResultadoOperacion> credito = asincrono.creditoAsync(john, new BigDecimal("20"));
+            CompletableFuture<BigDecimal> saldo = asincrono.saldoAsync(john);
+
+            assertEquals(ResultadoOperacion.OK, primera.get(5, TimeUnit.SECONDS));
+            assertEquals(ResultadoOperacion.SALDO_INSUFICIENTE, segunda.get(5, TimeUnit.SECONDS));
+            assertEquals(ResultadoOperacion.OK, credito.get(5, TimeUnit.SECONDS));
+            assertEquals("60", saldo.get(5, TimeUnit.SECONDS).toPlainString());
+            assertEquals("60", andres.getSaldo().toPlainString());
+        }
+    }
+
+    @Test
+    @DisplayName("Con la cola llena RECHAZAR completa el futuro con error y no bloquea al que envia")
+    void testRechazar() throws Exception {
+        CountDownLatch bloqueado = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        //leerConsistente retiene los cerrojos de todas las cuentas: el unico hilo del carril queda esperando
+        Thread lector = new Thread(() -> banco.leerConsistente(cuentas -> {
+            bloqueado.countDown();
+            try {
+                liberar.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        lector.start();
+        bloqueado.await();
+
+        try (BancoAsincrono asincrono = new BancoAsincrono(banco, 1, 1, PoliticaContrapresion.RECHAZAR, OrdenOperaciones.POR_CUENTA)) {
+            List<CompletableFuture<ResultadoOperacion>> futuros = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                futuros.add(asincrono.transferirAsync(john, andres, BigDecimal.ONE));
+            }
+            assertTrue(asincrono.getRechazadas() >= 3);
+            ExecutionException e = assertThrows(ExecutionException.class, () -> futuros.get(4).get());
+            assertInstanceOf(RejectedExecutionException.class, e.getCause());
+
+            liberar.countDown();
+            assertEquals(ResultadoOperacion.OK, futuros.get(0).get(5, TimeUnit.SECONDS));
+        } finally {
+            liberar.countDown();
+            lector.join();
+        }
+        assertEquals(0, new BigDecimal("100").compareTo(john.getSaldo().add(andres.getSaldo())));
+    }
+
+    @Test
+    @DisplayName("EJECUTAR_EN_LLAMADOR no se puede combinar con orden por cuenta")
+    void testPoliticaInvalida() {
+        assertThrows(IllegalArgumentException.class, () ->
+                new BancoAsincrono(banco, 2, 8, PoliticaContrapresion.EJECUTAR_EN_LLAMADOR, OrdenOperaciones.POR_CUENTA));
+    }
+
+    @Test
+    @DisplayName("Las transferencias completadas se publican a los suscriptores")
+    void testPublicador() throws Exception {
+        List<TransferenciaCompletada> recibidas = new CopyOnWriteArrayList<>();
+        CountDownLatch completo = new CountDownLatch(1);
+        try (BancoAsincrono asincrono = new BancoAsincrono(banco, 2, 64, PoliticaContrapresion.EJECUTAR_EN_LLAMADOR, OrdenOperaciones.SIN_ORDEN)) {
+            asincrono.getCompletadas().subscribe(new Flow.Subscriber<>() {
+                @Override
+                public void onSubscribe(Flow.Subscription suscripcion) {
+                    suscripcion.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(TransferenciaCompletada transferencia) {
+                    recibidas.add(transferencia);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                }
+
+                @Override
+                public void onComplete() {
+                    completo.countDown();
+                }
+            });
+            List<CompletableFuture<ResultadoOperacion>> futuros = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                futuros.add(asincrono.transferirAsync(john, andres, BigDecimal.TEN));
+            }
+            CompletableFuture.allOf(futuros.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        }
+        assertTrue(completo.await(5, TimeUnit.SECONDS));
+        assertEquals(12, recibidas.size());
+        assertEquals(10, recibidas.stream().filter(t -> t.getResultado().isOk()).count());
+        assertEquals("100", andres.getSaldo().toPlainString());
+    }
+
+    @Test
+    @DisplayName("Un reintento con la misma clave no se vuelve a publicar")
+    void testReintentoNoSePublica() throws Exception {
+        List<TransferenciaCompletada> recibidas = new CopyOnWriteArrayList<>();
+        CountDownLatch completo = new CountDownLatch(1);
+        try (BancoAsincrono asincrono = new BancoAsincrono(banco)) {
+            asincrono.getCompletadas().subscribe(new Flow.Subscriber<>() {
+                @Override
+                public void onSubscribe(Flow.Subscription suscripcion) {
+                    suscripcion.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(TransferenciaCompletada transferencia) {
+                    recibidas.add(transferencia);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                }
+
+                @Override
+                public void onComplete() {
+                    completo.countDown();
+                }
+            });
+            for (int i = 0; i < 3; i++) {
+                assertEquals(ResultadoOperacion.OK,
+                        asincrono.transferirAsync("pago-1", john, andres, BigDecimal.TEN).get(5, TimeUnit.SECONDS));
+            }
+        }
+        assertTrue(completo.await(5, TimeUnit.SECONDS));
+        assertEquals("90", john.getSaldo().toPlainString());
+        assertEquals(1, recibidas.size());
+    }
+
+    @Test
+    @DisplayName("Las operaciones enviadas despues de cerrar fallan sin contarse como rechazos por contrapresion")
+    void testEnviarDespuesDeCerrar() {
+        BancoAsincrono asincrono = new BancoAsincrono(banco);
+        asincrono.close();
+        CompletableFuture<ResultadoOperacion> futuro = asincrono.debitoAsync(john, BigDecimal.ONE);
+        ExecutionException e = assertThrows(ExecutionException.class, futuro::get);
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        assertEquals(0, asincrono.getRechazadas());
+    }
+}
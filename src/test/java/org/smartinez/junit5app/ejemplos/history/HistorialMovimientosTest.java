@@ -0,0 +1,122 @@
+package org.smartinez.junit5app.ejemplos.history;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistorialMovimientosTest {
+
+    Banco banco;
+    Cuenta john;
+    Cuenta andres;
+
+    @BeforeEach
+    void setUp() {
+        banco = new Banco();
+        john = new Cuenta(1, "John Doe", new BigDecimal("2500"));
+        andres = new Cuenta(2, "Andres", new BigDecimal("1500.8989"));
+        banco.addCuenta(john);
+        banco.addCuenta(andres);
+    }
+
+    @Test
+    @DisplayName("El extracto tiene la apertura y cada movimiento con su saldo posterior")
+    void testExtracto() throws IOException {
+        try (HistorialMovimientos historial = new HistorialMovimientos(4).adjuntar(banco)) {
+            banco.transferir(andres, john, new BigDecimal(500));
+            john.debito(new BigDecimal("0.5"));
+            andres.credito(new BigDecimal("0.0011"));
+            andres.setSaldo(new BigDecimal("42"));
+
+            List<Movimiento> extracto = historial.extracto(andres.getId()).toList();
+            assertEquals(4, extracto.size());
+            assertEquals(List.of(new BigDecimal("1500.8989"), new BigDecimal("-500.0000"),
+                    new BigDecimal("0.0011"), new BigDecimal("-958.9000")), extracto.stream().map(Movimiento::getMonto).toList());
+            assertEquals(new BigDecimal("42.0000"), extracto.get(3).getSaldo());
+            assertEquals(3, historial.getCantidadMovimientos(john.getId()));
+            assertEquals(new BigDecimal("2999.5000"), historial.extracto(john.getId(), 2, 3).findFirst().orElseThrow().getSaldo());
+            assertEquals(0, historial.extracto(99).count());
+        }
+    }
+
+    @Test
+    @DisplayName("Paginas y rangos por secuencia e instante")
+    void testPaginas() throws IOException {
+        try (HistorialMovimientos historial = new HistorialMovimientos(4).adjuntar(banco)) {
+            for (int i = 0; i < 1000; i++) {
+                john.credito(BigDecimal.ONE);
+            }
+            List<Movimiento> pagina = historial.pagina(john.getId(), 0, 300);
+            assertEquals(300, pagina.size());
+            pagina = historial.pagina(john.getId(), pagina.get(299).getSecuencia() + 1, 300);
+            assertEquals(300, pagina.get(0).getSecuencia());
+            assertEquals(new BigDecimal("2800.0000"), pagina.get(0).getSaldo());
+            assertEquals(1, historial.pagina(john.getId(), 1000, 300).size());
+
+            Instant ahora = Instant.now();
+            assertEquals(1001, historial.extracto(john.getId(), ahora.minus(1, ChronoUnit.HOURS), ahora.plusSeconds(1)).count());
+            assertEquals(0, historial.extracto(john.getId(), ahora.plusSeconds(60), ahora.plusSeconds(120)).count());
+        }
+    }
+
+    @Test
+    @DisplayName("Los bloques desbordados a disco se siguen leyendo en el extracto")
+    void testDesborde(@TempDir Path directorio) throws IOException {
+        Cuenta maria = new Cuenta(3, "Maria", new BigDecimal("10.00000"), 5);
+        banco.addCuenta(maria);
+        try (HistorialMovimientos historial = new HistorialMovimientos(5, directorio.resolve("historial.bin"), 1).adjuntar(banco)) {
+            for (int i = 0; i < 2000; i++) {
+                maria.creditoUnidades(i);
+                banco.transferir(maria, john, new BigDecimal("0.00001"));
+            }
+            List<Movimiento> antes = historial.extracto(maria.getId()).toList();
+            assertTrue(historial.desbordar() > 0);
+            assertEquals(0, historial.desbordar());
+            List<Movimiento> despues = historial.extracto(maria.getId()).toList();
+            assertEquals(4001, despues.size());
+            for (int i = 0; i < antes.size(); i++) {
+                assertEquals(antes.get(i).getSaldo(), despues.get(i).getSaldo());
+                assertEquals(antes.get(i).getMonto(), despues.get(i).getMonto());
+            }
+            BigDecimal total = despues.stream().map(Movimiento::getMonto).reduce(BigDecimal.ZERO, BigDecimal::add);
+            assertEquals(maria.getSaldo(), total);
+        }
+    }
+
+    @Test
+    @DisplayName("setCuentas reinicia el historial")
+    void testSetCuentas() throws IOException {
+        try (HistorialMovimientos historial = new HistorialMovimientos(4).adjuntar(banco)) {
+            john.debito(BigDecimal.ONE);
+            banco.setCuentas(List.of(new Cuenta(1, "John Doe", new BigDecimal("5"))));
+            assertEquals(1, historial.getCantidadMovimientos(1));
+            assertEquals(0, historial.getCantidadMovimientos(2));
+        }
+    }
+
+    @Test
+    @DisplayName("Un saldo que no entra en la escala del historial se recorta sin afectar al banco")
+    void testSaldoFueraDeRango() throws IOException {
+        try (HistorialMovimientos historial = new HistorialMovimientos(4).adjuntar(banco)) {
+            //1E16 con 4 decimales son 1E20 unidades, mas que Long.MAX_VALUE
+            Cuenta grande = new Cuenta(3, "Maria", new BigDecimal("1E16"));
+            banco.addCuenta(grande);
+            banco.transferir(grande, john, BigDecimal.ONE);
+
+            assertEquals(new BigDecimal("2501"), john.getSaldo());
+            assertEquals(2, historial.getSaldosFueraDeRango());
+            assertEquals(BigDecimal.valueOf(Long.MAX_VALUE, 4), historial.extracto(grande.getId()).findFirst().orElseThrow().getSaldo());
+            assertEquals(new BigDecimal("2501.0000"), historial.extracto(john.getId(), 1, 2).findFirst().orElseThrow().getSaldo());
+        }
+    }
+}
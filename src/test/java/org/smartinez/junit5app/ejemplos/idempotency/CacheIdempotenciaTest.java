@@ -0,0 +1,172 @@
+package org.smartinez.junit5app.ejemplos.idempotency;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+import org.smartinez.junit5app.ejemplos.models.ResultadoOperacion;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheIdempotenciaTest {
+
+    @Test
+    @DisplayName("Reintentar una transferencia con la misma clave no la aplica dos veces")
+    void testReintento() {
+        Banco banco = new Banco();
+        Cuenta origen = new Cuenta(1, "John Doe", new BigDecimal("100"));
+        Cuenta destino = new Cuenta(2, "Andres", new BigDecimal("0"));
+        banco.addCuenta(origen);
+        banco.addCuenta(destino);
+
+        assertEquals(ResultadoOperacion.OK, banco.transferir("tx-1", origen, destino, new BigDecimal("60")));
+        assertEquals(ResultadoOperacion.OK, banco.transferir("tx-1", origen, destino, new BigDecimal("60")));
+        assertEquals("40", origen.getSaldo().toPlainString());
+        assertEquals("60", destino.getSaldo().toPlainString());
+
+        //el rechazo tambien se recuerda aunque despues haya saldo
+        assertEquals(ResultadoOperacion.SALDO_INSUFICIENTE, banco.transferir("tx-2", origen, destino, new BigDecimal("50")));
+        origen.credito(BigDecimal.TEN);
+        assertEquals(ResultadoOperacion.SALDO_INSUFICIENTE, banco.transferir("tx-2", origen, destino, new BigDecimal("50")));
+        assertEquals("50", origen.getSaldo().toPlainString());
+
+        assertThrows(IllegalArgumentException.class, () -> banco.transferir("tx-1", origen, destino, new BigDecimal("61")));
+        assertEquals(2, banco.getIdempotencia().getDuplicados());
+
+        //el mismo monto con otra escala es la misma transferencia
+        assertEquals(ResultadoOperacion.OK, banco.transferir("tx-3", origen, destino, new BigDecimal("10.0")));
+        assertEquals(ResultadoOperacion.OK, banco.transferir("tx-3", origen, destino, new BigDecimal("10.00")));
+        assertEquals("40.0", origen.getSaldo().toPlainString());
+    }
+
+    @Test
+    @DisplayName("Los duplicados concurrentes esperan el resultado de la original")
+    void testDuplicadosConcurrentes() throws Exception {
+        CacheIdempotencia<Integer> cache = new CacheIdempotencia<>(1000, Duration.ofMinutes(1));
+        AtomicInteger ejecuciones = new AtomicInteger();
+        CountDownLatch largada = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> resultados = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                resultados.add(executor.submit(() -> {
+                    largada.await();
+                    return cache.ejecutar("clave", "huella", () -> {
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return ejecuciones.incrementAndGet();
+                    });
+                }));
+            }
+            largada.countDown();
+            for (Future<Integer> resultado : resultados) {
+                assertEquals(1, resultado.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, ejecuciones.get());
+        assertEquals(7, cache.getDuplicados());
+    }
+
+    @Test
+    @DisplayName("La cache olvida claves por tamaño, por tiempo y cuando la operacion falla")
+    void testDesalojo() throws InterruptedException {
+        CacheIdempotencia<Integer> cache = new CacheIdempotencia<>(64, Duration.ofMillis(50));
+        for (int i = 0; i < 10_000; i++) {
+            int valor = i;
+            cache.ejecutar("k" + i, null, () -> valor);
+        }
+        assertTrue(cache.getTamanio() <= cache.getCapacidad());
+        assertTrue(cache.getCapacidad() <= 64);
+
+        assertEquals(1, cache.ejecutar("vence", null, () -> 1));
+        Thread.sleep(100);
+        assertEquals(2, cache.ejecutar("vence", null, () -> 2));
+
+        assertThrows(IllegalStateException.class, () -> cache.ejecutar("falla", null, () -> {
+            throw new IllegalStateException();
+        }));
+        assertEquals(3, cache.ejecutar("falla", null, () -> 3));
+    }
+
+    @Test
+    @DisplayName("Un Error en la operacion tambien libera a los duplicados y olvida la clave")
+    void testError() throws Exception {
+        CacheIdempotencia<Integer> cache = new CacheIdempotencia<>(1000, Duration.ofMinutes(1));
+        CountDownLatch empezo = new CountDownLatch(1);
+        CountDownLatch seguir = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> original = executor.submit(() -> cache.ejecutar("clave", null, () -> {
+                empezo.countDown();
+                try {
+                    seguir.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new AssertionError("falla grave");
+            }));
+            assertTrue(empezo.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Integer> duplicado = CompletableFuture.supplyAsync(() -> cache.ejecutar("clave", null, () -> -1));
+            Thread.sleep(20);
+            seguir.countDown();
+            ExecutionException e = assertThrows(ExecutionException.class, () -> original.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(AssertionError.class, e.getCause());
+            //el duplicado puede haber esperado a la original o haber llegado despues de que se olvido la clave
+            try {
+                assertEquals(-1, duplicado.get(5, TimeUnit.SECONDS));
+            } catch (ExecutionException error) {
+                assertInstanceOf(AssertionError.class, error.getCause());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(7, cache.ejecutar("clave", null, () -> 7));
+    }
+
+    @Test
+    @DisplayName("El desalojo por tamaño no saca una operacion que todavia esta corriendo")
+    void testDesalojoNoSacaEnCurso() throws Exception {
+        CacheIdempotencia<Integer> cache = new CacheIdempotencia<>(1, Duration.ofMinutes(1));
+        AtomicInteger ejecuciones = new AtomicInteger();
+        CountDownLatch empezo = new CountDownLatch(1);
+        CountDownLatch seguir = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> original = executor.submit(() -> cache.ejecutar("lenta", null, () -> {
+                empezo.countDown();
+                try {
+                    seguir.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return ejecuciones.incrementAndGet();
+            }));
+            assertTrue(empezo.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 10; i++) {
+                int valor = i;
+                cache.ejecutar("k" + i, null, () -> valor);
+            }
+            CompletableFuture<Integer> duplicado = CompletableFuture.supplyAsync(
+                    () -> cache.ejecutar("lenta", null, ejecuciones::incrementAndGet));
+            Thread.sleep(20);
+            seguir.countDown();
+            assertEquals(1, original.get(5, TimeUnit.SECONDS));
+            assertEquals(1, duplicado.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, ejecuciones.get());
+    }
+}
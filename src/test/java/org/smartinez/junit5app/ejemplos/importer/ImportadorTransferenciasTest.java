@@ -0,0 +1,98 @@
+package org.smartinez.junit5app.ejemplos.importer;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("importacion")
+class ImportadorTransferenciasTest {
+
+    @TempDir
+    Path directorio;
+
+    Banco banco;
+
+    @BeforeEach
+    void setUp() {
+        banco = new Banco();
+        banco.addCuenta(new Cuenta(1, "John Doe", new BigDecimal("2500")));
+        banco.addCuenta(new Cuenta(2, "Andres", new BigDecimal("1500.8989")));
+        banco.addCuenta(new Cuenta(3, "Maria", new BigDecimal("1000.12345"), 5));
+    }
+
+    private BigDecimal total() {
+        return banco.getCuentas().stream().map(Cuenta::getSaldo).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    @Test
+    @DisplayName("Importa las filas validas y manda las invalidas al archivo de rechazos")
+    void testImportarConRechazos() throws IOException {
+        Path csv = directorio.resolve("transferencias.csv");
+        Files.writeString(csv, """
+                origen,destino,monto
+                2,1,500
+                1 , 3 , 0.12345\r
+                1,2
+                x,2,10
+                1,2,-5
+                1,99,10
+                3,1,99999
+
+                2,3,0.1234567
+                3,2,1000.00000""");
+        Path rechazos = directorio.resolve("rechazos.csv");
+
+        ResultadoImportacion resultado = new ImportadorTransferencias(banco, rechazos, 2, 1).importar(csv);
+
+        assertEquals(9, resultado.getFilas());
+        assertEquals(3, resultado.getAplicadas());
+        assertEquals(6, resultado.getRechazadas());
+        assertEquals(0, new BigDecimal("2999.87655").compareTo(banco.buscarPorId(1).orElseThrow().getSaldo()));
+        assertEquals(0, new BigDecimal("2000.8989").compareTo(banco.buscarPorId(2).orElseThrow().getSaldo()));
+        assertEquals(0, new BigDecimal("0.24690").compareTo(banco.buscarPorId(3).orElseThrow().getSaldo()));
+
+        List<String> lineas = Files.readAllLines(rechazos);
+        assertEquals(6, lineas.size());
+        assertTrue(lineas.stream().anyMatch(l -> l.endsWith(";Cantidad de campos invalida;1,2")));
+        assertTrue(lineas.stream().anyMatch(l -> l.endsWith(";Cuenta inexistente;1,99,10")));
+        assertTrue(lineas.stream().anyMatch(l -> l.endsWith(";Dinero Insuficiente;3,1,99999")));
+        assertTrue(lineas.stream().anyMatch(l -> l.endsWith(";Monto invalido;2,3,0.1234567")));
+    }
+
+    @ParameterizedTest(name = "con {0} hilos")
+    @ValueSource(ints = {1, 3, 8})
+    @DisplayName("Dividir el archivo en regiones no pierde ni duplica filas")
+    void testImportarEnParalelo(int hilos) throws IOException {
+        Path csv = directorio.resolve("grande.csv");
+        Random random = new Random(42);
+        int filas = 50_000;
+        try (Writer writer = Files.newBufferedWriter(csv)) {
+            for (int i = 0; i < filas; i++) {
+                writer.write((1 + random.nextInt(3)) + "," + (1 + random.nextInt(3)) + "," + random.nextInt(1, 100) + ".5\n");
+            }
+        }
+        BigDecimal totalInicial = total();
+
+        ResultadoImportacion resultado = new ImportadorTransferencias(banco, directorio.resolve("rechazos.csv"), 256, hilos)
+                .importar(csv);
+
+        assertEquals(filas, resultado.getFilas());
+        assertEquals(filas, resultado.getAplicadas() + resultado.getRechazadas());
+        assertEquals(resultado.getRechazadas(), Files.readAllLines(directorio.resolve("rechazos.csv")).size());
+        assertEquals(0, totalInicial.compareTo(total()));
+        assertTrue(banco.getCuentas().stream().allMatch(c -> c.getSaldo().signum() >= 0));
+    }
+}
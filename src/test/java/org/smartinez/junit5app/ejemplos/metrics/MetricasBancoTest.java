@@ -0,0 +1,130 @@
+package org.smartinez.junit5app.ejemplos.metrics;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.smartinez.junit5app.ejemplos.exceptions.DineroInsuficienteException;
+import org.smartinez.junit5app.ejemplos.models.*;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("metricas")
+class MetricasBancoTest {
+
+    @ParameterizedTest(name = "valor {0}")
+    @ValueSource(longs = {0, 1, 31, 32, 33, 1000, 123_456_789, Long.MAX_VALUE})
+    @DisplayName("Cada valor cae en un bucket cuyo limite superior esta dentro del 3%")
+    void testBucketsDelHistograma(long valor) {
+        long limite = Histograma.limiteSuperior(Histograma.indice(valor));
+        assertTrue(limite >= valor);
+        assertTrue(limite - valor <= Math.max(1, valor / 32), () -> "limite " + limite);
+    }
+
+    @Test
+    void testPercentiles() {
+        Histograma histograma = new Histograma();
+        for (int i = 1; i <= 1000; i++) {
+            histograma.registrar(i);
+        }
+        Histograma.Foto foto = histograma.foto();
+        assertEquals(1000, foto.getCantidad());
+        assertEquals(1000, foto.getMaximo());
+        assertEquals(500.5, foto.getMedia());
+        assertEquals(500, foto.percentil(50), 500 / 32.0);
+        assertEquals(990, foto.percentil(99), 990 / 32.0);
+    }
+
+    @Test
+    @DisplayName("Las operaciones del banco quedan registradas por tipo")
+    void testMetricasDelBanco(@TempDir Path directorio) throws Exception {
+        Banco banco = new Banco();
+        MetricasBanco metricas = new MetricasBanco();
+        banco.setMetricas(metricas);
+        Cuenta cuenta1 = new Cuenta("John Doe", new BigDecimal("2500"));
+        Cuenta cuenta2 = new Cuenta("Andres", new BigDecimal("1500.8989"));
+        banco.addCuenta(cuenta1);
+        banco.addCuenta(cuenta2);
+
+        banco.transferir(cuenta2, cuenta1, new BigDecimal(500));
+        assertThrows(DineroInsuficienteException.class, () -> banco.transferir(cuenta2, cuenta1, new BigDecimal(5000)));
+        assertThrows(DineroInsuficienteException.class, () -> cuenta2.debito(new BigDecimal(5000)));
+        cuenta1.credito(BigDecimal.ONE);
+        banco.transferirBatch(List.of(new Transferencia(cuenta2, cuenta1, new BigDecimal(9000))), ModoLote.MEJOR_ESFUERZO);
+
+        InstantaneaMetricas instantanea = metricas.instantanea();
+        assertEquals(1, instantanea.get(Operacion.TRANSFERENCIA).getExitos());
+        assertEquals(1, instantanea.get(Operacion.TRANSFERENCIA).getErrores());
+        assertEquals(2, instantanea.get(Operacion.TRANSFERENCIA).getLatencias().getCantidad());
+        assertEquals(1, instantanea.get(Operacion.DEBITO).getErrores());
+        assertEquals(1, instantanea.get(Operacion.CREDITO).getExitos());
+        assertEquals(1, instantanea.get(Operacion.TRANSFERENCIA_LOTE).getExitos());
+        assertEquals(3, instantanea.getRechazosSaldoInsuficiente());
+
+        Path log = directorio.resolve("metricas.log");
+        metricas.iniciarVolcado(log, Duration.ofMillis(20));
+        Thread.sleep(200);
+        metricas.close();
+        List<String> lineas = Files.readAllLines(log);
+        assertFalse(lineas.isEmpty());
+        assertTrue(lineas.get(0).contains("TRANSFERENCIA{ok=1, error=1"));
+    }
+
+    @Test
+    @DisplayName("Los registros desde muchos hilos se suman en la foto")
+    void testRegistroConcurrente() throws Exception {
+        Histograma histograma = new Histograma();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futuros = new ArrayList<>();
+        for (int h = 0; h < 8; h++) {
+            futuros.add(executor.submit(() -> {
+                for (int i = 1; i <= 10_000; i++) {
+                    histograma.registrar(i);
+                }
+            }));
+        }
+        for (Future<?> futuro : futuros) {
+            futuro.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        Histograma.Foto foto = histograma.foto();
+        assertEquals(80_000, foto.getCantidad());
+        assertEquals(10_000, foto.percentil(100));
+        assertEquals(5_000, foto.percentil(50), 5_000 / 32.0);
+        histograma.reiniciar();
+        assertEquals(0, histograma.foto().percentil(50));
+    }
+
+    @Test
+    @DisplayName("Un volcado que falla no detiene los siguientes")
+    void testVolcadoSigueDespuesDeFallar(@TempDir Path directorio) throws Exception {
+        MetricasBanco metricas = new MetricasBanco();
+        //mientras sea un directorio no se puede escribir
+        Path log = Files.createDirectory(directorio.resolve("metricas.log"));
+        metricas.iniciarVolcado(log, Duration.ofMillis(10));
+        try {
+            long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (metricas.getFallasVolcado() < 2 && System.nanoTime() < limite) {
+                Thread.sleep(10);
+            }
+            assertTrue(metricas.getFallasVolcado() >= 2);
+
+            Files.delete(log);
+            while (!Files.exists(log) && System.nanoTime() < limite) {
+                Thread.sleep(10);
+            }
+            assertTrue(Files.exists(log), "el volcado se cancelo despues de la primera falla");
+        } finally {
+            metricas.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.smartinez.junit5app.ejemplos.network;
+
+import org.junit.jupiter.api.*;
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+import org.smartinez.junit5app.ejemplos.models.ResultadoOperacion;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServidorTransferenciasTest {
+
+    Banco banco;
+    ServidorTransferencias servidor;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        banco = new Banco();
+        servidor = new ServidorTransferencias(banco, 0);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        servidor.close();
+    }
+
+    @Test
+    @DisplayName("Crear cuentas, consultar saldos y transferir por la red")
+    void testOperaciones() throws IOException {
+        try (ClienteTransferencias cliente = new ClienteTransferencias(servidor.getPuerto())) {
+            long john = cliente.crearCuenta("John Doe", new BigDecimal("2500"));
+            long andres = cliente.crearCuenta("Andres", new BigDecimal("1500.8989"));
+            assertEquals(ResultadoOperacion.OK, cliente.transferir(andres, john, new BigDecimal(500)));
+            assertEquals(ResultadoOperacion.SALDO_INSUFICIENTE, cliente.transferir(andres, john, new BigDecimal(5000)));
+            assertEquals(ResultadoOperacion.CUENTA_INEXISTENTE, cliente.transferir(andres, -1, BigDecimal.ONE));
+            assertEquals(new BigDecimal("3000"), cliente.saldo(john));
+            assertEquals(new BigDecimal("1000.8989"), cliente.saldo(andres));
+            assertNull(cliente.saldo(-1));
+            assertEquals("Andres", banco.buscarPorId(andres).map(Cuenta::getPersona).orElseThrow());
+        }
+    }
+
+    @Test
+    @DisplayName("Los montos negativos, cero o con escala fuera de rango se rechazan sin tocar las cuentas")
+    void testMontosInvalidos() throws IOException {
+        try (ClienteTransferencias cliente = new ClienteTransferencias(servidor.getPuerto())) {
+            long john = cliente.crearCuenta("John Doe", new BigDecimal("2500"));
+            long andres = cliente.crearCuenta("Andres", new BigDecimal("100"));
+            assertThrows(IllegalStateException.class, () -> cliente.transferir(andres, john, new BigDecimal("-500")));
+            assertThrows(IllegalStateException.class, () -> cliente.transferir(andres, john, BigDecimal.ZERO));
+            assertThrows(IllegalStateException.class, () -> cliente.transferir(andres, john, BigDecimal.ONE.movePointLeft(1_000_000)));
+            assertThrows(IllegalStateException.class, () -> cliente.crearCuenta("Maria", new BigDecimal("-1")));
+            //la conexion sigue sirviendo despues de los rechazos
+            assertEquals(new BigDecimal("2500"), cliente.saldo(john));
+            assertEquals(new BigDecimal("100"), cliente.saldo(andres));
+            assertEquals(2, banco.getCuentas().size());
+        }
+    }
+
+    @Test
+    @DisplayName("Una operacion desconocida se responde con error, corta esa conexion y se cuenta")
+    void testPedidoMalFormado() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), servidor.getPuerto());
+             DataOutputStream salida = new DataOutputStream(socket.getOutputStream());
+             DataInputStream entrada = new DataInputStream(socket.getInputStream())) {
+            salida.writeByte(99);
+            salida.writeLong(7);
+            salida.flush();
+            assertEquals(7, entrada.readLong());
+            assertEquals(ProtocoloTransferencias.ERROR, entrada.readByte());
+            assertTrue(entrada.readUTF().contains("Operacion desconocida"));
+            assertEquals(-1, entrada.read());
+        }
+        //el servidor cuenta el error despues de cerrar el socket
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (servidor.getErrores() == 0 && System.nanoTime() < limite) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, servidor.getErrores());
+        try (ClienteTransferencias cliente = new ClienteTransferencias(servidor.getPuerto())) {
+            assertNull(cliente.saldo(-1));
+        }
+    }
+
+    @Test
+    @DisplayName("Los pedidos encolados se responden en orden")
+    void testPipelining() throws IOException {
+        try (ClienteTransferencias cliente = new ClienteTransferencias(servidor.getPuerto())) {
+            long uno = cliente.crearCuenta("uno", new BigDecimal("10"));
+            long dos = cliente.crearCuenta("dos", BigDecimal.ZERO);
+            for (int i = 0; i < 15; i++) {
+                cliente.enviarTransferencia(uno, dos, BigDecimal.ONE);
+            }
+            assertEquals(15, cliente.getPendientes());
+            int aceptadas = 0;
+            for (int i = 0; i < 15; i++) {
+                ResultadoOperacion resultado = cliente.recibirTransferencia();
+                //las primeras 10 alcanzan, el resto no: confirma que se procesaron en orden
+                assertEquals(i < 10 ? ResultadoOperacion.OK : ResultadoOperacion.SALDO_INSUFICIENTE, resultado);
+                if (resultado.isOk()) {
+                    aceptadas++;
+                }
+            }
+            assertEquals(10, aceptadas);
+            assertEquals(0, cliente.getPendientes());
+            assertThrows(IllegalStateException.class, cliente::recibirTransferencia);
+        }
+    }
+
+    @Test
+    @DisplayName("El generador de carga mide sin perder ni crear dinero")
+    void testGeneradorCarga() throws IOException, InterruptedException {
+        ResultadoCarga resultado = GeneradorCarga.ejecutar(servidor.getPuerto(), 4, 16, 32, Duration.ofMillis(300));
+        assertTrue(resultado.getOperaciones() > 0);
+        assertEquals(resultado.getOperaciones(), resultado.getLatencias().getCantidad());
+        assertTrue(resultado.getLatencias().percentil(99) > 0);
+        BigDecimal total = banco.getCuentas().stream().map(Cuenta::getSaldo).reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, new BigDecimal(32 * 1_000_000).compareTo(total));
+    }
+}
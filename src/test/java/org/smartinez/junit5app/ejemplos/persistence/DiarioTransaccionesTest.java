@@ -0,0 +1,213 @@
+package org.smartinez.junit5app.ejemplos.persistence;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.smartinez.junit5app.ejemplos.exceptions.DineroInsuficienteException;
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+import org.smartinez.junit5app.ejemplos.models.ModoConcurrencia;
+import org.smartinez.junit5app.ejemplos.models.ModoLote;
+import org.smartinez.junit5app.ejemplos.models.Transferencia;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("persistencia")
+class DiarioTransaccionesTest {
+
+    @TempDir
+    Path directorio;
+
+    Path archivo;
+
+    @BeforeEach
+    void setUp() {
+        archivo = directorio.resolve("diario.bin");
+    }
+
+    private Banco bancoConDiario(DiarioTransacciones diario) {
+        Banco banco = new Banco();
+        banco.agregarOyente(diario);
+        banco.addCuenta(new Cuenta(1, "John Doe", new BigDecimal("2500")));
+        banco.addCuenta(new Cuenta(2, "Andres", new BigDecimal("1500.8989")));
+        banco.addCuenta(new Cuenta(3, "Maria", new BigDecimal("10.00000"), 5));
+        return banco;
+    }
+
+    private void assertMismoEstado(Banco esperado, Banco reconstruido) {
+        assertEquals(esperado.getCuentas().size(), reconstruido.getCuentas().size());
+        for (Cuenta cuenta : esperado.getCuentas()) {
+            Cuenta otra = reconstruido.buscarPorId(cuenta.getId()).orElseThrow();
+            assertEquals(cuenta, otra);
+            assertEquals(cuenta.isEscalaFija(), otra.isEscalaFija());
+            assertEquals(cuenta.getModoConcurrencia(), otra.getModoConcurrencia());
+        }
+    }
+
+    @Test
+    @DisplayName("El alta registra el modo de concurrencia de la cuenta")
+    void testModoConcurrencia() throws IOException {
+        Banco banco = new Banco();
+        try (DiarioTransacciones diario = DiarioTransacciones.abrir(archivo, Duration.ofMillis(5))) {
+            banco.agregarOyente(diario);
+            banco.addCuenta(new Cuenta(1, "Comercio", new BigDecimal("10.00"), 2, ModoConcurrencia.CAS));
+            banco.addCuenta(new Cuenta(2, "Kiosco", new BigDecimal("20.00"), 2, ModoConcurrencia.ACUMULADO));
+            banco.addCuenta(new Cuenta(3, "Maria", new BigDecimal("30.00"), 2));
+            banco.buscarPorId(2).orElseThrow().creditoUnidades(5);
+        }
+        Banco reconstruido = new Banco();
+        DiarioTransacciones.reproducir(archivo, reconstruido);
+        assertMismoEstado(banco, reconstruido);
+        assertEquals(ModoConcurrencia.ACUMULADO, reconstruido.buscarPorId(2).orElseThrow().getModoConcurrencia());
+    }
+
+    @Test
+    @DisplayName("Reproducir el diario reconstruye el mismo banco")
+    void testReproducir() throws IOException {
+        Banco banco;
+        try (DiarioTransacciones diario = DiarioTransacciones.abrir(archivo, Duration.ofMillis(5))) {
+            banco = bancoConDiario(diario);
+            Cuenta john = banco.buscarPorId(1).orElseThrow();
+            Cuenta andres = banco.buscarPorId(2).orElseThrow();
+            Cuenta maria = banco.buscarPorId(3).orElseThrow();
+            banco.transferir(andres, john, new BigDecimal(500));
+            john.debito(new BigDecimal("0.5"));
+            maria.creditoUnidades(123);
+            andres.setSaldo(new BigDecimal("42.42"));
+            andres.setPersona("Andres Guzman");
+            assertThrows(DineroInsuficienteException.class, () -> maria.debito(new BigDecimal(1000)));
+            assertEquals(8, diario.getSecuencia());
+        }
+
+        Banco reconstruido = new Banco();
+        assertEquals(8, DiarioTransacciones.reproducir(archivo, reconstruido));
+        assertMismoEstado(banco, reconstruido);
+        assertEquals("Andres Guzman", reconstruido.buscarPorId(2).orElseThrow().getPersona());
+    }
+
+    @Test
+    @DisplayName("setCuentas queda en el diario y al reproducirlo reemplaza las cuentas")
+    void testSetCuentas() throws IOException {
+        Banco banco;
+        try (DiarioTransacciones diario = DiarioTransacciones.abrir(archivo, Duration.ZERO)) {
+            banco = bancoConDiario(diario);
+            banco.buscarPorId(1).orElseThrow().credito(BigDecimal.TEN);
+            long antes = diario.getSecuencia();
+            //reusa el id 1 y deja afuera la 2 y la 3
+            banco.setCuentas(List.of(new Cuenta(1, "Pedro", new BigDecimal("7")), new Cuenta(4, "Lucia", new BigDecimal("3.50"), 2)));
+            assertEquals(antes + 5, diario.getSecuencia()); //inicio, reinicio, dos altas y fin
+            banco.buscarPorId(4).orElseThrow().debito(BigDecimal.ONE);
+        }
+
+        Banco reconstruido = new Banco();
+        DiarioTransacciones.reproducir(archivo, reconstruido);
+        assertMismoEstado(banco, reconstruido);
+        assertEquals("Pedro", reconstruido.buscarPorId(1).orElseThrow().getPersona());
+        assertTrue(reconstruido.buscarPorId(2).isEmpty());
+    }
+
+    @Test
+    @DisplayName("El diario sigue agregando al reabrirlo y al cambiar de region")
+    void testReabrirYCambiarDeRegion() throws IOException {
+        Banco banco;
+        try (DiarioTransacciones diario = DiarioTransacciones.abrir(archivo, Duration.ZERO, 4)) {
+            banco = bancoConDiario(diario);
+            banco.quitarOyente(diario);
+        }
+        try (DiarioTransacciones diario = DiarioTransacciones.abrir(archivo, Duration.ZERO, 4)) {
+            assertEquals(3, diario.getSecuencia());
+            banco.agregarOyente(diario);
+            for (int i = 0; i < 10; i++) {
+                banco.transferir(banco.buscarPorId(1).orElseThrow(), banco.buscarPorId(3).orElseThrow(), BigDecimal.ONE);
+            }
+            assertEquals(13, diario.getSecuencia());
+        }
+
+        Banco reconstruido = new Banco();
+        assertEquals(13, DiarioTransacciones.reproducir(archivo, reconstruido));
+        assertMismoEstado(banco, reconstruido);
+    }
+
+    @Test
+    @DisplayName("Un registro cortado al final se descarta")
+    void testRegistroCorrupto() throws IOException {
+        try (DiarioTransacciones diario = DiarioTransacciones.abrir(archivo, Duration.ZERO, 16)) {
+            Banco banco = bancoConDiario(diario);
+            banco.buscarPorId(1).orElseThrow().credito(BigDecimal.TEN);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(archivo.toFile(), "rw")) {
+            raf.seek(3L * DiarioTransacciones.TAMANO_REGISTRO + 33); //rompe el monto del ultimo registro
+            raf.write(0x7F);
+        }
+
+        Banco reconstruido = new Banco();
+        assertEquals(3, DiarioTransacciones.reproducir(archivo, reconstruido));
+        assertEquals("2500", reconstruido.buscarPorId(1).orElseThrow().getSaldo().toPlainString());
+    }
+
+    @Test
+    @DisplayName("Lo que no entra en un registro se rechaza antes de cambiar el banco")
+    void testLimitesDelRegistro() throws IOException {
+        Banco banco;
+        try (DiarioTransacciones diario = DiarioTransacciones.abrir(archivo, Duration.ZERO)) {
+            banco = bancoConDiario(diario);
+            Cuenta john = banco.buscarPorId(1).orElseThrow();
+            String largo = "x".repeat(DiarioTransacciones.LARGO_MAXIMO_PERSONA + 1);
+            assertThrows(IllegalArgumentException.class, () -> banco.addCuenta(new Cuenta(4, largo, BigDecimal.ONE)));
+            assertTrue(banco.buscarPorId(4).isEmpty());
+            assertThrows(IllegalArgumentException.class, () -> john.setPersona(largo));
+            assertEquals("John Doe", john.getPersona());
+            assertThrows(IllegalArgumentException.class, () -> john.credito(new BigDecimal("1e30")));
+            assertThrows(IllegalArgumentException.class, () -> john.credito(BigDecimal.ONE.movePointLeft(200)));
+            assertEquals("2500", john.getSaldo().toPlainString());
+        }
+
+        Banco reconstruido = new Banco();
+        DiarioTransacciones.reproducir(archivo, reconstruido);
+        assertMismoEstado(banco, reconstruido);
+    }
+
+    @Test
+    @DisplayName("Un lote sin confirmar se descarta al reproducir y se borra al reabrir")
+    void testLoteCortado() throws IOException {
+        Banco banco;
+        long antesDelLote;
+        try (DiarioTransacciones diario = DiarioTransacciones.abrir(archivo, Duration.ZERO)) {
+            banco = bancoConDiario(diario);
+            antesDelLote = diario.getSecuencia();
+            Cuenta john = banco.buscarPorId(1).orElseThrow();
+            Cuenta andres = banco.buscarPorId(2).orElseThrow();
+            banco.transferirBatch(List.of(new Transferencia(john, andres, new BigDecimal(100)),
+                    new Transferencia(andres, john, new BigDecimal(30))), ModoLote.TODO_O_NADA);
+            assertEquals(antesDelLote + 4, diario.getSecuencia()); //inicio, debito, credito y fin
+        }
+        Banco completo = new Banco();
+        assertEquals(antesDelLote + 4, DiarioTransacciones.reproducir(archivo, completo));
+        assertMismoEstado(banco, completo);
+
+        try (RandomAccessFile raf = new RandomAccessFile(archivo.toFile(), "rw")) {
+            raf.seek((antesDelLote + 3) * DiarioTransacciones.TAMANO_REGISTRO + 8); //borra el FIN_LOTE
+            raf.write(0);
+        }
+        Banco cortado = new Banco();
+        assertEquals(antesDelLote, DiarioTransacciones.reproducir(archivo, cortado));
+        assertEquals("2500", cortado.buscarPorId(1).orElseThrow().getSaldo().toPlainString());
+        assertEquals("1500.8989", cortado.buscarPorId(2).orElseThrow().getSaldo().toPlainString());
+
+        try (DiarioTransacciones diario = DiarioTransacciones.abrir(archivo, Duration.ZERO)) {
+            assertEquals(antesDelLote, diario.getSecuencia());
+            cortado.agregarOyente(diario);
+            cortado.buscarPorId(3).orElseThrow().credito(BigDecimal.ONE);
+            cortado.quitarOyente(diario);
+        }
+        Banco reabierto = new Banco();
+        assertEquals(antesDelLote + 1, DiarioTransacciones.reproducir(archivo, reabierto));
+        assertMismoEstado(cortado, reabierto);
+    }
+}
@@ -0,0 +1,141 @@
+package org.smartinez.junit5app.ejemplos.persistence;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.smartinez.junit5app.ejemplos.exceptions.DineroInsuficienteException;
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+import org.smartinez.junit5app.ejemplos.models.ModoConcurrencia;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("persistencia")
+class InstantaneaBancoTest {
+
+    @TempDir
+    Path directorio;
+
+    private static BigDecimal total(Banco banco) {
+        return banco.getCuentas().stream().map(Cuenta::getSaldo).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    @Test
+    @DisplayName("Cargar una instantanea devuelve las mismas cuentas")
+    void testEscribirYCargar() throws IOException {
+        Banco banco = new Banco();
+        banco.addCuenta(new Cuenta("John Doe", new BigDecimal("2500")));
+        banco.addCuenta(new Cuenta("Andres", new BigDecimal("1500.8989")));
+        banco.addCuenta(new Cuenta("Maria", new BigDecimal("1000.12345"), 5));
+        banco.addCuenta(new Cuenta("Comercio", new BigDecimal("10.00"), 2, ModoConcurrencia.CAS));
+        banco.addCuenta(new Cuenta("Kiosco", new BigDecimal("20.00"), 2, ModoConcurrencia.ACUMULADO));
+        banco.addCuenta(new Cuenta(null, new BigDecimal("1")));
+        for (int i = 0; i < 100_000; i++) {
+            banco.addCuenta(new Cuenta("Cliente " + i, BigDecimal.valueOf(i, 2)));
+        }
+        Path archivo = directorio.resolve("banco.snap");
+        InstantaneaBanco.escribir(banco, archivo);
+
+        Banco cargado = new Banco();
+        assertEquals(0, InstantaneaBanco.cargar(archivo, cargado));
+        assertEquals(banco.getCuentas().size(), cargado.getCuentas().size());
+        for (Cuenta cuenta : banco.getCuentas()) {
+            Cuenta otra = cargado.buscarPorId(cuenta.getId()).orElseThrow();
+            assertEquals(cuenta.getPersona(), otra.getPersona());
+            assertEquals(cuenta.getSaldo(), otra.getSaldo());
+            assertEquals(cuenta.isEscalaFija(), otra.isEscalaFija());
+            assertEquals(cuenta.getModoConcurrencia(), otra.getModoConcurrencia());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"1E-200", "123456789012345678901234567890.5"})
+    @DisplayName("Un saldo que no entra en las columnas se rechaza sin dejar archivo ni cerrojos tomados")
+    void testSaldoQueNoEntra(String saldo) throws Exception {
+        Banco banco = new Banco();
+        banco.addCuenta(new Cuenta("John Doe", new BigDecimal("2500")));
+        Cuenta grande = new Cuenta("Andres", new BigDecimal(saldo));
+        banco.addCuenta(grande);
+        Path archivo = directorio.resolve("banco.snap");
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> InstantaneaBanco.escribir(banco, archivo));
+        assertTrue(e.getMessage().contains(String.valueOf(grande.getId())));
+        assertFalse(Files.exists(archivo));
+        assertFalse(Files.exists(directorio.resolve("banco.snap.tmp")));
+        //los cerrojos se soltaron: se puede seguir operando
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> banco.transferir(banco.getCuentas().get(0), grande, BigDecimal.ONE));
+    }
+
+    @Test
+    @DisplayName("La instantanea es consistente aunque haya transferencias corriendo")
+    void testInstantaneaConsistente() throws Exception {
+        Banco banco = new Banco();
+        for (int i = 0; i < 200; i++) {
+            banco.addCuenta(new Cuenta("Cliente " + i, new BigDecimal("100.00")));
+        }
+        BigDecimal totalInicial = total(banco);
+        AtomicBoolean corriendo = new AtomicBoolean(true);
+        Thread transferencias = new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (corriendo.get()) {
+                try {
+                    banco.transferir(banco.getCuentas().get(random.nextInt(200)), banco.getCuentas().get(random.nextInt(200)),
+                            BigDecimal.valueOf(random.nextInt(1, 5000), 2));
+                } catch (DineroInsuficienteException e) {
+                    //es un resultado valido
+                }
+            }
+        });
+        transferencias.start();
+        try {
+            for (int i = 0; i < 20; i++) {
+                Path archivo = directorio.resolve("banco-" + i + ".snap");
+                InstantaneaBanco.escribir(banco, archivo);
+                Banco cargado = new Banco();
+                InstantaneaBanco.cargar(archivo, cargado);
+                assertEquals(0, totalInicial.compareTo(total(cargado)));
+            }
+        } finally {
+            corriendo.set(false);
+            transferencias.join();
+        }
+    }
+
+    @Test
+    @DisplayName("Instantanea mas diario desde su secuencia reconstruye el banco")
+    void testInstantaneaMasDiario() throws IOException {
+        Path snap = directorio.resolve("banco.snap");
+        Path diarioArchivo = directorio.resolve("diario.bin");
+        Banco banco = new Banco();
+        try (DiarioTransacciones diario = DiarioTransacciones.abrir(diarioArchivo, Duration.ofMillis(10))) {
+            banco.agregarOyente(diario);
+            Cuenta john = new Cuenta("John Doe", new BigDecimal("2500"));
+            Cuenta andres = new Cuenta("Andres", new BigDecimal("1500.8989"));
+            banco.addCuenta(john);
+            banco.addCuenta(andres);
+            banco.transferir(andres, john, new BigDecimal(500));
+            InstantaneaBanco.escribir(banco, snap, diario);
+            banco.transferir(john, andres, new BigDecimal("0.0011"));
+            banco.addCuenta(new Cuenta("Maria", BigDecimal.TEN));
+        }
+
+        Banco reconstruido = new Banco();
+        long secuencia = InstantaneaBanco.cargar(snap, reconstruido);
+        assertEquals(3, secuencia);
+        assertEquals(5, DiarioTransacciones.reproducir(diarioArchivo, reconstruido, secuencia));
+        assertEquals(3, reconstruido.getCuentas().size());
+        for (Cuenta cuenta : banco.getCuentas()) {
+            assertEquals(cuenta, reconstruido.buscarPorId(cuenta.getId()).orElseThrow());
+        }
+    }
+}
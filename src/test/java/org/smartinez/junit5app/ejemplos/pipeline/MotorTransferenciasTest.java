@@ -0,0 +1,189 @@
+package org.smartinez.junit5app.ejemplos.pipeline;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+import org.smartinez.junit5app.ejemplos.models.OyenteOperaciones;
+import org.smartinez.junit5app.ejemplos.models.ResultadoOperacion;
+import org.smartinez.junit5app.ejemplos.persistence.DiarioTransacciones;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MotorTransferenciasTest {
+
+    Banco banco;
+    Cuenta john;
+    Cuenta andres;
+
+    @BeforeEach
+    void setUp() {
+        banco = new Banco();
+        john = new Cuenta(1, "John Doe", new BigDecimal("2500"));
+        andres = new Cuenta(2, "Andres", new BigDecimal("1500.8989"));
+        banco.addCuenta(john);
+        banco.addCuenta(andres);
+    }
+
+    @Test
+    @DisplayName("Las operaciones bloqueantes devuelven el resultado ya aplicado")
+    void testBloqueante() {
+        try (MotorTransferencias motor = new MotorTransferencias(banco, 8)) {
+            assertEquals(ResultadoOperacion.OK, motor.transferir(andres, john, new BigDecimal(500)));
+            assertEquals(ResultadoOperacion.SALDO_INSUFICIENTE, motor.debito(andres, new BigDecimal(5000)));
+            assertEquals(ResultadoOperacion.OK, motor.credito(andres, new BigDecimal("0.0011")));
+            assertEquals("3000", john.getSaldo().toPlainString());
+            assertEquals("1000.9000", andres.getSaldo().toPlainString());
+        }
+    }
+
+    @Test
+    @DisplayName("Varios productores, sincronicos y asincronicos, no pierden ni crean dinero")
+    void testVariosProductores() throws InterruptedException {
+        BigDecimal total = john.getSaldo().add(andres.getSaldo());
+        List<CompletableFuture<ResultadoOperacion>> futuros = new ArrayList<>();
+        //capacidad chica a proposito para que los productores den varias vueltas al buffer
+        try (MotorTransferencias motor = new MotorTransferencias(banco, 16)) {
+            List<Thread> hilos = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                hilos.add(new Thread(() -> {
+                    for (int j = 0; j < 2_000; j++) {
+                        BigDecimal monto = new BigDecimal(ThreadLocalRandom.current().nextInt(1, 100));
+                        if (j % 2 == 0) {
+                            assertNotNull(motor.transferir(john, andres, monto));
+                        } else {
+                            motor.transferir(andres, john, monto);
+                        }
+                    }
+                }));
+            }
+            hilos.forEach(Thread::start);
+            for (int j = 0; j < 2_000; j++) {
+                futuros.add(motor.transferirAsync(andres, john, BigDecimal.ONE));
+            }
+            for (Thread hilo : hilos) {
+                hilo.join();
+            }
+            CompletableFuture.allOf(futuros.toArray(new CompletableFuture[0])).join();
+        }
+        assertEquals(0, total.compareTo(john.getSaldo().add(andres.getSaldo())));
+        assertTrue(john.getSaldo().signum() >= 0);
+        assertTrue(andres.getSaldo().signum() >= 0);
+    }
+
+    @Test
+    @DisplayName("Los errores se informan en el futuro y no detienen el motor")
+    void testError() {
+        try (MotorTransferencias motor = new MotorTransferencias(banco, 8)) {
+            CompletableFuture<ResultadoOperacion> futuro = motor.creditoAsync(null, BigDecimal.ONE);
+            assertThrows(Exception.class, futuro::join);
+            assertEquals(ResultadoOperacion.OK, motor.debito(john, BigDecimal.TEN));
+        }
+    }
+
+    @Test
+    @DisplayName("No se aceptan comandos despues de cerrar el motor")
+    void testCerrado() {
+        MotorTransferencias motor = new MotorTransferencias(banco, 8);
+        motor.close();
+        assertThrows(IllegalStateException.class, () -> motor.debito(john, BigDecimal.ONE));
+        assertThrows(IllegalArgumentException.class, () -> new MotorTransferencias(banco, 12));
+    }
+
+    @Test
+    @DisplayName("Si el diario falla se rechazan los comandos y close() no se cuelga")
+    void testFallaDiario() {
+        OyenteOperaciones diario = new OyenteOperaciones() {
+            int registrados;
+
+            @Override
+            public void verificar(BigDecimal monto, String persona) {
+                if (monto.compareTo(new BigDecimal("1000")) > 0) {
+                    throw new IllegalArgumentException("Monto fuera de limite");
+                }
+            }
+
+            @Override
+            public void debito(Cuenta cuenta, BigDecimal monto) {
+                if (++registrados > 3) {
+                    throw new UncheckedIOException(new IOException("Disco lleno"));
+                }
+            }
+        };
+        MotorTransferencias motor = new MotorTransferencias(banco, 8, diario);
+        assertEquals(ResultadoOperacion.MONTO_INVALIDO, motor.debito(john, new BigDecimal("2000")));
+        assertEquals(new BigDecimal("2500"), john.getSaldo());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(ResultadoOperacion.OK, motor.debito(john, BigDecimal.ONE));
+        }
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> motor.debito(john, BigDecimal.ONE));
+        assertInstanceOf(UncheckedIOException.class, e.getCause());
+        assertThrows(IllegalStateException.class, () -> motor.debitoAsync(john, BigDecimal.ONE));
+        assertTimeoutPreemptively(Duration.ofSeconds(5), motor::close);
+    }
+
+    @Test
+    @DisplayName("Los productores que publican mientras se cierra el motor no quedan esperando")
+    void testCerrarConProductores() throws InterruptedException {
+        MotorTransferencias motor = new MotorTransferencias(banco, 8);
+        List<Thread> productores = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread hilo = new Thread(() -> {
+                try {
+                    while (true) {
+                        motor.transferir(john, andres, BigDecimal.ONE);
+                        motor.transferir(andres, john, BigDecimal.ONE);
+                    }
+                } catch (IllegalStateException e) {
+                    //el motor se cerro
+                }
+            });
+            hilo.start();
+            productores.add(hilo);
+        }
+        Thread.sleep(20);
+        motor.close();
+        for (Thread hilo : productores) {
+            hilo.join(5_000);
+            assertFalse(hilo.isAlive());
+        }
+        assertEquals(new BigDecimal("4000.8989"), john.getSaldo().add(andres.getSaldo()));
+    }
+
+    @Test
+    @DisplayName("La etapa de diario registra lo aplicado antes de confirmar")
+    void testDiario(@TempDir Path directorio) throws IOException {
+        Path archivo = directorio.resolve("diario.bin");
+        Banco conDiario = new Banco();
+        try (DiarioTransacciones diario = DiarioTransacciones.abrir(archivo, Duration.ofMillis(5))) {
+            conDiario.agregarOyente(diario);
+            conDiario.addCuenta(new Cuenta(1, "John Doe", new BigDecimal("2500")));
+            conDiario.addCuenta(new Cuenta(2, "Andres", new BigDecimal("1500.8989")));
+            conDiario.quitarOyente(diario); //desde aca escribe la etapa de diario del motor
+            Cuenta uno = conDiario.buscarPorId(1).orElseThrow();
+            Cuenta dos = conDiario.buscarPorId(2).orElseThrow();
+            try (MotorTransferencias motor = new MotorTransferencias(conDiario, 32, diario)) {
+                for (int i = 0; i < 500; i++) {
+                    motor.transferirAsync(uno, dos, new BigDecimal("3.5"));
+                    motor.transferirAsync(dos, uno, new BigDecimal("1.25"));
+                }
+                assertEquals(ResultadoOperacion.SALDO_INSUFICIENTE, motor.debito(dos, new BigDecimal(100_000)));
+            }
+        }
+        Banco reconstruido = new Banco();
+        DiarioTransacciones.reproducir(archivo, reconstruido);
+        for (Cuenta cuenta : conDiario.getCuentas()) {
+            assertEquals(cuenta, reconstruido.buscarPorId(cuenta.getId()).orElseThrow());
+        }
+    }
+}
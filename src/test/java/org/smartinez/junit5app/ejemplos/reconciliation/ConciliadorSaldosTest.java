@@ -0,0 +1,153 @@
+package org.smartinez.junit5app.ejemplos.reconciliation;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.smartinez.junit5app.ejemplos.models.Banco;
+import org.smartinez.junit5app.ejemplos.models.Cuenta;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("banco")
+class ConciliadorSaldosTest {
+
+    @TempDir
+    Path directorio;
+
+    Path externo;
+    Path diferencias;
+
+    @BeforeEach
+    void setUp() {
+        externo = directorio.resolve("saldos.csv");
+        diferencias = directorio.resolve("diferencias.txt");
+    }
+
+    @Test
+    @DisplayName("Solo se informan las diferencias entre el banco y el archivo externo")
+    void testDiferencias() throws IOException {
+        Banco banco = new Banco();
+        banco.addCuenta(new Cuenta(1, "Solo banco", new BigDecimal("5")));
+        banco.addCuenta(new Cuenta(10, "John Doe", new BigDecimal("2500")));
+        banco.addCuenta(new Cuenta(20, "Andres", new BigDecimal("1500.8989")));
+        banco.addCuenta(new Cuenta(30, "Maria", new BigDecimal("10.50"), 2));
+        banco.addCuenta(new Cuenta(35, "Solo banco", new BigDecimal("7")));
+        banco.addCuenta(new Cuenta(50, "Pedro", new BigDecimal("1"), 4));
+        banco.addCuenta(new Cuenta(90, "Solo banco", new BigDecimal("9")));
+        Files.write(externo, List.of(
+                "id,saldo",
+                "10,2500.00",
+                "20,1500.8988",
+                "25,3",
+                "30,10.5",
+                "esto no es un saldo",
+                "40,4",
+                "38,1",
+                "50,1.0000"));
+
+        ResultadoConciliacion resultado = new ConciliadorSaldos(banco, diferencias, 3, 2).conciliar(externo);
+
+        assertEquals(8, resultado.getFilas());
+        assertEquals(3, resultado.getCoincidentes());
+        assertEquals(1, resultado.getDistintas());
+        assertEquals(3, resultado.getSoloBanco());
+        assertEquals(2, resultado.getSoloExterno());
+        assertEquals(2, resultado.getInvalidas());
+        Set<String> lineas = new HashSet<>(Files.readAllLines(diferencias));
+        assertEquals(resultado.getDiferencias(), lineas.size());
+        assertTrue(lineas.containsAll(List.of(
+                "DISTINTO;20;1500.8989;1500.8988",
+                "SOLO_BANCO;1;5;",
+                "SOLO_BANCO;35;7;",
+                "SOLO_BANCO;90;9;",
+                "SOLO_EXTERNO;25;;3",
+                "SOLO_EXTERNO;40;;4")));
+        assertTrue(lineas.stream().anyMatch(l -> l.startsWith("INVALIDA;") && l.endsWith(";Fuera de orden;38,1")));
+    }
+
+    @Test
+    @DisplayName("Un banco columnar grande se concilia por tandas con el mismo resultado")
+    void testBancoColumnarPorTandas() throws IOException {
+        Banco banco = Banco.columnar(2);
+        Random random = new Random(37);
+        int distintas = 0;
+        int soloBanco = 0;
+        int soloExterno = 0;
+        try (BufferedWriter escritor = Files.newBufferedWriter(externo)) {
+            escritor.write("id,saldo\n");
+            for (long id = 1; id <= 50_000; id++) {
+                long unidades = random.nextInt(1_000_000);
+                int caso = random.nextInt(100);
+                if (caso != 0) {
+                    banco.addCuenta(new Cuenta(id, "Cliente " + id, BigDecimal.valueOf(unidades, 2)));
+                }
+                if (caso == 0) {
+                    soloExterno++;
+                } else if (caso == 1) {
+                    soloBanco++;
+                    continue;
+                } else if (caso == 2) {
+                    distintas++;
+                    unidades++;
+                }
+                escritor.write(id + "," + BigDecimal.valueOf(unidades, 2).toPlainString() + "\n");
+            }
+        }
+
+        ResultadoConciliacion resultado = new ConciliadorSaldos(banco, diferencias, 4, 5_000).conciliar(externo);
+
+        assertEquals(distintas, resultado.getDistintas());
+        assertEquals(soloBanco, resultado.getSoloBanco());
+        assertEquals(soloExterno, resultado.getSoloExterno());
+        assertEquals(0, resultado.getInvalidas());
+        assertEquals(banco.getCuentas().size() - distintas - soloBanco, resultado.getCoincidentes());
+        assertEquals(resultado.getDiferencias(), Files.readAllLines(diferencias).size());
+    }
+
+    @Test
+    @DisplayName("Un rango con mas ids de los que entran en memoria se ordena por tramos y sale en orden")
+    void testRangoSesgado() throws IOException {
+        Banco banco = Banco.columnar(2);
+        try (BufferedWriter escritor = Files.newBufferedWriter(externo)) {
+            escritor.write("id,saldo\n");
+            for (long id = 1; id <= 1_000; id++) {
+                banco.addCuenta(new Cuenta(id, "Cliente " + id, BigDecimal.TEN));
+                escritor.write(id + ",10\n");
+            }
+        }
+        List<Cuenta> nuevas = new ArrayList<>();
+        for (long id = 31_000; id > 1_000; id--) { //todas caen en el ultimo rango del archivo
+            nuevas.add(new Cuenta(id, "Sin archivo " + id, BigDecimal.ONE));
+        }
+        Collections.shuffle(nuevas, new Random(11));
+        nuevas.forEach(banco::addCuenta);
+
+        ResultadoConciliacion resultado = new ConciliadorSaldos(banco, diferencias, 4, 1_000).conciliar(externo);
+
+        assertEquals(1_000, resultado.getCoincidentes());
+        assertEquals(30_000, resultado.getSoloBanco());
+        assertEquals(0, resultado.getSoloExterno() + resultado.getDistintas() + resultado.getInvalidas());
+        long[] ids = Files.readAllLines(diferencias).stream()
+                .mapToLong(linea -> Long.parseLong(linea.split(";")[1])).toArray();
+        assertEquals(30_000, ids.length);
+        for (int i = 1; i < ids.length; i++) {
+            assertTrue(ids[i - 1] < ids[i], "Los ids del rango tienen que salir en orden");
+        }
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            assertEquals(Set.of(externo, diferencias), archivos.collect(Collectors.toSet())); //sin temporales
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package org.smartinez.junit5app.ejemplos.sharding;
+
+import org.junit.jupiter.api.*;
+import org.smartinez.junit5app.ejemplos.models.ResultadoOperacion;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("fragmentos")
+class LibroMayorFragmentadoTest {
+
+    List<ServidorFragmento> servidores = new ArrayList<>();
+    LibroMayorFragmentado libro;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        libro.close();
+        for (ServidorFragmento servidor : servidores) {
+            servidor.close();
+        }
+    }
+
+    private long[] crearCuentas(int cantidad) {
+        long[] ids = new long[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            ids[i] = libro.crearCuenta("Cliente " + i, new BigDecimal("100.00"));
+        }
+        return ids;
+    }
+
+    private void transferirEnParalelo(long[] ids) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futuros = new ArrayList<>();
+        for (int h = 0; h < 4; h++) {
+            futuros.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 2_000; i++) {
+                    libro.transferir(ids[random.nextInt(ids.length)], ids[random.nextInt(ids.length)],
+                            BigDecimal.valueOf(random.nextInt(1, 5000), 2));
+                }
+            }));
+        }
+        for (Future<?> futuro : futuros) {
+            futuro.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    @DisplayName("Transferencias locales y entre fragmentos conservan el dinero")
+    void testFragmentosLocales() throws Exception {
+        libro = new LibroMayorFragmentado(List.of(new FragmentoLocal("a"), new FragmentoLocal("b"), new FragmentoLocal("c")));
+        long[] ids = crearCuentas(30);
+        BigDecimal totalInicial = libro.total();
+
+        transferirEnParalelo(ids);
+
+        assertEquals(0, totalInicial.compareTo(libro.total()));
+        for (long id : ids) {
+            assertTrue(libro.saldo(id).signum() >= 0);
+        }
+    }
+
+    @Test
+    void testResultados() {
+        libro = new LibroMayorFragmentado(List.of(new FragmentoLocal("a"), new FragmentoLocal("b")));
+        long[] ids = crearCuentas(4);
+        long origen = ids[0];
+        long otroFragmento = -1;
+        for (long id : ids) {
+            if (libro.fragmentoDe(id) != libro.fragmentoDe(origen)) {
+                otroFragmento = id;
+            }
+        }
+        assertNotEquals(-1, otroFragmento);
+
+        assertEquals(ResultadoOperacion.SALDO_INSUFICIENTE, libro.transferir(origen, otroFragmento, new BigDecimal(101)));
+        assertEquals(ResultadoOperacion.CUENTA_INEXISTENTE, libro.transferir(origen, 9999, BigDecimal.ONE));
+        assertEquals(0, new BigDecimal("100.00").compareTo(libro.saldo(origen))); //la reserva se cancelo
+        assertEquals(ResultadoOperacion.OK, libro.transferir(origen, otroFragmento, new BigDecimal(100)));
+        assertEquals(0, libro.saldo(origen).signum());
+        assertEquals(0, new BigDecimal("200.00").compareTo(libro.saldo(otroFragmento)));
+        assertNull(libro.saldo(9999));
+    }
+
+    @Test
+    @DisplayName("Los fragmentos pueden correr detras de un socket en loopback")
+    void testFragmentosRemotos() throws Exception {
+        servidores.add(new ServidorFragmento(new FragmentoLocal("remoto-1"), 0));
+        servidores.add(new ServidorFragmento(new FragmentoLocal("remoto-2"), 0));
+        libro = new LibroMayorFragmentado(List.of(new FragmentoLocal("local"),
+                new FragmentoRemoto(servidores.get(0).getPuerto()), new FragmentoRemoto(servidores.get(1).getPuerto())));
+        long[] ids = crearCuentas(30);
+        BigDecimal totalInicial = libro.total();
+
+        transferirEnParalelo(ids);
+
+        assertEquals(0, totalInicial.compareTo(libro.total()));
+        try (FragmentoRemoto remoto = new FragmentoRemoto(servidores.get(0).getPuerto())) {
+            remoto.crearCuenta(1_000_000, "Andres", BigDecimal.ONE);
+            assertEquals(BigDecimal.ONE, remoto.saldo(1_000_000));
+            //el error del lado del servidor vuelve por el socket
+            assertThrows(IllegalStateException.class, () -> remoto.crearCuenta(1_000_000, "Andres", BigDecimal.ONE));
+        }
+    }
+
+    @Test
+    @DisplayName("Decimales grandes viajan enteros y un pedido mal formado corta solo esa conexion")
+    void testProtocoloDecimales() throws Exception {
+        servidores.add(new ServidorFragmento(new FragmentoLocal("remoto"), 0));
+        int puerto = servidores.get(0).getPuerto();
+        libro = new LibroMayorFragmentado(List.of(new FragmentoRemoto(puerto)));
+
+        //mas de 255 bytes sin escala: con un largo de un byte se corrompia el stream
+        BigDecimal grande = new BigDecimal("9".repeat(700) + ".25");
+        long id = libro.crearCuenta("Andres", grande);
+        assertEquals(grande, libro.saldo(id));
+        assertThrows(IllegalArgumentException.class, () -> libro.crearCuenta("John", new BigDecimal("9".repeat(3000))));
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), puerto);
+             DataOutputStream salida = new DataOutputStream(socket.getOutputStream());
+             DataInputStream entrada = new DataInputStream(socket.getInputStream())) {
+            salida.writeByte(ProtocoloFragmento.CREAR);
+            salida.writeLong(2_000_000);
+            salida.writeUTF("Maria");
+            salida.writeInt(2);
+            salida.writeShort(0);
+            salida.flush();
+            assertEquals(ProtocoloFragmento.ERROR, entrada.readByte());
+            assertTrue(entrada.readUTF().contains("Largo de decimal invalido"));
+            assertEquals(-1, entrada.read());
+        }
+        //el servidor cuenta el error despues de cerrar el socket
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (servidores.get(0).getErrores() == 0 && System.nanoTime() < limite) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, servidores.get(0).getErrores());
+        //las demas conexiones siguen funcionando
+        assertEquals(grande, libro.saldo(id));
+    }
+
+    //Aplica el credito en el destino y despues pierde la respuesta, como una conexion que se corta
+    static class FragmentoQueCorta implements Fragmento {
+        final FragmentoLocal fragmento;
+        volatile boolean cortar;
+
+        FragmentoQueCorta(FragmentoLocal fragmento) {
+            this.fragmento = fragmento;
+        }
+
+        @Override
+        public void crearCuenta(long id, String persona, BigDecimal saldo) {
+            fragmento.crearCuenta(id, persona, saldo);
+        }
+
+        @Override
+        public BigDecimal saldo(long id) {
+            return fragmento.saldo(id);
+        }
+
+        @Override
+        public ResultadoOperacion transferir(long origen, long destino, BigDecimal monto) {
+            return fragmento.transferir(origen, destino, monto);
+        }
+
+        @Override
+        public ResultadoOperacion acreditar(long idReserva, long id, BigDecimal monto) {
+            ResultadoOperacion resultado = fragmento.acreditar(idReserva, id, monto);
+            if (cortar) {
+                throw new UncheckedIOException(new IOException("Conexion cortada"));
+            }
+            return resultado;
+        }
+
+        @Override
+        public void olvidar(long idReserva) {
+            fragmento.olvidar(idReserva);
+        }
+
+        @Override
+        public ResultadoOperacion reservar(long idReserva, long id, BigDecimal monto) {
+            return fragmento.reservar(idReserva, id, monto);
+        }
+
+        @Override
+        public void confirmar(long idReserva) {
+            fragmento.confirmar(idReserva);
+        }
+
+        @Override
+        public void cancelar(long idReserva) {
+            fragmento.cancelar(idReserva);
+        }
+
+        @Override
+        public BigDecimal total() {
+            return fragmento.total();
+        }
+
+        @Override
+        public void close() {
+            fragmento.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Un credito sin respuesta deja la transferencia en duda en lugar de devolver la reserva")
+    void testCreditoSinRespuesta() {
+        FragmentoQueCorta a = new FragmentoQueCorta(new FragmentoLocal("a"));
+        FragmentoQueCorta b = new FragmentoQueCorta(new FragmentoLocal("b"));
+        libro = new LibroMayorFragmentado(List.of(a, b));
+        long[] ids = crearCuentas(4);
+        long origen = ids[0];
+        long destino = -1;
+        for (long id : ids) {
+            if (libro.fragmentoDe(id) != libro.fragmentoDe(origen)) {
+                destino = id;
+            }
+        }
+        assertNotEquals(-1, destino);
+        long cuentaDestino = destino;
+
+        a.cortar = true;
+        b.cortar = true;
+        assertThrows(UncheckedIOException.class, () -> libro.transferir(origen, cuentaDestino, new BigDecimal(30)));
+        assertEquals(1, libro.getTransferenciasEnDuda());
+        //el monto sigue reservado en el origen y el destino ya lo tiene: no se devolvio
+        assertEquals(0, new BigDecimal("70.00").compareTo(libro.saldo(origen)));
+        assertEquals(0, new BigDecimal("130.00").compareTo(libro.saldo(cuentaDestino)));
+        assertEquals(0, libro.resolverEnDuda());
+        assertEquals(1, libro.getTransferenciasEnDuda());
+
+        a.cortar = false;
+        b.cortar = false;
+        assertEquals(1, libro.resolverEnDuda());
+        assertEquals(0, libro.getTransferenciasEnDuda());
+        //el reintento del credito no acredito otra vez
+        assertEquals(0, new BigDecimal("70.00").compareTo(libro.saldo(origen)));
+        assertEquals(0, new BigDecimal("130.00").compareTo(libro.saldo(cuentaDestino)));
+        assertEquals(0, new BigDecimal("400.00").compareTo(libro.total()));
+    }
+}